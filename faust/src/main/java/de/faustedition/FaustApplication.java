@@ -28,6 +28,7 @@ import de.faustedition.genesis.lines.VerseVariantResource;
 import de.faustedition.query.QueryResource;
 import de.faustedition.reasoning.InscriptionPrecedenceResource;
 import de.faustedition.search.SearchResource;
+import de.faustedition.search.SuggestResource;
 import de.faustedition.security.LdapSecurityStore;
 import de.faustedition.security.SecurityConstants;
 import de.faustedition.structure.StructureFinder;
@@ -139,6 +140,7 @@ public class FaustApplication extends Application implements InitializingBean {
 		router.attach("query/{term}", secured(transactional(contextResource(QueryResource.class))));
 		router.attach("static/", new Directory(getContext().createChildContext(), "file://" + staticResourcePath + "/"));
 		router.attach("search/{term}", secured(transactional(contextResource(SearchResource.class))));
+		router.attach("suggest/{prefix}", secured(contextResource(SuggestResource.class)));
 		router.attach("structure/", secured(transactional(structureFinder)));
 		router.attach("text/", secured(templateFinder));
 		router.attach("transcript/by-scene/{part}", secured(transactional(contextResource(SceneStatisticsResource.class))));
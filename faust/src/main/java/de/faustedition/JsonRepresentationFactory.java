@@ -51,6 +51,22 @@ public class JsonRepresentationFactory {
 	}
 
 	public Representation map(final Object object, final boolean transactional) {
+		return stream(new Generator() {
+			@Override
+			public void generate(JsonGenerator jg) throws IOException {
+				jg.writeObject(object);
+			}
+		}, transactional);
+	}
+
+	public Representation stream(Generator generator) {
+		return stream(generator, true);
+	}
+
+	/**
+	 * Writes JSON straight to the response as it is generated, without building an object tree first.
+	 */
+	public Representation stream(final Generator generator, final boolean transactional) {
 		return new WriterRepresentation(MediaType.APPLICATION_JSON) {
 			@Override
 			public void write(final Writer writer) throws IOException {
@@ -78,9 +94,13 @@ public class JsonRepresentationFactory {
 
 			protected void writeJson(Writer writer) throws IOException {
 				final JsonGenerator jg = objectMapper.getJsonFactory().createJsonGenerator(writer);
-				jg.writeObject(object);
+				generator.generate(jg);
 				jg.flush();
 			}
 		};
 	}
+
+	public interface Generator {
+		void generate(JsonGenerator jg) throws IOException;
+	}
 }
@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.dataimport;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import de.faustedition.FaustURI;
+import de.faustedition.Runtime;
+import de.faustedition.document.Document;
+import de.faustedition.document.DocumentDescriptorHandler;
+import de.faustedition.document.DocumentDescriptorInvalidException;
+import de.faustedition.document.MaterialUnit;
+import de.faustedition.document.MaterialUnitInitializer;
+import de.faustedition.graph.FaustGraph;
+import de.faustedition.search.Suggester;
+import de.faustedition.transcript.TranscriptBatchReader;
+import de.faustedition.transcript.TranscriptManager;
+import de.faustedition.xml.XMLManifest;
+import de.faustedition.xml.XMLStorage;
+import org.neo4j.graphdb.Relationship;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StopWatch;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Brings the graph up to date with the {@link XMLStorage} by re-importing only those document descriptors and
+ * transcripts, which have been added, changed or deleted since the last synchronization.
+ * <p/>
+ * Changes are detected by comparing the store against an {@link XMLManifest} kept next to the graph database. If
+ * there is no manifest yet, the current state of the store is recorded as the baseline.
+ * <p/>
+ * If the storage is watched, the resources reported in its change notifications are synchronized as well.
+ */
+@Component
+@DependsOn(value = "transcriptManager")
+public class XMLSynchronizer extends Runtime implements Runnable, InitializingBean {
+
+	@Autowired
+	private Environment environment;
+
+	@Autowired
+	private FaustGraph graph;
+
+	@Autowired
+	private XMLStorage xml;
+
+	@Autowired
+	private Logger logger;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	@Autowired
+	private TranscriptManager transcriptManager;
+
+	@Autowired
+	private TranscriptBatchReader transcriptBatchReader;
+
+	@Autowired
+	private Suggester suggester;
+
+	private File manifestFile;
+
+	private final AtomicLong generation = new AtomicLong();
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		this.manifestFile = XMLManifest.location(environment.getRequiredProperty("graph.home", File.class));
+
+		if (environment.getProperty("xml.sync", Boolean.class, true)) {
+			synchronize();
+		}
+
+		xml.addListener(new XMLStorage.ChangeListener() {
+			@Override
+			public void changed(SortedSet<FaustURI> uris) {
+				logger.debug("Synchronizing {} changed resource(s) in XML storage", uris.size());
+				try {
+					synchronize(uris);
+				} catch (IOException e) {
+					logger.error("I/O error while synchronizing with XML storage", e);
+				}
+			}
+		});
+	}
+
+	public static void main(String... args) throws Exception {
+		main(XMLSynchronizer.class, args);
+		System.exit(0);
+	}
+
+	@Override
+	public void run() {
+		try {
+			synchronize();
+		} catch (IOException e) {
+			logger.error("I/O error while synchronizing with XML storage", e);
+		}
+	}
+
+	/**
+	 * Synchronizes the graph with all resources in the storage.
+	 */
+	public void synchronize() throws IOException {
+		synchronize(null);
+	}
+
+	/**
+	 * Synchronizes the graph with the given resources only, e.g. those reported as changed by the storage.
+	 *
+	 * @param uris the resources to compare against the manifest or <code>null</code> to compare all of them
+	 */
+	public synchronized void synchronize(SortedSet<FaustURI> uris) throws IOException {
+		final StopWatch sw = new StopWatch();
+		sw.start();
+
+		final XMLManifest previous = XMLManifest.load(manifestFile);
+		if (previous == null) {
+			final XMLManifest baseline = XMLManifest.scan(xml, null);
+			logger.info("Recording {} files in XML storage as baseline in {}", baseline.size(), manifestFile);
+			baseline.save(manifestFile);
+			return;
+		}
+		final XMLManifest current = (uris == null ? XMLManifest.scan(xml, previous) : XMLManifest.update(xml, previous, uris));
+
+		final XMLManifest.Diff diff = current.diff(previous);
+		if (diff.isEmpty()) {
+			logger.debug("XML storage unchanged since last synchronization");
+			current.save(manifestFile);
+			return;
+		}
+
+		logger.info("Synchronizing graph with XML storage: {}", diff);
+		final List<MaterialUnit> toRead = Lists.newArrayList();
+		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				for (FaustURI descriptor : diff.getChanged()) {
+					removeDocument(descriptor);
+				}
+				for (FaustURI descriptor : diff.getDeleted()) {
+					removeDocument(descriptor);
+				}
+				for (FaustURI descriptor : diff.getAdded()) {
+					// the graph might hold the descriptor already, e.g. if it has been imported anew
+					removeDocument(descriptor);
+				}
+
+				final Multimap<String, MaterialUnit> transcriptReferences = transcriptReferences();
+				for (FaustURI transcript : diff.getDeleted()) {
+					for (MaterialUnit mu : transcriptReferences.get(transcript.toString())) {
+						transcriptManager.remove(mu);
+					}
+				}
+				for (FaustURI transcript : diff.getChanged()) {
+					for (MaterialUnit mu : transcriptReferences.get(transcript.toString())) {
+						transcriptManager.remove(mu);
+						toRead.add(mu);
+					}
+				}
+				for (FaustURI transcript : diff.getAdded()) {
+					// material units might reference a transcript before it has been added to the store
+					toRead.addAll(transcriptReferences.get(transcript.toString()));
+				}
+			}
+		});
+
+		for (FaustURI descriptor : diff.getChanged()) {
+			addDocument(descriptor, toRead);
+		}
+		for (FaustURI descriptor : diff.getAdded()) {
+			addDocument(descriptor, toRead);
+		}
+
+		transcriptBatchReader.read(toRead);
+		generation.incrementAndGet();
+
+		current.save(manifestFile);
+
+		sw.stop();
+		logger.info("Synchronized graph with XML storage in {}s", sw.getTotalTimeSeconds());
+	}
+
+	/**
+	 * @return the number of synchronizations since startup, which changed the graph
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	protected boolean isDocumentDescriptor(FaustURI uri) {
+		return uri.getPath().startsWith(MaterialUnitInitializer.DOCUMENT_BASE_URI.getPath() + "/");
+	}
+
+	/**
+	 * Imports a document descriptor in a transaction of its own, which is rolled back if the descriptor cannot be
+	 * imported completely.
+	 */
+	protected void addDocument(final FaustURI descriptor, List<MaterialUnit> toRead) {
+		if (!isDocumentDescriptor(descriptor)) {
+			return;
+		}
+		try {
+			final Document document = transactionTemplate.execute(new TransactionCallback<Document>() {
+				@Override
+				public Document doInTransaction(TransactionStatus status) {
+					logger.debug("Importing document {}", descriptor);
+					try {
+						applicationContext.getBean(DocumentDescriptorHandler.class).handle(descriptor);
+					} catch (IOException e) {
+						throw Throwables.propagate(e);
+					} catch (SAXException e) {
+						throw Throwables.propagate(e);
+					}
+					return Document.findBySource(graph.getDb(), descriptor);
+				}
+			});
+			if (document != null) {
+				toRead.add(document);
+			}
+		} catch (RuntimeException e) {
+			final Throwable cause = ((e.getCause() instanceof IOException || e.getCause() instanceof SAXException) ? e.getCause() : e);
+			if (cause instanceof SAXException) {
+				logger.error("XML error while adding document " + descriptor, cause);
+			} else if (cause instanceof IOException) {
+				logger.error("I/O error while adding document " + descriptor, cause);
+			} else if (cause instanceof DocumentDescriptorInvalidException) {
+				logger.error("Metadata descriptor invalid for document " + descriptor, cause);
+			} else {
+				logger.error("Error while importing document " + descriptor, cause);
+			}
+		}
+	}
+
+	/**
+	 * Removes a document with all of its material units, their transcripts and index entries from the graph.
+	 */
+	protected void removeDocument(FaustURI descriptor) {
+		if (!isDocumentDescriptor(descriptor)) {
+			return;
+		}
+		final Document document = Document.findBySource(graph.getDb(), descriptor);
+		if (document == null) {
+			return;
+		}
+		logger.debug("Removing document {}", descriptor);
+
+		document.unindex();
+		suggester.remove(document);
+
+		final List<MaterialUnit> materialUnits = Lists.newArrayList();
+		final Deque<MaterialUnit> queue = new ArrayDeque<MaterialUnit>();
+		queue.add(document);
+		while (!queue.isEmpty()) {
+			final MaterialUnit mu = queue.pop();
+			materialUnits.add(mu);
+			for (MaterialUnit child : mu) {
+				queue.add(child);
+			}
+		}
+
+		for (MaterialUnit mu : materialUnits) {
+			transcriptManager.remove(mu);
+		}
+		for (MaterialUnit mu : materialUnits) {
+			for (Relationship r : Lists.newArrayList(mu.node.getRelationships())) {
+				r.delete();
+			}
+			mu.node.delete();
+		}
+	}
+
+	/**
+	 * @return material units keyed by the string representation of their transcript source
+	 */
+	protected Multimap<String, MaterialUnit> transcriptReferences() {
+		final Multimap<String, MaterialUnit> references = ArrayListMultimap.create();
+		for (MaterialUnit mu : graph.getMaterialUnits()) {
+			final FaustURI transcriptSource = mu.getTranscriptSource();
+			if (transcriptSource != null && !DocumentDescriptorHandler.noneURI.equals(transcriptSource)) {
+				references.put(transcriptSource.toString(), mu);
+			}
+		}
+		return references;
+	}
+}
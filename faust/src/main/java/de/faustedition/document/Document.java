@@ -22,6 +22,8 @@ package de.faustedition.document;
 import com.google.common.base.*;
 import com.google.common.base.Objects;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import de.faustedition.FaustURI;
 import de.faustedition.genesis.dating.MacrogeneticRelationManager;
 import de.faustedition.graph.FaustGraph;
@@ -29,6 +31,9 @@ import de.faustedition.graph.NodeWrapper;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.WildcardQuery;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
@@ -64,6 +69,11 @@ public class Document extends MaterialUnit {
 	public static final  String INDEX_ID = "index-id";
 	public static final String INDEX_SOURCE = "index-source";
 	public static final String INDEX_URI = "index-uri";
+	public static final String INDEX_ID_TRIGRAM = "index-id-trigram-padded";
+	public static final String LEGACY_INDEX_ID_TRIGRAM = "index-id-trigram";
+
+	private static final String TRIGRAM_KEY = "trigram";
+	private static final int MAX_QUERY_TRIGRAMS = 32;
 
 
 	public Document(Node node) {
@@ -130,6 +140,47 @@ public class Document extends MaterialUnit {
 		return Iterables.transform(idResults, newWrapperFunction(Document.class));
 	}
 
+	/**
+	 * Finds documents with a URI part, call number or WA id containing the given string, ignoring case and
+	 * wildcards.
+	 * <p/>
+	 * Candidates are looked up in a trigram index, intersecting the posting lists of all trigrams of the string, and
+	 * verified against the document's {@link #getIdentifiers() identifiers} afterwards. Strings shorter than a
+	 * trigram are looked up as trigram prefixes.
+	 */
+	public static Iterable<Document> findByInfix(GraphDatabaseService db, String infix) {
+		final String needle = infix.replace("*", "").replace("?", "").trim().toLowerCase();
+		if (needle.isEmpty() || !db.index().existsForNodes(INDEX_ID_TRIGRAM)) {
+			return Collections.emptyList();
+		}
+
+		final Query query;
+		if (needle.length() < 3) {
+			query = new PrefixQuery(new Term(TRIGRAM_KEY, needle));
+		} else {
+			final BooleanQuery trigramQuery = new BooleanQuery();
+			final int trigrams = needle.length() - 2;
+			final int step = Math.max(1, trigrams / MAX_QUERY_TRIGRAMS);
+			for (int i = 0; i < trigrams; i += step) {
+				trigramQuery.add(new TermQuery(new Term(TRIGRAM_KEY, needle.substring(i, i + 3))), BooleanClause.Occur.MUST);
+			}
+			query = trigramQuery;
+		}
+
+		final IndexHits<Node> candidates = db.index().forNodes(INDEX_ID_TRIGRAM).query(query);
+		return Iterables.filter(Iterables.transform(candidates, newWrapperFunction(Document.class)), new Predicate<Document>() {
+			@Override
+			public boolean apply(@Nullable Document input) {
+				for (String identifier : input.getIdentifiers()) {
+					if (identifier.contains(needle)) {
+						return true;
+					}
+				}
+				return false;
+			}
+		});
+	}
+
     public Iterable<MaterialUnit> getPages() {
         Predicate<MaterialUnit> isPage = new Predicate<MaterialUnit>() {
             @Override
@@ -156,10 +207,9 @@ public class Document extends MaterialUnit {
 					// TODO error logging
 	                //logger.error("error!", e);
 				}
-				try {
-					idIndex.add(node, URI_PART_KEY, uri.substring("faust://document/".length()).toLowerCase());
-				} catch (IndexOutOfBoundsException e) {
-					//do nothing
+				final String uriPart = uriPart(uri);
+				if (uriPart != null) {
+					idIndex.add(node, URI_PART_KEY, uriPart);
 				}
 				
 		}
@@ -175,6 +225,75 @@ public class Document extends MaterialUnit {
 				idIndex.add(node, WA_ID_KEY, waId.toLowerCase());
 			}
 		}
+
+		indexTrigrams();
+	}
+
+	/**
+	 * Adds the trigrams of this document's {@link #getIdentifiers() identifiers} to the index used by
+	 * {@link #findByInfix(GraphDatabaseService, String)}.
+	 */
+	public void indexTrigrams() {
+		final Index<Node> trigramIndex = node.getGraphDatabase().index().forNodes(INDEX_ID_TRIGRAM);
+		final Set<String> trigrams = Sets.newHashSet();
+		for (String identifier : getIdentifiers()) {
+			trigrams.addAll(trigrams(identifier));
+		}
+		for (String trigram : trigrams) {
+			trigramIndex.add(node, TRIGRAM_KEY, trigram);
+		}
+	}
+
+	/**
+	 * @return the trigrams of an identifier padded with <code>^^</code> in front and <code>$$</code> at the end, so
+	 * that every substring shorter than a trigram, up to the last character, is the prefix of one of them
+	 */
+	static Set<String> trigrams(String identifier) {
+		final String padded = "^^" + identifier + "$$";
+		final Set<String> trigrams = Sets.newHashSet();
+		for (int i = 0; i + 3 <= padded.length(); i++) {
+			trigrams.add(padded.substring(i, i + 3));
+		}
+		return trigrams;
+	}
+
+	/**
+	 * @return the lower-cased URI parts, call numbers and WA ids of this document, as searched by
+	 * {@link #findByInfix(GraphDatabaseService, String)}
+	 */
+	public List<String> getIdentifiers() {
+		final List<String> identifiers = Lists.newArrayList();
+		for (String uri : Objects.firstNonNull(getMetadata("uri"), new String[0])) {
+			final String uriPart = uriPart(uri);
+			if (uriPart != null) {
+				identifiers.add(uriPart);
+			}
+		}
+		if (getMetadata("callnumber") != null) {
+			identifiers.add(allIdnos().toLowerCase());
+		}
+		for (String waId : Objects.firstNonNull(getMetadata("wa-id"), new String[0])) {
+			if (ALPHA_NUMERIC_PATTERN.matcher(waId).find()) {
+				identifiers.add(waId.toLowerCase());
+			}
+		}
+		return identifiers;
+	}
+
+	private static String uriPart(String uri) {
+		final String prefix = "faust://document/";
+		return (uri.length() < prefix.length() ? null : uri.substring(prefix.length()).toLowerCase());
+	}
+
+	/**
+	 * Removes all index entries added by {@link #index()}.
+	 */
+	public void unindex() {
+		final IndexManager indexManager = node.getGraphDatabase().index();
+		indexManager.forNodes(INDEX_SOURCE).remove(node);
+		indexManager.forNodes(INDEX_URI).remove(node);
+		indexManager.forNodes(INDEX_ID).remove(node);
+		indexManager.forNodes(INDEX_ID_TRIGRAM).remove(node);
 	}
 
 	public String allIdnos() {
@@ -26,6 +26,7 @@ import de.faustedition.FaustAuthority;
 import de.faustedition.FaustURI;
 import de.faustedition.document.MaterialUnit.Type;
 import de.faustedition.graph.FaustGraph;
+import de.faustedition.search.Suggester;
 import de.faustedition.transcript.TranscriptType;
 import de.faustedition.xml.Namespaces;
 import de.faustedition.xml.XMLBaseTracker;
@@ -66,6 +67,9 @@ public class DocumentDescriptorHandler extends DefaultHandler {
 	@Autowired
 	private XMLStorage xml;
 
+	@Autowired
+	private Suggester suggester;
+
 	private FaustURI source;
 	private XMLBaseTracker baseTracker;
 	private MaterialUnitCollection materialUnitCollection;
@@ -106,6 +110,7 @@ public class DocumentDescriptorHandler extends DefaultHandler {
 			XMLUtil.saxParser().parse(xmlSource, this);
 			if (document != null) {
 				document.index();
+				suggester.add(document);
 			}
 			if (LOG.isDebugEnabled()) {
 				LOG.debug("Read " + source + " into " + document + "[" +  document.node.getId() + "]");
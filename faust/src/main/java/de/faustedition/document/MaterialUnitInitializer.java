@@ -19,15 +19,18 @@
 
 package de.faustedition.document;
 
+import com.google.common.base.Throwables;
 import de.faustedition.FaustAuthority;
 import de.faustedition.FaustURI;
 import de.faustedition.graph.FaustGraph;
+import de.faustedition.xml.XMLManifest;
 import de.faustedition.xml.XMLStorage;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
@@ -35,6 +38,7 @@ import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StopWatch;
 import org.xml.sax.SAXException;
 
+import java.io.File;
 import java.io.IOException;
 
 @Component
@@ -57,6 +61,9 @@ public class MaterialUnitInitializer implements InitializingBean {
 	@Autowired
 	private ApplicationContext applicationContext;
 
+	@Autowired
+	private Environment environment;
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
@@ -64,6 +71,11 @@ public class MaterialUnitInitializer implements InitializingBean {
 			protected void doInTransactionWithoutResult(TransactionStatus status) {
 				if (graph.getMaterialUnits().isEmpty()) {
 					feedGraph();
+				} else if (!graph.getDb().index().existsForNodes(Document.INDEX_ID_TRIGRAM)) {
+					if (graph.getDb().index().existsForNodes(Document.LEGACY_INDEX_ID_TRIGRAM)) {
+						graph.getDb().index().forNodes(Document.LEGACY_INDEX_ID_TRIGRAM).delete();
+					}
+					indexTrigrams();
 				}
 			}
 		});
@@ -73,6 +85,16 @@ public class MaterialUnitInitializer implements InitializingBean {
 		logger.info("Initializing material unit graph");
 		StopWatch sw = new StopWatch();
 		sw.start();
+
+		// the graph is built from the whole store, so the manifest of a previous graph does not apply anymore
+		try {
+			final File manifest = XMLManifest.location(environment.getRequiredProperty("graph.home", File.class));
+			if (manifest.exists() && !manifest.delete()) {
+				throw new IllegalStateException("Cannot delete outdated XML manifest " + manifest);
+			}
+		} catch (IOException e) {
+			throw Throwables.propagate(e);
+		}
         int documentCount = 0;
         // This iteration is only to count the number of documents for the following log-message
         for (final FaustURI documentDescriptor : xml.iterate(DOCUMENT_BASE_URI)) {
@@ -97,5 +119,19 @@ public class MaterialUnitInitializer implements InitializingBean {
 		logger.info("Initialized material unit graph in {}s", sw.getTotalTimeSeconds());
 	}
 
+	/**
+	 * Fills the trigram index of document identifiers for graphs created before it was introduced or before
+	 * identifiers were padded at both ends.
+	 */
+	protected void indexTrigrams() {
+		logger.info("Indexing document identifier trigrams");
+		for (MaterialUnit mu : graph.getMaterialUnits()) {
+			final MaterialUnit typed = MaterialUnit.forNode(mu.node);
+			if (typed instanceof Document) {
+				((Document) typed).indexTrigrams();
+			}
+		}
+	}
+
 
 }
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.facsimile;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes facsimiles on a bounded pool of threads, reusing open image readers.
+ * <p/>
+ * At most <code>facsimile.decoder.threads</code> decoding tasks run at a time, so that a burst of tile requests
+ * cannot starve the threads serving other requests. Per facsimile, up to <code>facsimile.decoder.readers</code>
+ * readers are kept open between tasks; further tasks decoding the same facsimile at the same time open a reader
+ * of their own rather than waiting. Readers left idle for <code>facsimile.decoder.idle</code> seconds are
+ * closed. The dimensions of each facsimile's resolution levels are cached, so that they can be looked up without
+ * decoding anything.
+ */
+@Component
+public class FacsimileDecoder implements InitializingBean, DisposableBean {
+	private static final Logger LOG = LoggerFactory.getLogger(FacsimileDecoder.class);
+
+	@Autowired
+	private Environment environment;
+
+	private ExecutorService executor;
+	private ScheduledExecutorService evictor;
+	private int readersPerFile;
+	private long idleTimeout;
+
+	private final ConcurrentMap<File, ReaderPool> pools = Maps.newConcurrentMap();
+
+	private final ConcurrentMap<File, Dimensions> dimensions = CacheBuilder.newBuilder()
+			.maximumSize(16384)
+			.<File, Dimensions>build()
+			.asMap();
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		final int threads = environment.getProperty("facsimile.decoder.threads", Integer.class,
+				java.lang.Runtime.getRuntime().availableProcessors());
+		this.readersPerFile = Math.max(1, environment.getProperty("facsimile.decoder.readers", Integer.class, 2));
+		this.idleTimeout = TimeUnit.SECONDS.toMillis(environment.getProperty("facsimile.decoder.idle", Long.class, 60L));
+
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new DaemonThreadFactory("facsimile-decoder"));
+		this.evictor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("facsimile-decoder-evictor"));
+		final long period = Math.max(1000, idleTimeout / 2);
+		evictor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				evictIdle();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		evictor.shutdownNow();
+		executor.shutdownNow();
+		for (ReaderPool pool : pools.values()) {
+			pool.close();
+		}
+		pools.clear();
+	}
+
+	/**
+	 * Reads from a facsimile on one of the decoder threads, waiting for the result.
+	 */
+	public <T> T decode(final File file, final ReaderCallback<T> callback) throws IOException {
+		try {
+			return executor.submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					return withReader(file, callback);
+				}
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decoding " + file, e);
+		} catch (ExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	/**
+	 * Renders a tile, clamping its zoom level to the levels available.
+	 */
+	public byte[] render(final FacsimileTile tile) throws IOException {
+		return decode(tile.getFile(), new ReaderCallback<byte[]>() {
+			@Override
+			public byte[] read(ImageReader reader) throws IOException {
+				final int imageIndex = Math.max(0, Math.min(tile.getZoom(), reader.getNumImages(true) - 1));
+				return FacsimileTile.render(reader, imageIndex, tile.getX(), tile.getY());
+			}
+		});
+	}
+
+	/**
+	 * @return the dimensions of all resolution levels of a facsimile, read from cache if the file is unchanged
+	 */
+	public Dimensions getDimensions(File file) throws IOException {
+		final long lastModified = file.lastModified();
+		final Dimensions cached = dimensions.get(file);
+		if (cached != null && cached.lastModified == lastModified) {
+			return cached;
+		}
+		final Dimensions read = decode(file, new ReaderCallback<Dimensions>() {
+			@Override
+			public Dimensions read(ImageReader reader) throws IOException {
+				final int levels = reader.getNumImages(true);
+				final int[] widths = new int[levels];
+				final int[] heights = new int[levels];
+				for (int level = 0; level < levels; level++) {
+					widths[level] = reader.getWidth(level);
+					heights[level] = reader.getHeight(level);
+				}
+				return new Dimensions(lastModified, widths, heights);
+			}
+		});
+		dimensions.put(file, read);
+		return read;
+	}
+
+	private <T> T withReader(File file, ReaderCallback<T> callback) throws Exception {
+		final ReaderPool pool = pool(file, file.lastModified());
+		// never park a decoder thread on the limit of a single facsimile; decode with a reader of its own instead
+		final boolean pooled = pool.permits.tryAcquire();
+		try {
+			ImageReader reader = (pooled ? pool.borrow() : null);
+			if (reader == null) {
+				reader = new FacsimileTile(file).createImageReader();
+			}
+			boolean reusable = false;
+			try {
+				final T result = callback.read(reader);
+				reusable = pooled;
+				return result;
+			} finally {
+				if (!reusable || !pool.giveBack(reader)) {
+					close(reader);
+				}
+			}
+		} finally {
+			if (pooled) {
+				pool.permits.release();
+			}
+		}
+	}
+
+	private ReaderPool pool(File file, long lastModified) {
+		while (true) {
+			final ReaderPool pool = pools.get(file);
+			if (pool != null && pool.lastModified == lastModified) {
+				return pool;
+			}
+			final ReaderPool created = new ReaderPool(lastModified);
+			if (pool == null ? pools.putIfAbsent(file, created) == null : pools.replace(file, pool, created)) {
+				if (pool != null) {
+					pool.close();
+				}
+				return created;
+			}
+		}
+	}
+
+	private static void close(ImageReader reader) {
+		try {
+			final Object input = reader.getInput();
+			reader.dispose();
+			if (input instanceof ImageInputStream) {
+				((ImageInputStream) input).close();
+			}
+		} catch (IOException e) {
+			LOG.warn("I/O error while closing image reader", e);
+		} catch (RuntimeException e) {
+			LOG.warn("Error while closing image reader", e);
+		}
+	}
+
+	private void evictIdle() {
+		final long threshold = System.currentTimeMillis() - idleTimeout;
+		for (Iterator<Map.Entry<File, ReaderPool>> it = pools.entrySet().iterator(); it.hasNext(); ) {
+			final Map.Entry<File, ReaderPool> entry = it.next();
+			if (entry.getValue().evictIdle(threshold)) {
+				pools.remove(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	public interface ReaderCallback<T> {
+		T read(ImageReader reader) throws IOException;
+	}
+
+	/**
+	 * The dimensions of a facsimile's resolution levels, level <code>0</code> being the highest resolution.
+	 */
+	public static class Dimensions {
+		private final long lastModified;
+		private final int[] widths;
+		private final int[] heights;
+
+		private Dimensions(long lastModified, int[] widths, int[] heights) {
+			this.lastModified = lastModified;
+			this.widths = widths;
+			this.heights = heights;
+		}
+
+		public int getLevels() {
+			return widths.length;
+		}
+
+		public int getWidth(int level) {
+			return widths[level];
+		}
+
+		public int getHeight(int level) {
+			return heights[level];
+		}
+	}
+
+	/**
+	 * Open readers of one facsimile in a given state.
+	 */
+	private class ReaderPool {
+		private final long lastModified;
+		private final Semaphore permits = new Semaphore(readersPerFile);
+		private final Deque<ImageReader> idle = new ArrayDeque<ImageReader>();
+		private final Deque<Long> idleSince = new ArrayDeque<Long>();
+		private boolean closed = false;
+
+		private ReaderPool(long lastModified) {
+			this.lastModified = lastModified;
+		}
+
+		synchronized ImageReader borrow() {
+			idleSince.pollFirst();
+			return idle.pollFirst();
+		}
+
+		/**
+		 * @return <code>false</code> if the reader has not been taken back and has to be disposed by the caller
+		 */
+		synchronized boolean giveBack(ImageReader reader) {
+			if (closed) {
+				return false;
+			}
+			idle.addFirst(reader);
+			idleSince.addFirst(System.currentTimeMillis());
+			return true;
+		}
+
+		/**
+		 * Disposes of readers idle since before the given time.
+		 *
+		 * @return <code>true</code> if no reader is left open or in use, so that the pool can be dropped
+		 */
+		boolean evictIdle(long threshold) {
+			final List<ImageReader> evicted = Lists.newArrayList();
+			final boolean empty;
+			synchronized (this) {
+				while (!idleSince.isEmpty() && idleSince.peekLast() < threshold) {
+					idleSince.pollLast();
+					evicted.add(idle.pollLast());
+				}
+				empty = idle.isEmpty() && permits.availablePermits() == readersPerFile;
+				if (empty) {
+					closed = true;
+				}
+			}
+			dispose(evicted);
+			return empty;
+		}
+
+		void close() {
+			final List<ImageReader> evicted;
+			synchronized (this) {
+				closed = true;
+				evicted = Lists.newArrayList(idle);
+				idle.clear();
+				idleSince.clear();
+			}
+			dispose(evicted);
+		}
+
+		private void dispose(List<ImageReader> readers) {
+			for (ImageReader reader : readers) {
+				FacsimileDecoder.close(reader);
+			}
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		private DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			final Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
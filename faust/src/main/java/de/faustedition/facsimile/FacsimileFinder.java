@@ -19,13 +19,22 @@
 
 package de.faustedition.facsimile;
 
+import de.faustedition.JsonRepresentationFactory;
+import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
-import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Ehcache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
 import org.restlet.Request;
 import org.restlet.Response;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.Conditions;
 import org.restlet.data.Form;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.EmptyRepresentation;
+import org.restlet.representation.Representation;
 import org.restlet.resource.Finder;
 import org.restlet.resource.ServerResource;
 import org.springframework.beans.factory.InitializingBean;
@@ -36,6 +45,9 @@ import org.springframework.util.Assert;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
@@ -43,35 +55,82 @@ import java.io.IOException;
 @Component
 public class FacsimileFinder extends Finder implements InitializingBean {
 
-	private static final String FACSIMILE_TILE_CACHE = "facsimileTiles";
-	private static final String FACSIMILE_METADATA_CACHE = "facsimileMetadata";
-
 	@Autowired
 	private Environment environment;
 
 	@Autowired
-	private CacheManager cacheManager;
+	private FacsimileDecoder decoder;
+
+	@Autowired
+	private FacsimileTileCache tileCache;
+
+	@Autowired
+	private JsonRepresentationFactory jsonFactory;
 
 	private File home;
 	private String fileExtension;
 	private File defaultFacsimile;
-	private Ehcache tileCache;
-	private Ehcache metadataCache;
+	private File tileHome;
+	private int maxAge;
+
+	/**
+	 * How long the outcome of a tile archive lookup is reused before the archive and its facsimile are checked for
+	 * changes again.
+	 */
+	private static final long TILE_ARCHIVE_CHECK_INTERVAL = 1000;
+
+	private final ConcurrentMap<File, TileArchiveLookup> tileArchives = CacheBuilder.newBuilder()
+			.maximumSize(1024)
+			.<File, TileArchiveLookup>build()
+			.asMap();
+
+	/**
+	 * Answers conditional requests for tiles and metadata with <code>304 Not Modified</code> right away, before a
+	 * resource is built or any image data is looked up.
+	 */
+	@Override
+	public void handle(Request request, Response response) {
+		final Form query = request.getResourceRef().getQueryAsForm();
+		if (query.getFirst("cache-statistics") == null) {
+			try {
+				final File facsimile = findFacsimile(request.getResourceRef().getRelativeRef().getPath());
+				final boolean metadata = (query.getFirst("metadata") != null);
+				final FacsimileTile tile = (facsimile == null ? null : (metadata ? new FacsimileTile(facsimile) : toTile(facsimile, query)));
+				if (tile != null && isNotModified(request.getConditions(), tile, metadata)) {
+					// the entity is not sent, but carries the entity tag for the response headers
+					final Representation entity = new EmptyRepresentation();
+					entity.setTag(getTag(tile, metadata));
+					response.setEntity(entity);
+					response.setStatus(Status.REDIRECTION_NOT_MODIFIED);
+					response.getCacheDirectives().addAll(cacheDirectives());
+					return;
+				}
+			} catch (IOException e) {
+				throw Throwables.propagate(e);
+			} catch (IllegalArgumentException e) {
+				// not found; left to find()
+			}
+		}
+		super.handle(request, response);
+	}
 
 	@Override
 	public ServerResource find(Request request, Response response) {
 		try {
-			final File facsimile = findFacsimile(request.getResourceRef().getRelativeRef().getPath());
 			final Form query = request.getResourceRef().getQueryAsForm();
+			if (query.getFirst("cache-statistics") != null) {
+				return new FacsimileTileCacheResource(tileCache, jsonFactory);
+			}
+
+			final File facsimile = findFacsimile(request.getResourceRef().getRelativeRef().getPath());
+			if (facsimile == null) {
+				return null;
+			}
 
 			if (query.getFirst("metadata") != null) {
-				return new FacsimileMetadataResource(metadataCache, new FacsimileTile(facsimile));
+				return new FacsimileMetadataResource(decoder, findTileArchive(facsimile), new FacsimileTile(facsimile), this);
 			} else {
-				return new FacsimileTileResource(tileCache, new FacsimileTile(
-					facsimile,
-					Math.max(0, Integer.parseInt(query.getFirstValue("zoom", "0"))),
-					Math.max(0, Integer.parseInt(query.getFirstValue("x", "0"))),
-					Math.max(0, Integer.parseInt(query.getFirstValue("y", "0")))));
+				return new FacsimileTileResource(tileCache, decoder, findTileArchive(facsimile), toTile(facsimile, query), this);
 			}
 		} catch (IOException e) {
 			throw Throwables.propagate(e);
@@ -80,12 +139,124 @@ public class FacsimileFinder extends Finder implements InitializingBean {
 		}
 	}
 
+	/**
+	 * @return a strong entity tag, derived from the identity of the facsimile file (path, modification time and
+	 * length) and the tile's coordinates or, for <code>metadata</code>, from the file alone
+	 */
+	public Tag getTag(FacsimileTile tile, boolean metadata) {
+		final File file = tile.getFile();
+		final StringBuilder key = new StringBuilder(file.getAbsolutePath())
+				.append('#').append(file.lastModified())
+				.append('#').append(file.length());
+		if (metadata) {
+			key.append("#metadata");
+		} else {
+			key.append('#').append(tile.getZoom()).append('/').append(tile.getX()).append('/').append(tile.getY());
+		}
+		return new Tag(Hashing.sha1().hashString(key, Charsets.UTF_8).toString(), false);
+	}
+
+	/**
+	 * @return directives allowing clients and proxies to keep tiles and metadata for <code>facsimile.max-age</code>
+	 * seconds; once that has passed, they are revalidated cheaply via their entity tags
+	 */
+	public List<CacheDirective> cacheDirectives() {
+		return Lists.newArrayList(CacheDirective.publicInfo(), CacheDirective.maxAge(maxAge));
+	}
+
+	private boolean isNotModified(Conditions conditions, FacsimileTile tile, boolean metadata) {
+		final List<Tag> noneMatch = conditions.getNoneMatch();
+		if (noneMatch != null && !noneMatch.isEmpty()) {
+			final Tag tag = getTag(tile, metadata);
+			for (Tag candidate : noneMatch) {
+				if (Tag.ALL.equals(candidate) || tag.getName().equals(candidate.getName())) {
+					return true;
+				}
+			}
+			// If-Modified-Since is to be ignored in the presence of If-None-Match
+			return false;
+		}
+
+		final Date modifiedSince = conditions.getModifiedSince();
+		if (modifiedSince != null) {
+			// HTTP dates have a resolution of seconds
+			return (tile.getFile().lastModified() / 1000) <= (modifiedSince.getTime() / 1000);
+		}
+		return false;
+	}
+
+	private static FacsimileTile toTile(File facsimile, Form query) {
+		return new FacsimileTile(
+				facsimile,
+				Math.max(0, Integer.parseInt(query.getFirstValue("zoom", "0"))),
+				Math.max(0, Integer.parseInt(query.getFirstValue("x", "0"))),
+				Math.max(0, Integer.parseInt(query.getFirstValue("y", "0"))));
+	}
+
 	public File findFacsimile(String path) throws IOException, IllegalArgumentException {
 		final File facsimile = new File(home, path.replaceAll("^/+", "") + "." + fileExtension);
 		Preconditions.checkArgument(!facsimile.exists() || (facsimile.isFile() && isInHome(facsimile)), path);
 		return (facsimile.exists() ? facsimile : defaultFacsimile);
 	}
 
+	/**
+	 * @return the archive of pre-rendered tiles for the given facsimile, or <code>null</code> if it has not been
+	 * tiled yet or has changed since; the outcome is reused for {@link #TILE_ARCHIVE_CHECK_INTERVAL} ms
+	 * @see FacsimileTiler
+	 */
+	public FacsimileTileArchive findTileArchive(File facsimile) {
+		if (tileHome == null || !isInHome(facsimile)) {
+			return null;
+		}
+		final long now = System.currentTimeMillis();
+		final TileArchiveLookup lookup = tileArchives.get(facsimile);
+		if (lookup != null && now - lookup.checked < TILE_ARCHIVE_CHECK_INTERVAL) {
+			return lookup.archive;
+		}
+
+		FacsimileTileArchive archive = (lookup == null ? null : lookup.archive);
+		if (archive == null || !archive.isOpen() || !archive.isCurrent(facsimile)) {
+			archive = openTileArchive(facsimile);
+		}
+		tileArchives.put(facsimile, new TileArchiveLookup(archive, now));
+		return archive;
+	}
+
+	private FacsimileTileArchive openTileArchive(File facsimile) {
+		final File archiveFile = getTileArchiveFile(facsimile);
+		if (!archiveFile.isFile()) {
+			return null;
+		}
+		try {
+			final FacsimileTileArchive archive = FacsimileTileArchive.open(archiveFile);
+			return (archive.isCurrent(facsimile) ? archive : null);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the location of the tile archive for the given facsimile, mirroring its path relative to the
+	 * facsimile home below <code>facsimile.tiles</code>
+	 */
+	public File getTileArchiveFile(File facsimile) {
+		Preconditions.checkState(tileHome != null, "facsimile.tiles not configured");
+		final String path = facsimile.getAbsolutePath().substring(home.getAbsolutePath().length());
+		return new File(tileHome, path.replaceAll("^/+", "") + ".tiles");
+	}
+
+	public File getTileHome() {
+		return tileHome;
+	}
+
+	public File getHome() {
+		return home;
+	}
+
+	public String getFileExtension() {
+		return fileExtension;
+	}
+
 	private boolean isInHome(File file) {
 		File parent = file.getParentFile();
 		while (parent != null) {
@@ -102,12 +273,23 @@ public class FacsimileFinder extends Finder implements InitializingBean {
 		this.home = environment.getRequiredProperty("facsimile.home", File.class);
 		this.fileExtension = environment.getRequiredProperty("facsimile.extension", String.class);
 		this.defaultFacsimile = environment.getProperty("facsimile.default", File.class);
+		this.tileHome = environment.getProperty("facsimile.tiles", File.class);
+		this.maxAge = environment.getProperty("facsimile.max-age", Integer.class, 2592000);
 
 		Assert.isTrue(home.isDirectory(), home + " is not a directory");
 		Assert.isTrue(defaultFacsimile == null || defaultFacsimile.isFile(), defaultFacsimile + " is not a file");
-
-		this.tileCache = cacheManager.addCacheIfAbsent(FACSIMILE_TILE_CACHE);
-		this.metadataCache = cacheManager.addCacheIfAbsent(FACSIMILE_METADATA_CACHE);
 	}
 
+	/**
+	 * The tile archive found for a facsimile, if any, and when it has been checked to be current.
+	 */
+	private static class TileArchiveLookup {
+		private final FacsimileTileArchive archive;
+		private final long checked;
+
+		private TileArchiveLookup(FacsimileTileArchive archive, long checked) {
+			this.archive = archive;
+			this.checked = checked;
+		}
+	}
 }
@@ -20,8 +20,6 @@
 package de.faustedition.facsimile;
 
 import com.google.common.collect.Maps;
-import net.sf.ehcache.Ehcache;
-import net.sf.ehcache.Element;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.restlet.data.MediaType;
 import org.restlet.representation.Representation;
@@ -29,7 +27,6 @@ import org.restlet.representation.StringRepresentation;
 import org.restlet.resource.Get;
 import org.restlet.resource.ServerResource;
 
-import javax.imageio.ImageReader;
 import java.io.IOException;
 import java.util.Date;
 import java.util.Map;
@@ -40,46 +37,42 @@ import java.util.Map;
 public class FacsimileMetadataResource extends ServerResource {
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
-    private final Ehcache cache;
+    private final FacsimileDecoder decoder;
+    private final FacsimileTileArchive archive;
     private final FacsimileTile facsimile;
+    private final FacsimileFinder finder;
 
-    public FacsimileMetadataResource(Ehcache cache, FacsimileTile facsimile) {
-        this.cache = cache;
+    public FacsimileMetadataResource(FacsimileDecoder decoder, FacsimileTileArchive archive, FacsimileTile facsimile, FacsimileFinder finder) {
+        this.decoder = decoder;
+        this.archive = archive;
         this.facsimile = facsimile;
+        this.finder = finder;
     }
 
     @Get("json")
     public Representation metadata() throws IOException {
-        final Element cacheElement = cache.get(facsimile);
-        if (cacheElement != null) {
-            if (cacheElement.getCreationTime() >= facsimile.getFile().lastModified()) {
-                return toRepresentation((String) cacheElement.getValue());
-            }
-            cache.remove(facsimile);
-        }
+        getResponse().getCacheDirectives().addAll(finder.cacheDirectives());
 
-        ImageReader reader = null;
-        try {
-            reader = facsimile.createImageReader();
-            final Map<String, Object> metadataMap = Maps.newHashMap();
-            metadataMap.put("width", reader.getWidth(0));
-            metadataMap.put("height", reader.getHeight(0));
-            metadataMap.put("maxZoom", reader.getNumImages(true) - 1);
+        final Map<String, Object> metadataMap = Maps.newHashMap();
+        if (archive != null) {
+            metadataMap.put("width", archive.getWidth(0));
+            metadataMap.put("height", archive.getHeight(0));
+            metadataMap.put("maxZoom", archive.getLevels() - 1);
+            metadataMap.put("tileSize", archive.getTileSize());
+        } else {
+            final FacsimileDecoder.Dimensions dimensions = decoder.getDimensions(facsimile.getFile());
+            metadataMap.put("width", dimensions.getWidth(0));
+            metadataMap.put("height", dimensions.getHeight(0));
+            metadataMap.put("maxZoom", dimensions.getLevels() - 1);
             metadataMap.put("tileSize", FacsimileTile.SIZE);
-
-            final String metadata = OBJECT_MAPPER.writeValueAsString(metadataMap);
-            cache.put(new Element(facsimile, metadata));
-            return toRepresentation(metadata);
-        } finally {
-            if (reader != null) {
-                reader.dispose();
-            }
         }
+        return toRepresentation(OBJECT_MAPPER.writeValueAsString(metadataMap));
     }
 
     private StringRepresentation toRepresentation(String metadata) {
         final StringRepresentation representation = new StringRepresentation(metadata, MediaType.APPLICATION_JSON);
         representation.setModificationDate(new Date(facsimile.getFile().lastModified()));
+        representation.setTag(finder.getTag(facsimile, true));
         return representation;
     }
 }
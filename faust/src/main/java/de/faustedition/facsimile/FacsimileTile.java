@@ -23,9 +23,12 @@ import com.google.common.base.Objects;
 import com.google.common.collect.Iterators;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
 import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
@@ -74,6 +77,33 @@ public class FacsimileTile implements Serializable {
 		}
 	}
 
+	/**
+	 * Decodes a tile from the given image and encodes it as JPEG.
+	 *
+	 * @param reader     reader of a tiled, multi-resolution image
+	 * @param imageIndex the resolution level, <code>0</code> being the highest resolution
+	 * @param column     the tile's column within the level
+	 * @param row        the tile's row within the level
+	 */
+	public static byte[] render(ImageReader reader, int imageIndex, int column, int row) throws IOException {
+		final int imageWidth = reader.getWidth(imageIndex);
+		final int imageHeight = reader.getHeight(imageIndex);
+		final int x = column * SIZE;
+		final int y = row * SIZE;
+		final ImageReadParam parameters = reader.getDefaultReadParam();
+		parameters.setSourceRegion(new Rectangle(
+				Math.min(x, imageWidth),
+				Math.min(y, imageHeight),
+				Math.min(SIZE, Math.max(0, imageWidth - x)),
+				Math.min(SIZE, Math.max(0, imageHeight - y))
+		));
+		final BufferedImage tileImage = reader.read(imageIndex, parameters);
+
+		final ByteArrayOutputStream tileDataStream = new ByteArrayOutputStream();
+		ImageIO.write(tileImage, "JPEG", tileDataStream);
+		return tileDataStream.toByteArray();
+	}
+
 	public File getFile() {
 		return file;
 	}
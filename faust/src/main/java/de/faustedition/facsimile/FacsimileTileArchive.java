@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.facsimile;
+
+import javax.imageio.ImageReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A packed archive of all pre-rendered tiles of a facsimile, served from a memory-mapped file.
+ * <p/>
+ * Layout (all numbers big-endian):
+ * <pre>
+ * header:  int magic, int version, long source modification time, long source length, int tile size, int levels
+ * levels:  per level int width, int height, int columns, int rows
+ * index:   per tile, level by level and row by row, long offset, int length
+ * tiles:   JPEG-encoded tile data
+ * </pre>
+ *
+ * @see FacsimileTiler
+ */
+public class FacsimileTileArchive {
+	private static final int MAGIC = 0x46544131; // "FTA1"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+	private static final int LEVEL_SIZE = 4 * 4;
+	private static final int INDEX_ENTRY_SIZE = 8 + 4;
+
+	private final File file;
+	private final long lastModified;
+	private final ByteBuffer buffer;
+	private final long sourceLastModified;
+	private final long sourceLength;
+	private final int tileSize;
+	private final int[] widths;
+	private final int[] heights;
+	private final int[] columns;
+	private final int[] rows;
+	private final int[] firstTile;
+	private final int indexStart;
+
+	private FacsimileTileArchive(File file, long lastModified, ByteBuffer buffer) throws IOException {
+		this.file = file;
+		this.lastModified = lastModified;
+		this.buffer = buffer;
+
+		final int capacity = buffer.capacity();
+		if (capacity < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException(file + " is not a facsimile tile archive");
+		}
+		this.sourceLastModified = buffer.getLong(8);
+		this.sourceLength = buffer.getLong(16);
+		this.tileSize = buffer.getInt(24);
+		final int levels = buffer.getInt(28);
+		if (levels < 0 || HEADER_SIZE + (long) levels * LEVEL_SIZE > capacity) {
+			throw new IOException(file + " is truncated");
+		}
+
+		this.widths = new int[levels];
+		this.heights = new int[levels];
+		this.columns = new int[levels];
+		this.rows = new int[levels];
+		this.firstTile = new int[levels];
+		long tiles = 0;
+		for (int level = 0; level < levels; level++) {
+			final int levelStart = HEADER_SIZE + level * LEVEL_SIZE;
+			widths[level] = buffer.getInt(levelStart);
+			heights[level] = buffer.getInt(levelStart + 4);
+			columns[level] = buffer.getInt(levelStart + 8);
+			rows[level] = buffer.getInt(levelStart + 12);
+			if (columns[level] < 0 || rows[level] < 0) {
+				throw new IOException(file + " has an invalid tile grid at level " + level);
+			}
+			firstTile[level] = (int) tiles;
+			tiles += (long) columns[level] * rows[level];
+			if (tiles > capacity / INDEX_ENTRY_SIZE) {
+				throw new IOException(file + " is truncated");
+			}
+		}
+		this.indexStart = HEADER_SIZE + levels * LEVEL_SIZE;
+		final long dataStart = indexStart + tiles * INDEX_ENTRY_SIZE;
+		if (dataStart > capacity) {
+			throw new IOException(file + " is truncated");
+		}
+
+		// getTile() relies on every index entry pointing into the mapped file
+		for (int tile = 0; tile < tiles; tile++) {
+			final int entry = indexStart + tile * INDEX_ENTRY_SIZE;
+			final long offset = buffer.getLong(entry);
+			final int length = buffer.getInt(entry + 8);
+			if (offset < dataStart || length < 0 || offset + length > capacity) {
+				throw new IOException(file + " has an invalid index entry for tile " + tile);
+			}
+		}
+	}
+
+	public static FacsimileTileArchive open(File file) throws IOException {
+		final long lastModified = file.lastModified();
+		final RandomAccessFile archive = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = archive.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to be mapped");
+			}
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new FacsimileTileArchive(file, lastModified, buffer);
+		} finally {
+			archive.close();
+		}
+	}
+
+	/**
+	 * Renders all tiles of all resolution levels of a facsimile into an archive.
+	 * <p/>
+	 * The archive is written to a temporary file first and renamed afterwards, so readers never see a partially
+	 * written archive.
+	 */
+	public static void write(File source, File target) throws IOException {
+		final long sourceLastModified = source.lastModified();
+		final long sourceLength = source.length();
+
+		final File parent = target.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Cannot create " + parent);
+		}
+		final File tempFile = new File(parent, target.getName() + ".tmp");
+
+		ImageReader reader = null;
+		final RandomAccessFile archive = new RandomAccessFile(tempFile, "rw");
+		try {
+			archive.setLength(0);
+			reader = new FacsimileTile(source).createImageReader();
+
+			final int levels = reader.getNumImages(true);
+			final int[] columns = new int[levels];
+			final int[] rows = new int[levels];
+			int tiles = 0;
+
+			archive.writeInt(MAGIC);
+			archive.writeInt(VERSION);
+			archive.writeLong(sourceLastModified);
+			archive.writeLong(sourceLength);
+			archive.writeInt(FacsimileTile.SIZE);
+			archive.writeInt(levels);
+			for (int level = 0; level < levels; level++) {
+				final int width = reader.getWidth(level);
+				final int height = reader.getHeight(level);
+				columns[level] = (width + FacsimileTile.SIZE - 1) / FacsimileTile.SIZE;
+				rows[level] = (height + FacsimileTile.SIZE - 1) / FacsimileTile.SIZE;
+				tiles += columns[level] * rows[level];
+
+				archive.writeInt(width);
+				archive.writeInt(height);
+				archive.writeInt(columns[level]);
+				archive.writeInt(rows[level]);
+			}
+
+			final long indexStart = archive.getFilePointer();
+			long offset = indexStart + (long) tiles * INDEX_ENTRY_SIZE;
+			int tile = 0;
+			for (int level = 0; level < levels; level++) {
+				for (int row = 0; row < rows[level]; row++) {
+					for (int column = 0; column < columns[level]; column++) {
+						final byte[] data = FacsimileTile.render(reader, level, column, row);
+
+						archive.seek(offset);
+						archive.write(data);
+
+						archive.seek(indexStart + (long) tile * INDEX_ENTRY_SIZE);
+						archive.writeLong(offset);
+						archive.writeInt(data.length);
+
+						offset += data.length;
+						tile++;
+					}
+				}
+			}
+		} finally {
+			archive.close();
+			if (reader != null) {
+				reader.dispose();
+			}
+		}
+
+		if (target.exists() && !target.delete()) {
+			throw new IOException("Cannot replace " + target);
+		}
+		if (!tempFile.renameTo(target)) {
+			throw new IOException("Cannot rename " + tempFile + " to " + target);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if this archive has been rendered from the given facsimile in its current state
+	 */
+	public boolean isCurrent(File source) {
+		return source.lastModified() == sourceLastModified && source.length() == sourceLength;
+	}
+
+	/**
+	 * @return <code>true</code> if the archive file has not been replaced since it was opened
+	 */
+	public boolean isOpen() {
+		return file.lastModified() == lastModified;
+	}
+
+	/**
+	 * @return the JPEG-encoded tile or <code>null</code> if the tile is not in the archive
+	 */
+	public ByteBuffer getTile(int level, int column, int row) {
+		if (level < 0 || level >= getLevels() || column < 0 || column >= columns[level] || row < 0 || row >= rows[level]) {
+			return null;
+		}
+		final int entry = indexStart + (firstTile[level] + row * columns[level] + column) * INDEX_ENTRY_SIZE;
+		// validated against the size of the mapped file on opening, so the offset fits into an int
+		final int offset = (int) buffer.getLong(entry);
+		final int length = buffer.getInt(entry + 8);
+
+		final ByteBuffer tile = buffer.duplicate();
+		tile.position(offset);
+		tile.limit(offset + length);
+		return tile.slice();
+	}
+
+	public int getLevels() {
+		return widths.length;
+	}
+
+	public int getWidth(int level) {
+		return widths[level];
+	}
+
+	public int getHeight(int level) {
+		return heights[level];
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + file + "]";
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.facsimile;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tiered cache of rendered facsimile tiles.
+ * <p/>
+ * The memory tier holds the most recently used tiles up to <code>facsimile.cache.memory</code> megabytes. Tiles
+ * evicted from it remain available in the disk tier below <code>facsimile.cache.dir</code> (if configured), which
+ * is bounded by <code>facsimile.cache.disk</code> megabytes. Concurrent misses for the same tile are coalesced,
+ * so that a tile is rendered only once, however many viewers request it at the same time.
+ * <p/>
+ * Cached tiles are tagged with the modification time of their facsimile and are discarded once it changes.
+ */
+@Component
+public class FacsimileTileCache implements InitializingBean {
+	private static final Logger LOG = LoggerFactory.getLogger(FacsimileTileCache.class);
+
+	private static final long MB = 1024 * 1024;
+	private static final String TILE_SUFFIX = ".tile";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	@Autowired
+	private Environment environment;
+
+	private Tier<FacsimileTile, Entry> memory;
+	private Tier<String, Long> disk;
+	private File directory;
+
+	private final ConcurrentMap<FacsimileTile, FutureTask<byte[]>> loading = Maps.newConcurrentMap();
+
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong memoryEvictions = new AtomicLong();
+	private final AtomicLong diskEvictions = new AtomicLong();
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		this.memory = new Tier<FacsimileTile, Entry>(environment.getProperty("facsimile.cache.memory", Long.class, 64L) * MB) {
+			@Override
+			protected long sizeOf(Entry value) {
+				return value.data.length;
+			}
+
+			@Override
+			protected void evicted(FacsimileTile key, Entry value) {
+				memoryEvictions.incrementAndGet();
+				if (disk != null) {
+					writeToDisk(key, value);
+				}
+			}
+		};
+
+		this.directory = environment.getProperty("facsimile.cache.dir", File.class);
+		if (directory != null) {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Cannot create " + directory);
+			}
+			this.disk = new Tier<String, Long>(environment.getProperty("facsimile.cache.disk", Long.class, 1024L) * MB) {
+				@Override
+				protected long sizeOf(Long value) {
+					return value;
+				}
+
+				@Override
+				protected void evicted(String key, Long value) {
+					diskEvictions.incrementAndGet();
+					new File(directory, key).delete();
+				}
+			};
+
+			final List<File> files = Lists.newArrayList(Arrays.asList(directory.listFiles()));
+			Collections.sort(files, new Comparator<File>() {
+				@Override
+				public int compare(File o1, File o2) {
+					final long diff = o1.lastModified() - o2.lastModified();
+					return (diff < 0 ? -1 : (diff > 0 ? 1 : 0));
+				}
+			});
+			for (File file : files) {
+				if (file.isFile() && file.getName().endsWith(TILE_SUFFIX)) {
+					disk.put(file.getName(), file.length());
+				} else if (file.isFile() && file.getName().endsWith(TEMP_SUFFIX)) {
+					// left over by writes interrupted by a shutdown
+					file.delete();
+				}
+			}
+			LOG.debug("Found {} tiles in disk cache {}", disk.count(), directory);
+		}
+	}
+
+	/**
+	 * Returns a tile from the cache, rendering it via the given loader on a miss.
+	 * <p/>
+	 * If the tile is being rendered for another caller already, waits for the result instead.
+	 */
+	public byte[] get(FacsimileTile tile, Callable<byte[]> loader) throws IOException {
+		final long lastModified = tile.getFile().lastModified();
+
+		final Entry cached = memory.get(tile);
+		if (cached != null && cached.lastModified == lastModified) {
+			memoryHits.incrementAndGet();
+			return cached.data;
+		}
+
+		final byte[] fromDisk = readFromDisk(tile, lastModified);
+		if (fromDisk != null) {
+			diskHits.incrementAndGet();
+			memory.put(tile, new Entry(lastModified, fromDisk));
+			return fromDisk;
+		}
+
+		final FutureTask<byte[]> task = new FutureTask<byte[]>(loader);
+		final FutureTask<byte[]> running = loading.putIfAbsent(tile, task);
+		try {
+			if (running != null) {
+				coalesced.incrementAndGet();
+				return running.get();
+			}
+
+			misses.incrementAndGet();
+			try {
+				task.run();
+				final byte[] data = task.get();
+				// cache before releasing the loader, so that later callers do not render the tile again
+				memory.put(tile, new Entry(lastModified, data));
+				return data;
+			} finally {
+				loading.remove(tile, task);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for " + tile, e);
+		} catch (ExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	public Map<String, Object> getStatistics() {
+		final Map<String, Object> statistics = Maps.newLinkedHashMap();
+		statistics.put("memoryHits", memoryHits.get());
+		statistics.put("diskHits", diskHits.get());
+		statistics.put("misses", misses.get());
+		statistics.put("coalescedMisses", coalesced.get());
+		statistics.put("memoryEvictions", memoryEvictions.get());
+		statistics.put("diskEvictions", diskEvictions.get());
+		statistics.put("memoryTiles", memory.count());
+		statistics.put("memoryBytes", memory.size());
+		statistics.put("diskTiles", (disk == null ? 0 : disk.count()));
+		statistics.put("diskBytes", (disk == null ? 0 : disk.size()));
+		return statistics;
+	}
+
+	private byte[] readFromDisk(FacsimileTile tile, long lastModified) {
+		if (disk == null) {
+			return null;
+		}
+		final String name = diskName(tile);
+		if (disk.get(name) == null) {
+			return null;
+		}
+		final File file = new File(directory, name);
+		try {
+			final DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try {
+				if (in.readLong() != lastModified) {
+					disk.remove(name);
+					file.delete();
+					return null;
+				}
+				final byte[] data = new byte[in.readInt()];
+				in.readFully(data);
+				return data;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			LOG.warn("Error reading tile from disk cache: " + file, e);
+			disk.remove(name);
+			return null;
+		}
+	}
+
+	private void writeToDisk(FacsimileTile tile, Entry entry) {
+		final String name = diskName(tile);
+		final File file = new File(directory, name);
+		File tempFile = null;
+		try {
+			// concurrent evictions of the same tile each write a file of their own
+			tempFile = File.createTempFile(name, TEMP_SUFFIX, directory);
+			final DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile));
+			try {
+				out.writeLong(entry.lastModified);
+				out.writeInt(entry.data.length);
+				out.write(entry.data);
+			} finally {
+				out.close();
+			}
+			if (!tempFile.renameTo(file)) {
+				throw new IOException("Cannot rename " + tempFile + " to " + file);
+			}
+			disk.put(name, file.length());
+		} catch (IOException e) {
+			LOG.warn("Error writing tile to disk cache: " + file, e);
+			if (tempFile != null) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	private static String diskName(FacsimileTile tile) {
+		final String key = tile.getFile().getAbsolutePath() + "#" + tile.getZoom() + "/" + tile.getX() + "/" + tile.getY();
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(Charsets.UTF_8));
+			final StringBuilder name = new StringBuilder(digest.length * 2 + 4);
+			for (byte b : digest) {
+				name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return name.append(TILE_SUFFIX).toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw Throwables.propagate(e);
+		}
+	}
+
+	private static class Entry {
+		private final long lastModified;
+		private final byte[] data;
+
+		private Entry(long lastModified, byte[] data) {
+			this.lastModified = lastModified;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * A least-recently-used map bounded by the total size of its values.
+	 */
+	private abstract static class Tier<K, V> {
+		private final long capacity;
+		private final LinkedHashMap<K, V> entries = new LinkedHashMap<K, V>(16, 0.75f, true);
+		private long size = 0;
+
+		private Tier(long capacity) {
+			this.capacity = capacity;
+		}
+
+		protected abstract long sizeOf(V value);
+
+		protected abstract void evicted(K key, V value);
+
+		synchronized V get(K key) {
+			return entries.get(key);
+		}
+
+		void put(K key, V value) {
+			final List<Map.Entry<K, V>> evicted = Lists.newArrayList();
+			synchronized (this) {
+				final V previous = entries.put(key, value);
+				if (previous != null) {
+					size -= sizeOf(previous);
+				}
+				size += sizeOf(value);
+
+				for (Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator(); size > capacity && it.hasNext(); ) {
+					final Map.Entry<K, V> eldest = it.next();
+					if (eldest.getKey().equals(key)) {
+						continue;
+					}
+					it.remove();
+					size -= sizeOf(eldest.getValue());
+					evicted.add(eldest);
+				}
+			}
+			for (Map.Entry<K, V> entry : evicted) {
+				evicted(entry.getKey(), entry.getValue());
+			}
+		}
+
+		synchronized V remove(K key) {
+			final V removed = entries.remove(key);
+			if (removed != null) {
+				size -= sizeOf(removed);
+			}
+			return removed;
+		}
+
+		synchronized int count() {
+			return entries.size();
+		}
+
+		synchronized long size() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.facsimile;
+
+import de.faustedition.JsonRepresentationFactory;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * Reports hit, miss and eviction counters of the {@link FacsimileTileCache}.
+ */
+public class FacsimileTileCacheResource extends ServerResource {
+    private final FacsimileTileCache cache;
+    private final JsonRepresentationFactory jsonFactory;
+
+    public FacsimileTileCacheResource(FacsimileTileCache cache, JsonRepresentationFactory jsonFactory) {
+        this.cache = cache;
+        this.jsonFactory = jsonFactory;
+    }
+
+    @Get("json")
+    public Representation statistics() {
+        return jsonFactory.map(cache.getStatistics(), false);
+    }
+}
@@ -19,92 +19,81 @@
 
 package de.faustedition.facsimile;
 
-import net.sf.ehcache.Ehcache;
-import net.sf.ehcache.Element;
 import org.restlet.data.MediaType;
 import org.restlet.representation.OutputRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
 import org.restlet.resource.ServerResource;
 
-import javax.imageio.ImageIO;
-import javax.imageio.ImageReadParam;
-import javax.imageio.ImageReader;
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.Date;
+import java.util.concurrent.Callable;
 
 /**
 * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
 */
 public class FacsimileTileResource extends ServerResource {
 
-    private final Ehcache cache;
+    private final FacsimileTileCache cache;
+    private final FacsimileDecoder decoder;
+    private final FacsimileTileArchive archive;
     private final FacsimileTile tile;
+    private final FacsimileFinder finder;
 
-    public FacsimileTileResource(Ehcache cache, FacsimileTile tile) {
+    public FacsimileTileResource(FacsimileTileCache cache, FacsimileDecoder decoder, FacsimileTileArchive archive, FacsimileTile tile, FacsimileFinder finder) {
         super();
         this.cache = cache;
+        this.decoder = decoder;
+        this.archive = archive;
         this.tile = tile;
+        this.finder = finder;
     }
 
     @Get("jpg")
     public Representation image() throws IOException {
-        final Element cacheElement = cache.get(tile);
-        if (cacheElement != null) {
-            if (cacheElement.getCreationTime() >= tile.getFile().lastModified()) {
-                return new FacsimileTileRepresentation((byte[]) cacheElement.getObjectValue());
+        getResponse().getCacheDirectives().addAll(finder.cacheDirectives());
+        if (archive != null) {
+            final int level = Math.max(0, Math.min(tile.getZoom(), archive.getLevels() - 1));
+            final ByteBuffer tileData = archive.getTile(level, tile.getX(), tile.getY());
+            if (tileData != null) {
+                return new FacsimileTileRepresentation(tileData);
             }
-            cache.remove(tile);
         }
 
-        final ByteArrayOutputStream tileDataStream = new ByteArrayOutputStream();
-        ImageReader reader = null;
-        try {
-            reader = tile.createImageReader();
-            final int imageIndex = Math.max(0, Math.min(tile.getZoom(), reader.getNumImages(true) - 1));
-            final int imageWidth = reader.getWidth(imageIndex);
-            final int imageHeight = reader.getHeight(imageIndex);
-            final int x = tile.getX() * FacsimileTile.SIZE;
-            final int y = tile.getY() * FacsimileTile.SIZE;
-            final ImageReadParam parameters = reader.getDefaultReadParam();
-            final Rectangle tile = new Rectangle(
-                    Math.min(x, imageWidth),
-                    Math.min(y, imageHeight),
-                    Math.min(FacsimileTile.SIZE, Math.max(0, imageWidth - x)),
-                    Math.min(FacsimileTile.SIZE, Math.max(0, imageHeight - y))
-            );
-            parameters.setSourceRegion(tile);
-            final BufferedImage tileImage = reader.read(imageIndex, parameters);
-
-            ImageIO.write(tileImage, "JPEG", tileDataStream);
-        } finally {
-            if (reader != null) {
-                reader.dispose();
+        return new FacsimileTileRepresentation(cache.get(tile, new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return decoder.render(tile);
             }
-        }
-
-        final byte[] tileData = tileDataStream.toByteArray();
-        cache.put(new Element(tile, tileData));
-        return new FacsimileTileRepresentation(tileData);
+        }));
     }
 
     private class FacsimileTileRepresentation extends OutputRepresentation {
 
-        private final byte[] data;
+        private final ByteBuffer data;
 
         public FacsimileTileRepresentation(byte[] data) {
-            super(MediaType.IMAGE_JPEG);
+            this(ByteBuffer.wrap(data));
+        }
+
+        public FacsimileTileRepresentation(ByteBuffer data) {
+            super(MediaType.IMAGE_JPEG, data.remaining());
             this.data = data;
             setModificationDate(new Date(tile.getFile().lastModified()));
+            setTag(finder.getTag(tile, false));
         }
 
         @Override
         public void write(OutputStream outputStream) throws IOException {
-            outputStream.write(data);
+            final ByteBuffer buffer = data.duplicate();
+            final WritableByteChannel channel = Channels.newChannel(outputStream);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
         }
     }
 }
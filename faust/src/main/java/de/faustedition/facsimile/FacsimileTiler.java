@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.facsimile;
+
+import com.google.common.collect.Lists;
+import de.faustedition.Runtime;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StopWatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pre-renders all tiles of all facsimiles below <code>facsimile.home</code> into {@link FacsimileTileArchive tile
+ * archives} below <code>facsimile.tiles</code>.
+ * <p/>
+ * Only facsimiles without an archive or with an outdated one are rendered.
+ */
+@Component
+public class FacsimileTiler extends Runtime implements Runnable {
+
+	@Autowired
+	private Environment environment;
+
+	@Autowired
+	private FacsimileFinder facsimileFinder;
+
+	@Autowired
+	private Logger logger;
+
+	public static void main(String... args) throws Exception {
+		main(FacsimileTiler.class, args);
+		System.exit(0);
+	}
+
+	@Override
+	public void run() {
+		if (facsimileFinder.getTileHome() == null) {
+			logger.error("No directory for tile archives configured (facsimile.tiles)");
+			return;
+		}
+
+		final StopWatch sw = new StopWatch();
+		sw.start();
+
+		final List<File> facsimiles = Lists.newArrayList();
+		final String suffix = "." + facsimileFinder.getFileExtension();
+		try {
+			Files.walkFileTree(facsimileFinder.getHome().toPath(), new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if (attrs.isRegularFile() && file.getFileName().toString().endsWith(suffix)) {
+						facsimiles.add(file.toFile());
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			logger.error("I/O error while listing facsimiles", e);
+			return;
+		}
+
+		final int total = facsimiles.size();
+		final AtomicInteger tiled = new AtomicInteger();
+		final List<Callable<Void>> tasks = Lists.newArrayListWithCapacity(total);
+		for (final File facsimile : facsimiles) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					if (facsimileFinder.findTileArchive(facsimile) != null) {
+						return null;
+					}
+					try {
+						FacsimileTileArchive.write(facsimile, facsimileFinder.getTileArchiveFile(facsimile));
+						final int count = tiled.incrementAndGet();
+						if (logger.isDebugEnabled()) {
+							logger.debug("Tiled {} ({} of {})", new Object[] { facsimile, count, total });
+						}
+					} catch (Exception e) {
+						logger.warn("Error while tiling " + facsimile, e);
+					}
+					return null;
+				}
+			});
+		}
+
+		final int threads = environment.getProperty("facsimile.tiler.threads", Integer.class,
+				java.lang.Runtime.getRuntime().availableProcessors());
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			executor.invokeAll(tasks);
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted while tiling facsimiles", e);
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+
+		sw.stop();
+		logger.info("Tiled {} of {} facsimiles in {}s", new Object[] { tiled.get(), total, sw.getTotalTimeSeconds() });
+	}
+}
@@ -35,7 +35,7 @@ import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StopWatch;
 
 @Component
-@DependsOn(value = "materialUnitInitializer")
+@DependsOn(value = { "materialUnitInitializer", "XMLSynchronizer" })
 public class GeneticRelationInitializer implements InitializingBean {
 
 	public static final FaustURI GENETIC_BASE_URI = new FaustURI(FaustAuthority.XML, "/genesis");
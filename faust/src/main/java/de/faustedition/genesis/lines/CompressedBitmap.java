@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.genesis.lines;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * An immutable, compressed set of non-negative integers.
+ * <p/>
+ * Values are partitioned by their upper 16 bits. Each partition is stored either as a sorted array of its lower 16
+ * bits, as long as it holds at most 4096 values, or as a bitmap of 65536 bits otherwise, whichever is smaller. Unions
+ * and intersections work partition by partition without decompressing the whole set.
+ */
+public final class CompressedBitmap {
+
+	public static final CompressedBitmap EMPTY = new CompressedBitmap(new char[0], new Object[0]);
+
+	private static final int ARRAY_MAX = 4096;
+	private static final int BITMAP_WORDS = 1024;
+
+	private final char[] keys;
+	private final Object[] containers;
+	private final int cardinality;
+
+	private CompressedBitmap(char[] keys, Object[] containers) {
+		this.keys = keys;
+		this.containers = containers;
+		int cardinality = 0;
+		for (Object container : containers) {
+			cardinality += cardinality(container);
+		}
+		this.cardinality = cardinality;
+	}
+
+	/**
+	 * @param values distinct non-negative values in ascending order
+	 */
+	public static CompressedBitmap of(int... values) {
+		final SortedMap<Character, Object> containers = Maps.newTreeMap();
+		int start = 0;
+		while (start < values.length) {
+			Preconditions.checkArgument(values[start] >= 0, "Negative value: " + values[start]);
+			Preconditions.checkArgument(start == 0 || values[start] > values[start - 1], "Values not distinct and ascending");
+			final char key = high(values[start]);
+			int end = start + 1;
+			while (end < values.length && high(values[end]) == key) {
+				Preconditions.checkArgument(values[end] > values[end - 1], "Values not distinct and ascending");
+				end++;
+			}
+			final char[] array = new char[end - start];
+			for (int i = start; i < end; i++) {
+				array[i - start] = low(values[i]);
+			}
+			containers.put(key, (array.length > ARRAY_MAX ? toBitmap(array, array.length) : array));
+			start = end;
+		}
+		return create(containers);
+	}
+
+	public static CompressedBitmap of(BitSet bits) {
+		final int[] values = new int[bits.cardinality()];
+		for (int i = 0, value = bits.nextSetBit(0); value >= 0; i++, value = bits.nextSetBit(value + 1)) {
+			values[i] = value;
+		}
+		return of(values);
+	}
+
+	/**
+	 * @return the union of all given sets
+	 */
+	public static CompressedBitmap union(Iterable<CompressedBitmap> bitmaps) {
+		// arrays are merged as arrays and only turned into bitmaps once they outgrow ARRAY_MAX; bitmaps in this map
+		// are always copies, so that they can be modified in place
+		final SortedMap<Character, Object> containers = Maps.newTreeMap();
+		for (CompressedBitmap bitmap : bitmaps) {
+			for (int i = 0; i < bitmap.keys.length; i++) {
+				final Object target = containers.get(bitmap.keys[i]);
+				final Object container = bitmap.containers[i];
+				if (target == null) {
+					containers.put(bitmap.keys[i], (container instanceof char[] ? container : ((long[]) container).clone()));
+				} else if (target instanceof long[]) {
+					or((long[]) target, container);
+				} else if (container instanceof char[]) {
+					containers.put(bitmap.keys[i], or((char[]) target, (char[]) container));
+				} else {
+					final long[] words = ((long[]) container).clone();
+					or(words, target);
+					containers.put(bitmap.keys[i], words);
+				}
+			}
+		}
+		return create(containers);
+	}
+
+	public CompressedBitmap or(CompressedBitmap other) {
+		return union(Arrays.asList(this, other));
+	}
+
+	public CompressedBitmap and(CompressedBitmap other) {
+		final SortedMap<Character, Object> result = Maps.newTreeMap();
+		for (int i = 0, j = 0; i < keys.length && j < other.keys.length; ) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				final Object container = and(containers[i], other.containers[j]);
+				if (cardinality(container) > 0) {
+					result.put(keys[i], container);
+				}
+				i++;
+				j++;
+			}
+		}
+		return create(result);
+	}
+
+	public boolean contains(int value) {
+		if (value < 0) {
+			return false;
+		}
+		final int index = Arrays.binarySearch(keys, high(value));
+		if (index < 0) {
+			return false;
+		}
+		final Object container = containers[index];
+		final char low = low(value);
+		if (container instanceof char[]) {
+			return Arrays.binarySearch((char[]) container, low) >= 0;
+		}
+		return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+	}
+
+	public int cardinality() {
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return cardinality == 0;
+	}
+
+	/**
+	 * @return all values in ascending order
+	 */
+	public int[] toArray() {
+		final int[] values = new int[cardinality];
+		int index = 0;
+		for (int i = 0; i < keys.length; i++) {
+			final int high = keys[i] << 16;
+			final Object container = containers[i];
+			if (container instanceof char[]) {
+				for (char low : (char[]) container) {
+					values[index++] = high | low;
+				}
+			} else {
+				final long[] words = (long[]) container;
+				for (int w = 0; w < BITMAP_WORDS; w++) {
+					for (long word = words[w]; word != 0; word &= (word - 1)) {
+						values[index++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+					}
+				}
+			}
+		}
+		return values;
+	}
+
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			out.writeChar(keys[i]);
+			final Object container = containers[i];
+			if (container instanceof char[]) {
+				final char[] array = (char[]) container;
+				out.writeShort(array.length);
+				for (char value : array) {
+					out.writeChar(value);
+				}
+			} else {
+				out.writeShort(-1);
+				for (long word : (long[]) container) {
+					out.writeLong(word);
+				}
+			}
+		}
+	}
+
+	public static CompressedBitmap read(DataInput in) throws IOException {
+		final int size = in.readInt();
+		final char[] keys = new char[size];
+		final Object[] containers = new Object[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = in.readChar();
+			final short length = in.readShort();
+			if (length < 0) {
+				final long[] words = new long[BITMAP_WORDS];
+				for (int w = 0; w < BITMAP_WORDS; w++) {
+					words[w] = in.readLong();
+				}
+				containers[i] = words;
+			} else {
+				final char[] array = new char[length];
+				for (int v = 0; v < array.length; v++) {
+					array[v] = in.readChar();
+				}
+				containers[i] = array;
+			}
+		}
+		return new CompressedBitmap(keys, containers);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof CompressedBitmap) {
+			final CompressedBitmap other = (CompressedBitmap) obj;
+			return cardinality == other.cardinality && Arrays.equals(toArray(), other.toArray());
+		}
+		return super.equals(obj);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(toArray());
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	private static CompressedBitmap create(SortedMap<Character, Object> containers) {
+		if (containers.isEmpty()) {
+			return EMPTY;
+		}
+		final char[] keys = new char[containers.size()];
+		final Object[] values = new Object[containers.size()];
+		int i = 0;
+		for (Map.Entry<Character, Object> entry : containers.entrySet()) {
+			keys[i] = entry.getKey();
+			values[i] = entry.getValue();
+			i++;
+		}
+		return new CompressedBitmap(keys, values);
+	}
+
+	private static Object and(Object a, Object b) {
+		if (a instanceof char[] && b instanceof char[]) {
+			final char[] x = (char[]) a;
+			final char[] y = (char[]) b;
+			final char[] result = new char[Math.min(x.length, y.length)];
+			int size = 0;
+			for (int i = 0, j = 0; i < x.length && j < y.length; ) {
+				if (x[i] < y[j]) {
+					i++;
+				} else if (x[i] > y[j]) {
+					j++;
+				} else {
+					result[size++] = x[i];
+					i++;
+					j++;
+				}
+			}
+			return Arrays.copyOf(result, size);
+		}
+		if (a instanceof char[] || b instanceof char[]) {
+			final char[] array = (char[]) (a instanceof char[] ? a : b);
+			final long[] words = (long[]) (a instanceof char[] ? b : a);
+			final char[] result = new char[array.length];
+			int size = 0;
+			for (char value : array) {
+				if ((words[value >>> 6] & (1L << value)) != 0) {
+					result[size++] = value;
+				}
+			}
+			return Arrays.copyOf(result, size);
+		}
+		final long[] x = (long[]) a;
+		final long[] y = (long[]) b;
+		final long[] result = new long[BITMAP_WORDS];
+		for (int w = 0; w < BITMAP_WORDS; w++) {
+			result[w] = x[w] & y[w];
+		}
+		return compact(result);
+	}
+
+	/**
+	 * @return the sorted union of both arrays, as a bitmap if it holds more than {@link #ARRAY_MAX} values
+	 */
+	private static Object or(char[] x, char[] y) {
+		final char[] result = new char[x.length + y.length];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < x.length && j < y.length) {
+			if (x[i] < y[j]) {
+				result[size++] = x[i++];
+			} else if (x[i] > y[j]) {
+				result[size++] = y[j++];
+			} else {
+				result[size++] = x[i++];
+				j++;
+			}
+		}
+		while (i < x.length) {
+			result[size++] = x[i++];
+		}
+		while (j < y.length) {
+			result[size++] = y[j++];
+		}
+		return (size > ARRAY_MAX ? toBitmap(result, size) : Arrays.copyOf(result, size));
+	}
+
+	/**
+	 * Adds the values of the given container to a bitmap.
+	 */
+	private static void or(long[] words, Object container) {
+		if (container instanceof char[]) {
+			for (char value : (char[]) container) {
+				words[value >>> 6] |= (1L << value);
+			}
+		} else {
+			final long[] source = (long[]) container;
+			for (int w = 0; w < BITMAP_WORDS; w++) {
+				words[w] |= source[w];
+			}
+		}
+	}
+
+	/**
+	 * @return the given bitmap or an equivalent array, if that is smaller
+	 */
+	private static Object compact(long[] words) {
+		int cardinality = 0;
+		for (long word : words) {
+			cardinality += Long.bitCount(word);
+		}
+		if (cardinality > ARRAY_MAX) {
+			return words;
+		}
+		final char[] array = new char[cardinality];
+		int index = 0;
+		for (int w = 0; w < BITMAP_WORDS; w++) {
+			for (long word = words[w]; word != 0; word &= (word - 1)) {
+				array[index++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+			}
+		}
+		return array;
+	}
+
+	private static long[] toBitmap(char[] array, int length) {
+		final long[] words = new long[BITMAP_WORDS];
+		for (int i = 0; i < length; i++) {
+			words[array[i] >>> 6] |= (1L << array[i]);
+		}
+		return words;
+	}
+
+	private static int cardinality(Object container) {
+		if (container instanceof char[]) {
+			return ((char[]) container).length;
+		}
+		int cardinality = 0;
+		for (long word : (long[]) container) {
+			cardinality += Long.bitCount(word);
+		}
+		return cardinality;
+	}
+
+	private static char high(int value) {
+		return (char) (value >>> 16);
+	}
+
+	private static char low(int value) {
+		return (char) value;
+	}
+}
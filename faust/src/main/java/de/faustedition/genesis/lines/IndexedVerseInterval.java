@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.genesis.lines;
+
+import de.faustedition.document.MaterialUnit;
+import eu.interedition.text.neo4j.LayerNode;
+import eu.interedition.text.neo4j.Neo4jTextRepository;
+import org.codehaus.jackson.JsonNode;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+/**
+ * A verse interval as held by the {@link VerseIntervalIndex}, referring to its transcript and material unit by
+ * node id.
+ */
+public class IndexedVerseInterval extends SimpleVerseInterval {
+	private final long transcriptId;
+	private final long materialUnitId;
+
+	public IndexedVerseInterval(int start, int end, long transcriptId, long materialUnitId) {
+		super(null, start, end);
+		this.transcriptId = transcriptId;
+		this.materialUnitId = materialUnitId;
+	}
+
+	public long getTranscriptId() {
+		return transcriptId;
+	}
+
+	public long getMaterialUnitId() {
+		return materialUnitId;
+	}
+
+	public LayerNode<JsonNode> getTranscript(Neo4jTextRepository<JsonNode> textRepo, GraphDatabaseService db) {
+		return new LayerNode<JsonNode>(textRepo, db.getNodeById(transcriptId));
+	}
+
+	public MaterialUnit getMaterialUnit(GraphDatabaseService db) {
+		return MaterialUnit.forNode(db.getNodeById(materialUnitId));
+	}
+}
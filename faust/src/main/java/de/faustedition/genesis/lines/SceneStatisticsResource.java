@@ -19,11 +19,9 @@
 
 package de.faustedition.genesis.lines;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import de.faustedition.JsonRepresentationFactory;
-import org.hibernate.SessionFactory;
-import org.neo4j.graphdb.GraphDatabaseService;
+import org.codehaus.jackson.JsonGenerator;
+import org.restlet.data.Status;
 import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
 import org.restlet.resource.ResourceException;
@@ -33,11 +31,12 @@ import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
+import java.io.IOException;
+import java.util.SortedSet;
 
 /**
+ * Number of material units transcribing at least one verse of each scene of a part.
+ *
  * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
  */
 @Component
@@ -45,58 +44,39 @@ import java.util.SortedMap;
 public class SceneStatisticsResource extends ServerResource {
 
 	@Autowired
-	private SessionFactory sessionFactory;
-
-	@Autowired
-	private GraphDatabaseService graphDb;
+	private VerseManager verseManager;
 
 	@Autowired
 	private JsonRepresentationFactory jsonRepresentationFactory;
 
-	private SortedMap<VerseInterval,Integer> sceneStatistics;
+	private SortedSet<VerseInterval> scenes;
 
 
 	@Override
 	protected void doInit() throws ResourceException {
-		/*
 		super.doInit();
-
-		sceneStatistics = Maps.newTreeMap(VerseInterval.INTERVAL_COMPARATOR);
 		try {
-			for (VerseInterval scene : VerseInterval.scenesOf(Integer.parseInt((String) getRequestAttributes().get("part")))) {
-				sceneStatistics.put(scene, 0);
-			}
-		} catch (NumberFormatException e) {
-			throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
+			scenes = VerseManager.scenesOf(Integer.parseInt((String) getRequestAttributes().get("part")));
 		} catch (IllegalArgumentException e) {
 			throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
 		}
-
-		final Session session = sessionFactory.getCurrentSession();
-		final Map<MaterialUnit, Collection<VerseInterval>> intervalIndex = VerseInterval.indexByMaterialUnit(graphDb, VerseInterval.all(session)).asMap();
-		for (Map.Entry<MaterialUnit, Collection<VerseInterval>> indexEntry : intervalIndex.entrySet()) {
-			for (VerseInterval sceneInterval : sceneStatistics.keySet()) {
-				for (VerseInterval documentInterval : indexEntry.getValue()) {
-					if (sceneInterval.overlapsWith(documentInterval)) {
-						sceneStatistics.put(sceneInterval, sceneStatistics.get(sceneInterval) + 1);
-						break;
-					}
-				}
-			}
-
-		}
-		*/
 	}
 
 	@Get("json")
 	public Representation chartData() {
-		final List<Map<String, Object>> chartData = Lists.newArrayList();
-		for (Map.Entry<VerseInterval, Integer> scene : sceneStatistics.entrySet()) {
-			final Map<String, Object> sceneData = Maps.newLinkedHashMap();
-			sceneData.put("scene", scene.getKey().getName());
-			sceneData.put("documents", scene.getValue());
-			chartData.add(sceneData);
-		}
-		return jsonRepresentationFactory.map(chartData, false);
+		final VerseCoverage coverage = verseManager.getCoverage();
+		return jsonRepresentationFactory.stream(new JsonRepresentationFactory.Generator() {
+			@Override
+			public void generate(JsonGenerator jg) throws IOException {
+				jg.writeStartArray();
+				for (VerseInterval scene : scenes) {
+					jg.writeStartObject();
+					jg.writeStringField("scene", scene.getName());
+					jg.writeNumberField("documents", coverage.coveringScene(scene).cardinality());
+					jg.writeEndObject();
+				}
+				jg.writeEndArray();
+			}
+		}, false);
 	}
 }
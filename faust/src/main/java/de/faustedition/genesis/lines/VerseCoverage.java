@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.genesis.lines;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of which material units transcribe which verses.
+ * <p/>
+ * Material units are numbered densely; per verse, a {@link CompressedBitmap} holds the numbers of all material units
+ * with a transcript covering it. The material units covering a range of verses are thus found by the union of the
+ * bitmaps of the range, those covering all of its verses by their intersection.
+ * <p/>
+ * Snapshots can be written to and read from a file. Each snapshot carries a fingerprint of the verse intervals it
+ * has been built from, so that a stored snapshot can be checked against the current intervals without rebuilding
+ * it.
+ */
+public class VerseCoverage {
+	private static final int MAGIC = 0x46564331; // "FVC1"
+	private static final int VERSION = 1;
+
+	private final long fingerprint;
+	private final long[] materialUnitIds;
+	private final List<List<IndexedVerseInterval>> intervals;
+	private final CompressedBitmap[] verses;
+
+	private VerseCoverage(long fingerprint, long[] materialUnitIds, List<List<IndexedVerseInterval>> intervals, CompressedBitmap[] verses) {
+		this.fingerprint = fingerprint;
+		this.materialUnitIds = materialUnitIds;
+		this.intervals = intervals;
+		this.verses = verses;
+	}
+
+	public static VerseCoverage build(Iterable<IndexedVerseInterval> verseIntervals) {
+		final ListMultimap<Long, IndexedVerseInterval> byMaterialUnit = ArrayListMultimap.create();
+		int maxVerse = -1;
+		for (IndexedVerseInterval interval : verseIntervals) {
+			if (interval.getStart() < 0 || interval.getEnd() < interval.getStart()) {
+				continue;
+			}
+			byMaterialUnit.put(interval.getMaterialUnitId(), interval);
+			maxVerse = Math.max(maxVerse, interval.getEnd());
+		}
+
+		final long[] materialUnitIds = Longs.toArray(byMaterialUnit.keySet());
+		final List<List<IndexedVerseInterval>> intervals = Lists.newArrayListWithCapacity(materialUnitIds.length);
+		final BitSet[] verseBits = new BitSet[maxVerse + 1];
+		for (int mu = 0; mu < materialUnitIds.length; mu++) {
+			final List<IndexedVerseInterval> muIntervals = Lists.newArrayList(byMaterialUnit.get(materialUnitIds[mu]));
+			Collections.sort(muIntervals, VerseManager.INTERVAL_COMPARATOR);
+			intervals.add(Collections.unmodifiableList(muIntervals));
+
+			for (IndexedVerseInterval interval : muIntervals) {
+				for (int verse = interval.getStart(); verse <= interval.getEnd(); verse++) {
+					if (verseBits[verse] == null) {
+						verseBits[verse] = new BitSet();
+					}
+					verseBits[verse].set(mu);
+				}
+			}
+		}
+
+		final CompressedBitmap[] verses = new CompressedBitmap[verseBits.length];
+		for (int verse = 0; verse < verses.length; verse++) {
+			verses[verse] = (verseBits[verse] == null ? CompressedBitmap.EMPTY : CompressedBitmap.of(verseBits[verse]));
+		}
+		return new VerseCoverage(fingerprint(byMaterialUnit.values()), materialUnitIds, intervals, verses);
+	}
+
+	/**
+	 * @return a fingerprint of the given verse intervals, independent of their order
+	 */
+	public static long fingerprint(Iterable<IndexedVerseInterval> verseIntervals) {
+		long sum = 0;
+		long count = 0;
+		for (IndexedVerseInterval interval : verseIntervals) {
+			if (interval.getStart() < 0 || interval.getEnd() < interval.getStart()) {
+				continue;
+			}
+			long hash = interval.getStart();
+			hash = hash * 31 + interval.getEnd();
+			hash = hash * 31 + interval.getTranscriptId();
+			hash = hash * 31 + interval.getMaterialUnitId();
+			sum += mix(hash);
+			count++;
+		}
+		return mix(sum + count);
+	}
+
+	private static long mix(long hash) {
+		hash ^= (hash >>> 33);
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= (hash >>> 33);
+		hash *= 0xc4ceb9fe1a85ec53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @return the numbers of all material units transcribing at least one verse of <code>[from, to]</code>
+	 */
+	public CompressedBitmap covering(int from, int to) {
+		final List<CompressedBitmap> bitmaps = Lists.newArrayList();
+		for (int verse = Math.max(0, from), last = Math.min(to, verses.length - 1); verse <= last; verse++) {
+			bitmaps.add(verses[verse]);
+		}
+		return CompressedBitmap.union(bitmaps);
+	}
+
+	/**
+	 * @return the numbers of all material units transcribing every verse of <code>[from, to]</code>
+	 */
+	public CompressedBitmap coveringAll(int from, int to) {
+		if (from < 0 || to >= verses.length || from > to) {
+			return CompressedBitmap.EMPTY;
+		}
+		CompressedBitmap covering = verses[from];
+		for (int verse = from + 1; verse <= to && !covering.isEmpty(); verse++) {
+			covering = covering.and(verses[verse]);
+		}
+		return covering;
+	}
+
+	/**
+	 * Scenes as defined in {@link VerseManager} end where the next one starts, so their last verse is excluded.
+	 *
+	 * @return the numbers of all material units transcribing at least one verse of the given scene
+	 */
+	public CompressedBitmap coveringScene(VerseInterval scene) {
+		return covering(scene.getStart(), scene.getEnd() - 1);
+	}
+
+	/**
+	 * @return the number of material units transcribing at least one verse of <code>[from, to]</code>
+	 */
+	public int count(int from, int to) {
+		return covering(from, to).cardinality();
+	}
+
+	/**
+	 * @return the number of material units transcribing the given verse
+	 */
+	public int count(int verse) {
+		return (verse < 0 || verse >= verses.length ? 0 : verses[verse].cardinality());
+	}
+
+	public int getMaterialUnitCount() {
+		return materialUnitIds.length;
+	}
+
+	public long getMaterialUnitId(int materialUnit) {
+		return materialUnitIds[materialUnit];
+	}
+
+	/**
+	 * @return the verse intervals of a material unit, ordered by {@link VerseManager#INTERVAL_COMPARATOR}
+	 */
+	public List<IndexedVerseInterval> getIntervals(int materialUnit) {
+		return intervals.get(materialUnit);
+	}
+
+	/**
+	 * Writes this snapshot to a temporary file first and renames it afterwards, so that readers never see a
+	 * partially written snapshot.
+	 */
+	public void write(File file) throws IOException {
+		final File tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fingerprint);
+			out.writeInt(materialUnitIds.length);
+			for (int mu = 0; mu < materialUnitIds.length; mu++) {
+				out.writeLong(materialUnitIds[mu]);
+				final List<IndexedVerseInterval> muIntervals = intervals.get(mu);
+				out.writeInt(muIntervals.size());
+				for (IndexedVerseInterval interval : muIntervals) {
+					out.writeInt(interval.getStart());
+					out.writeInt(interval.getEnd());
+					out.writeLong(interval.getTranscriptId());
+				}
+			}
+			out.writeInt(verses.length);
+			for (CompressedBitmap verse : verses) {
+				verse.write(out);
+			}
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Cannot replace " + file);
+		}
+		if (!tempFile.renameTo(file)) {
+			throw new IOException("Cannot rename " + tempFile + " to " + file);
+		}
+	}
+
+	public static VerseCoverage read(File file) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(file + " is not a verse coverage snapshot");
+			}
+			final long fingerprint = in.readLong();
+			final long[] materialUnitIds = new long[in.readInt()];
+			final List<List<IndexedVerseInterval>> intervals = Lists.newArrayListWithCapacity(materialUnitIds.length);
+			for (int mu = 0; mu < materialUnitIds.length; mu++) {
+				materialUnitIds[mu] = in.readLong();
+				final int size = in.readInt();
+				final List<IndexedVerseInterval> muIntervals = Lists.newArrayListWithCapacity(size);
+				for (int i = 0; i < size; i++) {
+					final int start = in.readInt();
+					final int end = in.readInt();
+					muIntervals.add(new IndexedVerseInterval(start, end, in.readLong(), materialUnitIds[mu]));
+				}
+				intervals.add(Collections.unmodifiableList(muIntervals));
+			}
+			final CompressedBitmap[] verses = new CompressedBitmap[in.readInt()];
+			for (int verse = 0; verse < verses.length; verse++) {
+				verses[verse] = CompressedBitmap.read(in);
+			}
+			return new VerseCoverage(fingerprint, materialUnitIds, intervals, verses);
+		} finally {
+			in.close();
+		}
+	}
+}
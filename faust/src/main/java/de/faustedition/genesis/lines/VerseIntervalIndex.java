@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.genesis.lines;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * In-memory interval tree over all registered verse intervals.
+ * <p/>
+ * Intervals are kept in primitive arrays, sorted by start, with the maximum end of each subtree of the implicit
+ * binary tree spanning them, so that overlap queries run in <code>O(log n + k)</code> without touching the graph.
+ * The arrays are rebuilt lazily on the first query after a modification.
+ */
+public class VerseIntervalIndex {
+
+	private final ListMultimap<Long, IndexedVerseInterval> byTranscript = ArrayListMultimap.create();
+	private volatile Tree tree = new Tree(Collections.<IndexedVerseInterval>emptyList());
+
+	public synchronized void add(IndexedVerseInterval interval) {
+		byTranscript.put(interval.getTranscriptId(), interval);
+		tree = null;
+	}
+
+	public synchronized void removeTranscript(long transcriptId) {
+		if (!byTranscript.removeAll(transcriptId).isEmpty()) {
+			tree = null;
+		}
+	}
+
+	public synchronized void clear() {
+		byTranscript.clear();
+		tree = null;
+	}
+
+	public synchronized int size() {
+		return byTranscript.size();
+	}
+
+	/**
+	 * @return all intervals sharing at least one verse with <code>[start, end]</code>, ordered by start
+	 */
+	public List<IndexedVerseInterval> overlapping(int start, int end) {
+		return tree().overlapping(start, end);
+	}
+
+	public List<IndexedVerseInterval> overlapping(VerseInterval interval) {
+		return overlapping(interval.getStart(), interval.getEnd());
+	}
+
+	private Tree tree() {
+		Tree tree = this.tree;
+		if (tree == null) {
+			synchronized (this) {
+				tree = this.tree;
+				if (tree == null) {
+					this.tree = tree = new Tree(byTranscript.values());
+				}
+			}
+		}
+		return tree;
+	}
+
+	private static class Tree {
+		private final int[] starts;
+		private final int[] ends;
+		private final int[] maxEnds;
+		private final long[] transcriptIds;
+		private final long[] materialUnitIds;
+
+		private Tree(Iterable<IndexedVerseInterval> intervals) {
+			final List<IndexedVerseInterval> sorted = Lists.newArrayList(intervals);
+			Collections.sort(sorted, new Comparator<IndexedVerseInterval>() {
+				@Override
+				public int compare(IndexedVerseInterval o1, IndexedVerseInterval o2) {
+					return (o1.getStart() < o2.getStart() ? -1 : (o1.getStart() > o2.getStart() ? 1 : 0));
+				}
+			});
+
+			final int size = sorted.size();
+			this.starts = new int[size];
+			this.ends = new int[size];
+			this.maxEnds = new int[size];
+			this.transcriptIds = new long[size];
+			this.materialUnitIds = new long[size];
+			for (int i = 0; i < size; i++) {
+				final IndexedVerseInterval interval = sorted.get(i);
+				starts[i] = interval.getStart();
+				ends[i] = interval.getEnd();
+				transcriptIds[i] = interval.getTranscriptId();
+				materialUnitIds[i] = interval.getMaterialUnitId();
+			}
+			computeMaxEnds(0, size);
+		}
+
+		private int computeMaxEnds(int from, int to) {
+			if (from >= to) {
+				return Integer.MIN_VALUE;
+			}
+			final int mid = (from + to) >>> 1;
+			maxEnds[mid] = Math.max(ends[mid], Math.max(computeMaxEnds(from, mid), computeMaxEnds(mid + 1, to)));
+			return maxEnds[mid];
+		}
+
+		private List<IndexedVerseInterval> overlapping(int start, int end) {
+			final List<IndexedVerseInterval> result = Lists.newArrayList();
+			collect(0, starts.length, start, end, result);
+			return result;
+		}
+
+		private void collect(int from, int to, int start, int end, List<IndexedVerseInterval> result) {
+			while (from < to) {
+				final int mid = (from + to) >>> 1;
+				if (maxEnds[mid] < start) {
+					return;
+				}
+				collect(from, mid, start, end, result);
+				if (starts[mid] > end) {
+					return;
+				}
+				if (ends[mid] >= start) {
+					result.add(new IndexedVerseInterval(starts[mid], ends[mid], transcriptIds[mid], materialUnitIds[mid]));
+				}
+				from = mid + 1;
+			}
+		}
+	}
+}
@@ -23,36 +23,39 @@ import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.*;
+import de.faustedition.document.Document;
 import de.faustedition.document.MaterialUnit;
 import de.faustedition.graph.FaustGraph;
-import de.faustedition.search.Normalization;
+import de.faustedition.search.SearchIndex;
 import de.faustedition.transcript.TranscriptManager;
 import eu.interedition.text.*;
 import eu.interedition.text.neo4j.LayerNode;
 import eu.interedition.text.neo4j.Neo4jTextRepository;
-import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
-import org.apache.lucene.search.spans.SpanMultiTermQueryWrapper;
-import org.apache.lucene.search.spans.SpanNearQuery;
 import org.codehaus.jackson.JsonNode;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
-import org.neo4j.graphdb.index.IndexManager;
-import org.neo4j.helpers.collection.MapUtil;
 import org.neo4j.index.lucene.ValueContext;
 import org.restlet.data.Status;
 import org.restlet.resource.ResourceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import static eu.interedition.text.Query.*;
@@ -65,12 +68,14 @@ import static eu.interedition.text.Query.*;
 
 @Component
 @DependsOn(value = "transcriptManager")
-public class VerseManager {
+public class VerseManager implements InitializingBean {
 
 	private static final String INDEX_VERSE_INTERVAL = "index-verse-interval";
 
 	private static final String INDEX_VERSE_FULLTEXT = "index-verse-text";
 
+	private static final String INDEX_VERSE_LINE = "index-verse-line";
+
 	private static final Pattern VERSE_NUMBER_PATTERN = Pattern.compile("[0-9]+");
 
 	private static final Logger LOG = LoggerFactory.getLogger(VerseManager.class);
@@ -84,15 +89,185 @@ public class VerseManager {
 	@Autowired
 	private TranscriptManager transcriptManager;
 
+	@Autowired
+	private SearchIndex searchIndex;
+
+	@Autowired
+	private Environment environment;
+
+	private final VerseIntervalIndex intervalIndex = new VerseIntervalIndex();
+
+	private final AtomicLong intervalModifications = new AtomicLong();
+	private volatile VerseCoverage coverage;
+	private volatile long coverageModifications = -1;
+	private File coverageFile;
+
+	/**
+	 * Rebuilds the in-memory {@link VerseIntervalIndex} from the verse intervals in the graph.
+	 */
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		intervalIndex.clear();
+		final Index<Node> verseIndex = faustGraph.getDb().index().forNodes(INDEX_VERSE_INTERVAL);
+		final IndexHits<Node> hits = verseIndex.query(NumericRangeQuery.newIntRange("start", null, null, true, true));
+		try {
+			for (Node node : hits) {
+				final Relationship transcriptRel = node.getSingleRelationship(GraphVerseInterval.VERSE_INTERVAL_IN_TRANSCRIPT_RT, Direction.OUTGOING);
+				if (transcriptRel == null) {
+					continue;
+				}
+				final Node transcript = transcriptRel.getEndNode();
+				final Relationship materialUnitRel = transcript.getSingleRelationship(MaterialUnit.TRANSCRIPT_RT, Direction.OUTGOING);
+				if (materialUnitRel == null) {
+					continue;
+				}
+				final GraphVerseInterval vi = new GraphVerseInterval(node);
+				intervalIndex.add(new IndexedVerseInterval(vi.getStart(), vi.getEnd(), transcript.getId(), materialUnitRel.getEndNode().getId()));
+			}
+		} finally {
+			hits.close();
+		}
+		LOG.debug("Indexed {} verse intervals", intervalIndex.size());
+
+		final File graphHome = environment.getRequiredProperty("graph.home", File.class).getCanonicalFile();
+		this.coverageFile = new File(graphHome.getParentFile(), graphHome.getName() + ".coverage");
+		loadCoverage();
+
+		final boolean indexLines = !faustGraph.getDb().index().existsForNodes(INDEX_VERSE_LINE);
+		indexVerses(indexLines, searchIndex.transcripts());
+
+		if (faustGraph.getDb().index().existsForNodes(INDEX_VERSE_FULLTEXT)) {
+			LOG.info("Removing legacy verse fulltext index");
+			final Transaction tx = faustGraph.getDb().beginTx();
+			try {
+				faustGraph.getDb().index().forNodes(INDEX_VERSE_FULLTEXT).delete();
+				tx.success();
+			} finally {
+				tx.finish();
+			}
+		}
+	}
+
+	/**
+	 * Brings the verse line and search indexes in line with the registered transcripts: fills the line index if it
+	 * has not been introduced yet, adds the verses of transcripts missing from the search index, e.g. because they
+	 * were registered before it has been introduced or cleared, and removes transcripts which are not in the graph
+	 * anymore.
+	 *
+	 * @param textIndexed the transcripts currently in the search index
+	 */
+	private void indexVerses(boolean lines, Set<Long> textIndexed) throws IOException {
+		final Map<Long, Long> transcripts = Maps.newHashMap();
+		for (IndexedVerseInterval vi : intervalIndex.overlapping(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+			transcripts.put(vi.getTranscriptId(), vi.getMaterialUnitId());
+		}
+
+		int removed = 0;
+		for (long transcriptId : textIndexed) {
+			if (!transcripts.containsKey(transcriptId) && !isTranscript(transcriptId)) {
+				searchIndex.remove(transcriptId);
+				removed++;
+			}
+		}
+		if (removed > 0) {
+			LOG.info("Removed verses of {} deleted transcripts from search index", removed);
+		}
+
+		if (!lines) {
+			transcripts.keySet().removeAll(textIndexed);
+		}
+		if (transcripts.isEmpty()) {
+			searchIndex.commit();
+			return;
+		}
+		LOG.info("Indexing verses of {} transcripts", transcripts.size());
+
+		final Transaction tx = faustGraph.getDb().beginTx();
+		try {
+			final Index<Node> lineIndex = faustGraph.getDb().index().forNodes(INDEX_VERSE_LINE);
+			for (Map.Entry<Long, Long> transcriptEntry : transcripts.entrySet()) {
+				final LayerNode<JsonNode> transcript = new LayerNode<JsonNode>(textRepository, faustGraph.getDb().getNodeById(transcriptEntry.getKey()));
+				final Document document = documentOf(new MaterialUnit(faustGraph.getDb().getNodeById(transcriptEntry.getValue())));
+				for (Layer<JsonNode> verse : textRepository.query(and(text(transcript), name(new Name(TextConstants.TEI_NS, "l"))))) {
+					final long lineNum = verse.data().get("n") != null ? verse.data().get("n").asLong(-1) : -1;
+					if (lines && lineNum >= 0) {
+						lineIndex.add(((LayerNode) verse).node, "line", ValueContext.numeric((int) lineNum));
+					}
+					if (document != null && !textIndexed.contains(transcriptEntry.getKey())) {
+						// these verses have been committed long ago, so they are indexed right away
+						indexText(transcript, document, verse, lineNum).run();
+					}
+				}
+			}
+			tx.success();
+		} finally {
+			tx.finish();
+		}
+		searchIndex.commit();
+	}
+
+	/**
+	 * Reads a verse from the graph and returns the change adding it to the search index, which is to be run once the
+	 * reading transaction has been committed.
+	 */
+	private Runnable indexText(LayerNode<JsonNode> transcript, Document document, Layer<JsonNode> verse, final long lineNum) throws IOException {
+		final Anchor<JsonNode> anchor = Iterables.getOnlyElement(verse.getAnchors());
+		final String verseText = anchor.getText().read(anchor.getRange());
+		final long transcriptId = transcript.node.getId();
+		final long documentId = document.node.getId();
+		final String sigil = document.toString();
+		final String source = document.getSource().toString();
+		final String idnos = document.allIdnos();
+		final long start = anchor.getRange().getStart();
+		final long end = anchor.getRange().getEnd();
+		return new Runnable() {
+			@Override
+			public void run() {
+				LOG.trace("Indexing verse: " + verseText);
+				try {
+					searchIndex.add(transcriptId, documentId, sigil, source, idnos, (int) lineNum, verseText, start, end);
+				} catch (IOException e) {
+					LOG.error("Error indexing line " + lineNum, e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return <code>true</code> if the given node exists and is the transcript of a material unit
+	 */
+	private boolean isTranscript(long nodeId) {
+		try {
+			return faustGraph.getDb().getNodeById(nodeId).hasRelationship(MaterialUnit.TRANSCRIPT_RT, Direction.OUTGOING);
+		} catch (NotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return the document a material unit belongs to, or <code>null</code> if it is not part of one
+	 */
+	private static Document documentOf(MaterialUnit mu) {
+		for (MaterialUnit unit = MaterialUnit.forNode(mu.node); unit != null; unit = unit.getParent()) {
+			if (unit instanceof Document) {
+				return (Document) unit;
+			}
+		}
+		return null;
+	}
+
 	public void register(FaustGraph faustGraph, Neo4jTextRepository<JsonNode> textRepo, MaterialUnit mu, LayerNode<JsonNode> transcript) {
 
-		for (VerseInterval vi : registeredFor(transcript)) {
-			((GraphVerseInterval)vi).node.delete();
+		// transcripts are usually registered right after being added, so there is nothing to remove yet
+		if (transcript.node.hasRelationship(GraphVerseInterval.VERSE_INTERVAL_IN_TRANSCRIPT_RT)) {
+			unregister(faustGraph, textRepo, transcript);
 		}
-		Index<Node> verseTextIndex = faustGraph.getDb().index().forNodes(INDEX_VERSE_FULLTEXT,
-				MapUtil.stringMap(IndexManager.PROVIDER, "lucene", "type", "fulltext") );
+
+		final Document document = documentOf(mu);
+		Index<Node> verseLineIndex = faustGraph.getDb().index().forNodes(INDEX_VERSE_LINE);
 
 		final SortedSet<Long> verses = Sets.newTreeSet();
+		final List<Runnable> textUpdates = Lists.newArrayList();
 		for (Layer<JsonNode> verse : textRepo.query(and(text(transcript), name(new Name(TextConstants.TEI_NS, "l"))))) {
 
 			//final Matcher verseNumberMatcher = VERSE_NUMBER_PATTERN.matcher(Objects.firstNonNull(verse.data().path("n").getTextValue(), ""));
@@ -100,22 +275,21 @@ public class VerseManager {
 
 			if (lineNum >= 0) {
 				verses.add(lineNum);
+				verseLineIndex.add(((LayerNode) verse).node, "line", ValueContext.numeric((int) lineNum));
 			}
 
-			Anchor<JsonNode> anchor = Iterables.getOnlyElement(verse.getAnchors());
-			try {
-				String verseText = anchor.getText().read(anchor.getRange());
-				LOG.trace("Indexing verse: " + verseText);
-				verseTextIndex.add(((LayerNode)verse).node, "fulltext",
-						Normalization.normalize(verseText));
-
-			} catch (IOException e) {
-				LOG.error("Error indexing line " + lineNum);
+			if (document != null) {
+				try {
+					textUpdates.add(indexText(transcript, document, verse, lineNum));
+				} catch (IOException e) {
+					LOG.error("Error indexing line " + lineNum);
+				}
 			}
 		}
 
 		Index<Node> verseIndex = faustGraph.getDb().index().forNodes(INDEX_VERSE_INTERVAL);
 
+		final List<IndexedVerseInterval> registered = Lists.newArrayList();
 		long start = -1;
 		long next = -1;
 		for (Iterator<Long> it = verses.iterator(); it.hasNext(); ) {
@@ -128,6 +302,7 @@ public class VerseManager {
 					vi.setTranscript(transcript);
 					verseIndex.add(vi.node, "start", ValueContext.numeric(vi.getStart()));
 					verseIndex.add(vi.node, "end", ValueContext.numeric(vi.getEnd()));
+					registered.add(new IndexedVerseInterval(vi.getStart(), vi.getEnd(), transcript.node.getId(), mu.node.getId()));
 
 				}
 
@@ -140,14 +315,61 @@ public class VerseManager {
 				vi.setTranscript(transcript);
 				verseIndex.add(vi.node, "start", ValueContext.numeric(vi.getStart()));
 				verseIndex.add(vi.node, "end", ValueContext.numeric(vi.getEnd()));
+				registered.add(new IndexedVerseInterval(vi.getStart(), vi.getEnd(), transcript.node.getId(), mu.node.getId()));
 
 			}
 		}
+		faustGraph.afterCommit(new Runnable() {
+			@Override
+			public void run() {
+				for (IndexedVerseInterval interval : registered) {
+					intervalIndex.add(interval);
+				}
+				intervalModifications.incrementAndGet();
+				for (Runnable textUpdate : textUpdates) {
+					textUpdate.run();
+				}
+			}
+		});
 		if (LOG.isDebugEnabled()) {
 			// TODO LOG.debug("Registered verse intervals {} for {}", Iterables.toString(registeredFor(session, transcript)), transcript);
 		}
 	}
 
+	/**
+	 * Removes the verse intervals of a transcript and the index entries of its verses.
+	 */
+	public void unregister(FaustGraph faustGraph, Neo4jTextRepository<JsonNode> textRepo, LayerNode<JsonNode> transcript) {
+		final long transcriptId = transcript.node.getId();
+		faustGraph.afterCommit(new Runnable() {
+			@Override
+			public void run() {
+				intervalIndex.removeTranscript(transcriptId);
+				intervalModifications.incrementAndGet();
+				try {
+					searchIndex.remove(transcriptId);
+				} catch (IOException e) {
+					LOG.error("Error removing verses of transcript #" + transcriptId + " from search index", e);
+				}
+			}
+		});
+
+		final Index<Node> verseIndex = faustGraph.getDb().index().forNodes(INDEX_VERSE_INTERVAL);
+		for (VerseInterval vi : Lists.newArrayList(registeredFor(transcript))) {
+			final Node node = ((GraphVerseInterval) vi).node;
+			verseIndex.remove(node);
+			for (Relationship r : node.getRelationships()) {
+				r.delete();
+			}
+			node.delete();
+		}
+
+		final Index<Node> verseLineIndex = faustGraph.getDb().index().forNodes(INDEX_VERSE_LINE);
+		for (Layer<JsonNode> verse : textRepo.query(and(text(transcript), name(new Name(TextConstants.TEI_NS, "l"))))) {
+			verseLineIndex.remove(((LayerNode) verse).node);
+		}
+	}
+
 	public Iterable<VerseInterval> registeredFor(Layer<JsonNode> transcript) {
 
 		Iterable<Relationship> relationshipsToVerseIntervals = ((LayerNode) transcript).node.getRelationships(GraphVerseInterval.VERSE_INTERVAL_IN_TRANSCRIPT_RT);
@@ -166,35 +388,93 @@ public class VerseManager {
 	}
 */
 
-	public Iterable<GraphVerseInterval> forInterval(VerseInterval verseInterval) {
+	/**
+	 * @return all registered verse intervals sharing at least one verse with the given one, ordered by start
+	 */
+	public List<IndexedVerseInterval> forInterval(VerseInterval verseInterval) {
+		return intervalIndex.overlapping(verseInterval);
+	}
 
-		// find all intervals for which start < verseInterval.getEnd() and end > verseInterval.getStart()
-		Index<Node> verseIndex = faustGraph.getDb().index().forNodes(INDEX_VERSE_INTERVAL);
-		BooleanQuery andQuery = new BooleanQuery();
-		NumericRangeQuery<Integer> startQuery = NumericRangeQuery.newIntRange("start", 0, verseInterval.getEnd(), true, true);
-		NumericRangeQuery<Integer> endQuery = NumericRangeQuery.newIntRange("end", verseInterval.getStart(), Integer.MAX_VALUE, true, true);
-		andQuery.add(startQuery, BooleanClause.Occur.MUST);
-		andQuery.add(endQuery, BooleanClause.Occur.MUST);
-		IndexHits<Node> resultNodes = verseIndex.query(andQuery);
-		Function<Node, GraphVerseInterval> verseIntervalForNode = new Function<Node, GraphVerseInterval>() {
-			@Override
-			public GraphVerseInterval apply(@Nullable Node input) {
-				return new GraphVerseInterval(input);
+	/**
+	 * @return the current coverage of verses by material units, rebuilt if transcripts have been registered or
+	 * unregistered since it has been built last
+	 */
+	public VerseCoverage getCoverage() {
+		final long modifications = coverageModifications;
+		final VerseCoverage coverage = this.coverage;
+		return (coverage != null && modifications == intervalModifications.get() ? coverage : rebuildCoverage());
+	}
+
+	/**
+	 * Rebuilds the coverage of verses by material units from the in-memory interval index, unless it has been rebuilt
+	 * since the index has been modified last.
+	 */
+	public synchronized VerseCoverage rebuildCoverage() {
+		// the index is modified before the counter, so a coverage is never tagged newer than the intervals it holds
+		final long modifications = intervalModifications.get();
+		if (coverage != null && coverageModifications == modifications) {
+			return coverage;
+		}
+		final VerseCoverage rebuilt = VerseCoverage.build(intervalIndex.overlapping(Integer.MIN_VALUE, Integer.MAX_VALUE));
+		this.coverage = rebuilt;
+		this.coverageModifications = modifications;
+		if (coverageFile != null) {
+			try {
+				rebuilt.write(coverageFile);
+			} catch (IOException e) {
+				LOG.warn("I/O error while writing verse coverage to " + coverageFile, e);
 			}
-		};
-		return Iterables.transform(resultNodes, verseIntervalForNode);
+		}
+		return rebuilt;
 	}
 
-	public ImmutableListMultimap<MaterialUnit, GraphVerseInterval> indexByMaterialUnit(Iterable<GraphVerseInterval> verseIntervals) {
+	/**
+	 * Reads the coverage stored by the last rebuild, if it still matches the registered verse intervals, and
+	 * rebuilds it otherwise.
+	 */
+	private synchronized void loadCoverage() {
+		if (coverageFile.isFile()) {
+			final long modifications = intervalModifications.get();
+			try {
+				final VerseCoverage stored = VerseCoverage.read(coverageFile);
+				if (stored.getFingerprint() == VerseCoverage.fingerprint(intervalIndex.overlapping(Integer.MIN_VALUE, Integer.MAX_VALUE))) {
+					LOG.debug("Read verse coverage from {}", coverageFile);
+					this.coverage = stored;
+					this.coverageModifications = modifications;
+					return;
+				}
+				LOG.info("Verse coverage in {} is outdated", coverageFile);
+			} catch (IOException e) {
+				LOG.warn("I/O error while reading verse coverage from " + coverageFile, e);
+			}
+		}
+		rebuildCoverage();
+	}
 
-		Function materialUnitOfVerseInterval = new Function<GraphVerseInterval, MaterialUnit>() {
-			@Override
-			public MaterialUnit apply(@Nullable GraphVerseInterval input) {
-				return transcriptManager.materialUnitForTranscript(input.getTranscript(textRepository));
+	/**
+	 * @return the <code>tei:l</code> layers of all transcripts, which are numbered with the given verse
+	 */
+	public Iterable<LayerNode<JsonNode>> linesFor(int lineNum) {
+		final Index<Node> verseLineIndex = faustGraph.getDb().index().forNodes(INDEX_VERSE_LINE);
+		final IndexHits<Node> hits = verseLineIndex.query(NumericRangeQuery.newIntRange("line", lineNum, lineNum, true, true));
+		try {
+			final List<LayerNode<JsonNode>> lines = Lists.newArrayListWithCapacity(hits.size());
+			for (Node node : hits) {
+				lines.add(new LayerNode<JsonNode>(textRepository, node));
 			}
-		};
+			return lines;
+		} finally {
+			hits.close();
+		}
+	}
 
-		return Multimaps.index(verseIntervals, materialUnitOfVerseInterval);
+	public ImmutableListMultimap<MaterialUnit, IndexedVerseInterval> indexByMaterialUnit(Iterable<IndexedVerseInterval> verseIntervals) {
+		return Multimaps.index(verseIntervals, new Function<IndexedVerseInterval, MaterialUnit>() {
+			@Override
+			public MaterialUnit apply(@Nullable IndexedVerseInterval input) {
+				return input.getMaterialUnit(faustGraph.getDb());
+			}
+		});
 	}
 
 	public static SortedSet<VerseInterval> scenesOf(int part) {
@@ -248,40 +528,6 @@ public class VerseManager {
 	}
 
 
-	public Iterable<LayerNode<JsonNode>> fulltextQuery (String queryString) {
-		Preconditions.checkState(this.faustGraph.getDb().index().existsForNodes(INDEX_VERSE_FULLTEXT));
-		Index<Node> verseFulltextIndex = this.faustGraph.getDb().index().forNodes(INDEX_VERSE_FULLTEXT);
-
-		// construct a fuzzy query
-		String normalizedQueryString = Normalization.normalize(queryString);
-		ArrayList<String> tokens = Lists.newArrayList(normalizedQueryString.split(" "));
-		Function<String, SpanMultiTermQueryWrapper> stringToQuery = new Function<String, SpanMultiTermQueryWrapper>() {
-			@Override
-			public SpanMultiTermQueryWrapper apply(@Nullable String input) {
-				Term term = new Term("fulltext", input.toLowerCase());
-				FuzzyQuery fuzzyQuery = new FuzzyQuery(term);
-				SpanMultiTermQueryWrapper spanMultiTermQueryWrapper = new SpanMultiTermQueryWrapper(fuzzyQuery);
-				return spanMultiTermQueryWrapper;
-			}
-		};
-
-		SpanMultiTermQueryWrapper[] clauses =
-				(Lists.newArrayList(Iterables.transform(tokens, stringToQuery)).toArray(new SpanMultiTermQueryWrapper[tokens.size()]));
-
-		SpanNearQuery query = new SpanNearQuery(clauses, 5, false);
-		IndexHits<Node> verseResults = verseFulltextIndex.query(query);
-
-		Function <Node, LayerNode<JsonNode>> wrapLayerNodes = new Function<Node, LayerNode<JsonNode>>() {
-			@Override
-			public LayerNode apply(@Nullable Node input) {
-				return new LayerNode<JsonNode>(textRepository, input);
-			}
-		};
-
-		return Iterables.transform(verseResults, wrapLayerNodes);
-	}
-
-
 	public static VerseInterval ofPart(int part) {
 		switch (part) {
 			case 0:
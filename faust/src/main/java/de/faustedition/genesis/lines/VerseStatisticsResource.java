@@ -19,14 +19,11 @@
 
 package de.faustedition.genesis.lines;
 
-import com.google.common.base.Function;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Ordering;
 import de.faustedition.JsonRepresentationFactory;
 import de.faustedition.document.Document;
 import de.faustedition.document.MaterialUnit;
+import org.codehaus.jackson.JsonGenerator;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.restlet.data.Status;
 import org.restlet.representation.Representation;
@@ -37,12 +34,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
-import org.springframework.ui.ModelMap;
 
-import javax.annotation.Nullable;
-import java.util.Collection;
-import java.util.List;
+import java.io.IOException;
 import java.util.Map;
+import java.util.SortedMap;
 
 /**
  * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
@@ -52,14 +47,15 @@ import java.util.Map;
 public class VerseStatisticsResource extends ServerResource {
 
 	@Autowired
-	private GraphDatabaseService graphDb;
+	private VerseManager verseManager;
 
 	@Autowired
-	private VerseManager verseManager;
+	private GraphDatabaseService db;
 
 	@Autowired
 	private JsonRepresentationFactory jsonRepresentationFactory;
-	private ImmutableMap<MaterialUnit,Collection<GraphVerseInterval>> verseStatistics;
+	private VerseCoverage coverage;
+	private CompressedBitmap materialUnits;
 	private int from;
 	private int to;
 
@@ -73,33 +69,42 @@ public class VerseStatisticsResource extends ServerResource {
 			throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST, "Invalid interval");
 		}
 
-		verseStatistics = verseManager.indexByMaterialUnit(verseManager.forInterval(new GraphVerseInterval(graphDb, from, to))).asMap();
-
+		coverage = verseManager.getCoverage();
+		materialUnits = coverage.covering(from, to);
 	}
 
 	@Get("json")
 	public Representation chartData() {
-		final List<Map<String, Object>> chartData = Lists.newLinkedList();
-		final ImmutableMap<String, MaterialUnit> documentIndex = Maps.uniqueIndex(verseStatistics.keySet(), new Function<MaterialUnit, String>() {
+		final SortedMap<String, Integer> documentIndex = Maps.newTreeMap();
+		for (int mu : materialUnits.toArray()) {
+			final long id = coverage.getMaterialUnitId(mu);
+			documentIndex.put(MaterialUnit.forNode(db.getNodeById(id)).toString() + " [" + id + "]", mu);
+		}
+		return jsonRepresentationFactory.stream(new JsonRepresentationFactory.Generator() {
 			@Override
-			public String apply(@Nullable MaterialUnit input) {				
-				return input.toString() + " [" + input.node.getId() + "]";
-			}
-		});
-		for (String documentDesc : Ordering.natural().immutableSortedCopy(documentIndex.keySet())) {
-			final List<Map<String, Object>> intervals = Lists.newLinkedList();
-			for (VerseInterval interval : Ordering.from(VerseManager.INTERVAL_COMPARATOR).immutableSortedCopy(verseStatistics.get(documentIndex.get(documentDesc)))) {
-				intervals.add(new ModelMap()
-					.addAttribute("start", Math.max(from, interval.getStart()))
-					.addAttribute("end", Math.min(to, interval.getEnd()))
-				);
+			public void generate(JsonGenerator jg) throws IOException {
+				jg.writeStartArray();
+				for (Map.Entry<String, Integer> document : documentIndex.entrySet()) {
+					final String documentDesc = document.getKey();
+					final long id = coverage.getMaterialUnitId(document.getValue());
+					jg.writeStartObject();
+					jg.writeStringField("sigil", documentDesc.substring(0, documentDesc.indexOf('[')));
+					jg.writeStringField("source", ((Document) MaterialUnit.forNode(db.getNodeById(id))).getSource().toString());
+					jg.writeArrayFieldStart("intervals");
+					for (VerseInterval interval : coverage.getIntervals(document.getValue())) {
+						if (interval.getStart() > to || interval.getEnd() < from) {
+							continue;
+						}
+						jg.writeStartObject();
+						jg.writeNumberField("start", Math.max(from, interval.getStart()));
+						jg.writeNumberField("end", Math.min(to, interval.getEnd()));
+						jg.writeEndObject();
+					}
+					jg.writeEndArray();
+					jg.writeEndObject();
+				}
+				jg.writeEndArray();
 			}
-			chartData.add(new ModelMap()
-				.addAttribute("sigil", documentDesc.substring(0,documentDesc.indexOf('[') ))
-				/*.addAttribute("transcript", documentIndex.get(documentDesc).node.getId())*/
-				.addAttribute("source", ((Document)documentIndex.get(documentDesc)).getSource().toString())
-				.addAttribute("intervals", intervals));
-		}
-		return jsonRepresentationFactory.map(chartData, false);
+		}, false);
 	}
 }
@@ -19,7 +19,6 @@
 
 package de.faustedition.genesis.lines;
 
-import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -44,14 +43,11 @@ import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-import static eu.interedition.text.Query.*;
-
 /**
  * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
  */
@@ -81,29 +77,23 @@ public class VerseVariantResource extends ServerResource {
 	private Set<Map<String, String>> variantsFor (int lineNum) {
 		HashSet<Map<String, String>> documentDescriptions = Sets.newHashSet();
 
-		Iterable<GraphVerseInterval> intervals = verseManager.forInterval(new SimpleVerseInterval("---", lineNum, lineNum));
-		for (GraphVerseInterval interval : intervals) {
-			Map<String, String> documentDescription = Maps.newHashMap() ;
-			LayerNode<JsonNode> transcript = interval.getTranscript(textRepository);
-			Document document = (Document)(transcriptManager.materialUnitForTranscript(transcript));
-
-
-			Iterable<Layer<JsonNode>> linesInDocument = getLinesInDocument(transcript, lineNum);
-
-			for (Layer<JsonNode>lineInDocument: linesInDocument) {
-				try {
-					String variantText = getVariantText(lineInDocument);
-					documentDescription.put("name", document.toString());
-					documentDescription.put("source", document.getSource().toString());
-					documentDescription.put("variantText", variantText);
-					documentDescriptions.add(documentDescription);
-
-				} catch (Exception e) {
-					LOG.error("Could not retrieve text for line " + lineNum + " in transcript " + transcript
-							+ ". Exception: " + e.getMessage());
-				}
+		for (LayerNode<JsonNode> lineInDocument : verseManager.linesFor(lineNum)) {
+			LayerNode<JsonNode> transcript = null;
+			try {
+				transcript = (LayerNode<JsonNode>) Iterables.getOnlyElement(lineInDocument.getAnchors()).getText();
+				Document document = (Document) (transcriptManager.materialUnitForTranscript(transcript));
+				String variantText = getVariantText(lineInDocument);
+
+				Map<String, String> documentDescription = Maps.newHashMap();
+				documentDescription.put("name", document.toString());
+				documentDescription.put("source", document.getSource().toString());
+				documentDescription.put("variantText", variantText);
+				documentDescriptions.add(documentDescription);
+
+			} catch (Exception e) {
+				LOG.error("Could not retrieve text for line " + lineNum + " in transcript " + transcript
+						+ ". Exception: " + e.getMessage());
 			}
-
 		}
 		return documentDescriptions;
 	}
@@ -127,24 +117,6 @@ public class VerseVariantResource extends ServerResource {
 		}
 	}
 
-	private Iterable<Layer<JsonNode>> getLinesInDocument(LayerNode<JsonNode> transcript, final int lineNum) {
-
-		//FIXME: this needs to be done more efficient. Line numbers (generally attributes) should be indexed and queriable
-		QueryResult allLinesInDocument = textRepository.query(and(text(transcript), name(new Name(TextConstants.TEI_NS, "l"))));
-
-		return Iterables.filter(allLinesInDocument, new Predicate<Layer<JsonNode>>() {
-			@Override
-			public boolean apply(@Nullable Layer<JsonNode> line) {
-				JsonNode nVal = line.data().get("n");
-				try {
-					return nVal != null ? Integer.parseInt(nVal.getTextValue()) == lineNum : false;
-				} catch (NumberFormatException e) {
-					return false;
-				}
-			}
-		});
-	}
-
 	@Post("json")
 	public Representation verseVariants(JsonRepresentation requestData) throws JSONException {
 		final Map<Integer, Set<Map<String, String>>> variantsForLines = Maps.newHashMap();
@@ -19,6 +19,7 @@
 
 package de.faustedition.graph;
 
+import com.google.common.base.Throwables;
 import de.faustedition.document.ArchiveCollection;
 import de.faustedition.document.MaterialUnitCollection;
 import de.faustedition.genesis.dating.GeneticSourceCollection;
@@ -26,9 +27,16 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.GraphDatabaseAPI;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+
 import static org.neo4j.graphdb.Direction.OUTGOING;
 
 @Component
@@ -76,4 +84,35 @@ public class FaustGraph {
 		r.setProperty(ROOT_NAME_PROPERTY, rootName);
 		return r.getEndNode();
 	}
+
+	/**
+	 * Runs a change of the in-memory state kept alongside the graph once the current transaction has been committed,
+	 * so that the state never reflects graph changes which are rolled back. Changes run in the order they have been
+	 * scheduled in; without a transaction, the change is run right away.
+	 */
+	public void afterCommit(final Runnable change) {
+		try {
+			final Transaction tx = ((GraphDatabaseAPI) db).getTxManager().getTransaction();
+			if (tx == null) {
+				change.run();
+				return;
+			}
+			tx.registerSynchronization(new Synchronization() {
+				@Override
+				public void beforeCompletion() {
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					if (status == Status.STATUS_COMMITTED) {
+						change.run();
+					}
+				}
+			});
+		} catch (RollbackException e) {
+			// the transaction has been marked for rollback, so its changes will never be committed
+		} catch (SystemException e) {
+			throw Throwables.propagate(e);
+		}
+	}
 }
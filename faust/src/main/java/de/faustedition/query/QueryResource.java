@@ -19,14 +19,12 @@
 
 package de.faustedition.query;
 
-import com.google.common.base.Function;
 import com.google.common.base.Objects;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.Iterables;
 import de.faustedition.JsonRepresentationFactory;
 import de.faustedition.document.Document;
-import de.faustedition.document.MaterialUnit;
 import de.faustedition.graph.FaustGraph;
+import org.codehaus.jackson.JsonGenerator;
 import org.restlet.data.Reference;
 import org.restlet.data.Status;
 import org.restlet.representation.Representation;
@@ -39,9 +37,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
-import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.Collection;
 
 @Component
 @Scope(BeanDefinition.SCOPE_PROTOTYPE)
@@ -77,19 +74,18 @@ public class QueryResource extends ServerResource {
 
 		if (QueryTerms.ALLDOCUMENTS.name().equals(queryTerm.toUpperCase())) {
 
-			Iterable<Document> allDocuments = Iterables.filter(graph.getMaterialUnits(), Document.class);
-
-			Iterable<String> allMaterialUnits = Iterables.<Document, String>transform (allDocuments,
-
-					new Function<Document, String>() {
-						@Override
-						public String apply(@Nullable Document input) {
-
-							return Iterables.getFirst(Arrays.asList(input.getMetadata("uri")), "none");
-						}
-					});
-
-			return jsonFactory.map(allMaterialUnits);
+			final Iterable<Document> allDocuments = Iterables.filter(graph.getMaterialUnits(), Document.class);
+
+			return jsonFactory.stream(new JsonRepresentationFactory.Generator() {
+				@Override
+				public void generate(JsonGenerator jg) throws IOException {
+					jg.writeStartArray();
+					for (Document document : allDocuments) {
+						jg.writeString(Iterables.getFirst(Arrays.asList(document.getMetadata("uri")), "none"));
+					}
+					jg.writeEndArray();
+				}
+			});
 
 		} else return null;
 
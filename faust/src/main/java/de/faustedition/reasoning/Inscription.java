@@ -19,15 +19,29 @@
 
 package de.faustedition.reasoning;
 
-import java.util.Collection;
-import java.util.TreeSet;
+import com.google.common.base.Preconditions;
 
-public class Inscription extends TreeSet<Integer> {
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-	private static final long serialVersionUID = 1L;
+/**
+ * The verses of a witness, as a set of line numbers.
+ * <p/>
+ * Lines are stored as sorted, disjoint and non-adjacent ranges, so that an inscription spanning thousands of verses
+ * takes a few ints, and intersections, containment and averages are computed range by range without boxing.
+ */
+public class Inscription extends AbstractSet<Integer> {
 
 	private final String name;
 
+	private int[] starts = new int[4];
+	private int[] ends = new int[4];
+	private int ranges = 0;
+	private int size = 0;
+
 	public Inscription(String name) {
 		super();
 		this.name = name;
@@ -35,8 +49,16 @@ public class Inscription extends TreeSet<Integer> {
 	}
 
 	public Inscription(Collection<? extends Integer> c, String name) {
-		super(c);
-		this.name = name;
+		this(name);
+		if (c instanceof Inscription) {
+			final Inscription other = (Inscription) c;
+			this.starts = Arrays.copyOf(other.starts, Math.max(4, other.ranges));
+			this.ends = Arrays.copyOf(other.ends, Math.max(4, other.ranges));
+			this.ranges = other.ranges;
+			this.size = other.size;
+		} else {
+			addAll(c);
+		}
 	}
 
 	public String getName() {
@@ -44,17 +66,228 @@ public class Inscription extends TreeSet<Integer> {
 	}
 
 	public void addInterval(int from, int to) {
-		for (int i = from; i <= to; i++) {
-			this.add(i);
+		Preconditions.checkArgument(from <= to, "Empty interval: " + from + " - " + to);
+
+		// first range ending at from - 1 or later, last range starting at to + 1 or earlier
+		final int first = firstEndingAtOrAfter(from - 1L);
+		int last = first;
+		while (last < ranges && starts[last] - 1L <= to) {
+			last++;
+		}
+
+		if (first == last) {
+			ensureCapacity(ranges + 1);
+			System.arraycopy(starts, first, starts, first + 1, ranges - first);
+			System.arraycopy(ends, first, ends, first + 1, ranges - first);
+			starts[first] = from;
+			ends[first] = to;
+			ranges++;
+			size += to - from + 1;
+			return;
+		}
+
+		int merged = 0;
+		for (int r = first; r < last; r++) {
+			merged += ends[r] - starts[r] + 1;
+		}
+		starts[first] = Math.min(from, starts[first]);
+		ends[first] = Math.max(to, ends[last - 1]);
+		System.arraycopy(starts, last, starts, first + 1, ranges - last);
+		System.arraycopy(ends, last, ends, first + 1, ranges - last);
+		ranges -= (last - first - 1);
+		size += (ends[first] - starts[first] + 1) - merged;
+	}
+
+	@Override
+	public boolean add(Integer line) {
+		if (contains(line.intValue())) {
+			return false;
+		}
+		addInterval(line, line);
+		return true;
+	}
+
+	public boolean contains(int line) {
+		final int r = firstEndingAtOrAfter(line);
+		return r < ranges && starts[r] <= line;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return (o instanceof Integer) && contains(((Integer) o).intValue());
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if (!(c instanceof Inscription)) {
+			return super.containsAll(c);
 		}
+		final Inscription other = (Inscription) c;
+		for (int i = 0, j = 0; j < other.ranges; j++) {
+			while (i < ranges && ends[i] < other.starts[j]) {
+				i++;
+			}
+			if (i == ranges || starts[i] > other.starts[j] || ends[i] < other.ends[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of lines in both inscriptions
+	 */
+	public int intersectionSize(Inscription other) {
+		int intersection = 0;
+		for (int i = 0, j = 0; i < ranges && j < other.ranges; ) {
+			final int start = Math.max(starts[i], other.starts[j]);
+			final int end = Math.min(ends[i], other.ends[j]);
+			if (start <= end) {
+				intersection += end - start + 1;
+			}
+			if (ends[i] < other.ends[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return intersection;
+	}
+
+	/**
+	 * @return <code>true</code> if both inscriptions share at least one line
+	 */
+	public boolean intersects(Inscription other) {
+		for (int i = 0, j = 0; i < ranges && j < other.ranges; ) {
+			if (Math.max(starts[i], other.starts[j]) <= Math.min(ends[i], other.ends[j])) {
+				return true;
+			}
+			if (ends[i] < other.ends[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the mean line number
+	 */
+	public double average() {
+		double sum = 0;
+		for (int r = 0; r < ranges; r++) {
+			sum += ((double) starts[r] + ends[r]) * (ends[r] - starts[r] + 1) / 2;
+		}
+		return sum / size;
+	}
+
+	public int first() {
+		if (ranges == 0) {
+			throw new NoSuchElementException();
+		}
+		return starts[0];
+	}
+
+	public int last() {
+		if (ranges == 0) {
+			throw new NoSuchElementException();
+		}
+		return ends[ranges - 1];
 	}
 
 	public boolean spans(Inscription other) {
 		return (first() < other.first()) && (last() > other.last());
 	}
 
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Iterator<Integer> iterator() {
+		return new Iterator<Integer>() {
+			private int range = 0;
+			private int next = (ranges == 0 ? 0 : starts[0]);
+
+			@Override
+			public boolean hasNext() {
+				return range < ranges;
+			}
+
+			@Override
+			public Integer next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				final int line = next;
+				if (line == ends[range] && ++range < ranges) {
+					next = starts[range];
+				} else {
+					next++;
+				}
+				return line;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof Inscription) {
+			final Inscription other = (Inscription) o;
+			if (ranges != other.ranges) {
+				return false;
+			}
+			for (int r = 0; r < ranges; r++) {
+				if (starts[r] != other.starts[r] || ends[r] != other.ends[r]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		// the sum of all lines, as mandated by Set.hashCode()
+		long hashCode = 0;
+		for (int r = 0; r < ranges; r++) {
+			hashCode += ((long) starts[r] + ends[r]) * (ends[r] - starts[r] + 1L) / 2;
+		}
+		return (int) hashCode;
+	}
+
 	@Override
 	public String toString() {
 		return name;
 	}
+
+	private int firstEndingAtOrAfter(long line) {
+		int low = 0;
+		int high = ranges;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (ends[mid] < line) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > starts.length) {
+			final int length = Math.max(capacity, starts.length * 2);
+			starts = Arrays.copyOf(starts, length);
+			ends = Arrays.copyOf(ends, length);
+		}
+	}
 }
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.reasoning;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
+import de.faustedition.dataimport.XMLSynchronizer;
+import de.faustedition.genesis.lines.VerseInterval;
+import edu.bath.transitivityutils.FrozenTransitiveRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps the genetic graphs computed by {@link InscriptionPrecedenceResource} per verse interval.
+ * <p/>
+ * Entries are tagged with the {@link XMLSynchronizer#getGeneration() import generation} they have been computed in
+ * and are not returned anymore once the graph has been synchronized with the XML storage again. At most
+ * <code>inscription.precedence.cache</code> graphs are kept.
+ * <p/>
+ * The relations between the inscriptions of a verse interval, which are the costly part of a graph, are also stored
+ * next to the graph database, tagged with the {@link de.faustedition.genesis.lines.VerseCoverage#getFingerprint()
+ * fingerprint} of the verse coverage they have been computed from, so that they are read back after a restart instead
+ * of being related again.
+ */
+@Component
+public class InscriptionPrecedenceCache implements InitializingBean {
+
+	@Autowired
+	private Environment environment;
+
+	@Autowired
+	private XMLSynchronizer synchronizer;
+
+	private static final Logger LOG = LoggerFactory.getLogger(InscriptionPrecedenceCache.class);
+
+	private static final int RELATIONS_MAGIC = 0x49505231; // "IPR1"
+
+	private Cache<String, Result> cache;
+	private long generation = -1;
+	private File relationsDir;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(environment.getProperty("inscription.precedence.cache", Integer.class, 32))
+				.build();
+
+		final File graphHome = environment.getRequiredProperty("graph.home", File.class).getCanonicalFile();
+		this.relationsDir = new File(graphHome.getParentFile(), graphHome.getName() + ".precedence");
+		if (!relationsDir.isDirectory() && !relationsDir.mkdirs()) {
+			LOG.warn("Cannot create {}; relations between inscriptions will not be stored", relationsDir);
+			this.relationsDir = null;
+		}
+	}
+
+	/**
+	 * Returns the graph of the given interval computed since the last import, computing it via the given builder
+	 * otherwise.
+	 * <p/>
+	 * If the graph is being computed for another caller already, waits for the result instead.
+	 */
+	public Result get(VerseInterval interval, Callable<Result> builder) throws ExecutionException {
+		final long generation = synchronizer.getGeneration();
+		synchronized (this) {
+			if (generation != this.generation) {
+				cache.invalidateAll();
+				this.generation = generation;
+			}
+		}
+		return cache.get(generation + ":" + interval.getStart() + "-" + interval.getEnd(), builder);
+	}
+
+	/**
+	 * Reads the relations between the inscriptions of a verse interval stored by {@link #storeRelations}.
+	 *
+	 * @param fingerprint the fingerprint of the current verse coverage
+	 * @param inscriptions the inscriptions of the interval, which stored relations are resolved against by name
+	 * @return the stored relations in the order they have been stored, or <code>null</code> if none have been stored
+	 * for the given coverage
+	 */
+	public List<FrozenTransitiveRelation<Inscription>> loadRelations(VerseInterval interval, long fingerprint, Collection<Inscription> inscriptions) {
+		final File file = relationsFile(interval);
+		if (file == null || !file.isFile()) {
+			return null;
+		}
+		final Map<String, Inscription> byName = Maps.newHashMap();
+		for (Inscription inscription : inscriptions) {
+			byName.put(inscription.getName(), inscription);
+		}
+		final InscriptionCodec codec = new InscriptionCodec(byName);
+		try {
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != RELATIONS_MAGIC || in.readLong() != fingerprint) {
+					LOG.debug("Relations in {} are outdated", file);
+					return null;
+				}
+				final int count = in.readInt();
+				final List<FrozenTransitiveRelation<Inscription>> relations = Lists.newArrayList();
+				for (int i = 0; i < count; i++) {
+					relations.add(FrozenTransitiveRelation.readFrom(in, codec));
+				}
+				return relations;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			LOG.warn("I/O error while reading relations from " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the relations between the inscriptions of a verse interval, computed from the verse coverage with the
+	 * given fingerprint.
+	 * <p/>
+	 * Relations are written to a temporary file first and renamed afterwards, so that readers never see partially
+	 * written ones; failing to store them is logged and otherwise ignored.
+	 */
+	public void storeRelations(VerseInterval interval, long fingerprint, List<FrozenTransitiveRelation<Inscription>> relations) {
+		final File file = relationsFile(interval);
+		if (file == null) {
+			return;
+		}
+		final InscriptionCodec codec = new InscriptionCodec(Collections.<String, Inscription>emptyMap());
+		final File tempFile = new File(relationsDir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			try {
+				out.writeInt(RELATIONS_MAGIC);
+				out.writeLong(fingerprint);
+				out.writeInt(relations.size());
+				for (FrozenTransitiveRelation<Inscription> relation : relations) {
+					relation.writeTo(out, codec);
+				}
+			} finally {
+				out.close();
+			}
+			if (file.exists() && !file.delete()) {
+				throw new IOException("Cannot replace " + file);
+			}
+			if (!tempFile.renameTo(file)) {
+				throw new IOException("Cannot rename " + tempFile + " to " + file);
+			}
+		} catch (IOException e) {
+			LOG.warn("I/O error while writing relations to " + file, e);
+			tempFile.delete();
+		}
+	}
+
+	private File relationsFile(VerseInterval interval) {
+		return (relationsDir == null ? null : new File(relationsDir, interval.getStart() + "-" + interval.getEnd() + ".rel"));
+	}
+
+	/**
+	 * Writes inscriptions by name and resolves names read back against the inscriptions of a verse interval.
+	 */
+	private static class InscriptionCodec implements FrozenTransitiveRelation.Codec<Inscription> {
+		private final Map<String, Inscription> byName;
+
+		private InscriptionCodec(Map<String, Inscription> byName) {
+			this.byName = byName;
+		}
+
+		@Override
+		public void write(DataOutput out, Inscription value) throws IOException {
+			out.writeUTF(value.getName());
+		}
+
+		@Override
+		public Inscription read(DataInput in) throws IOException {
+			final String name = in.readUTF();
+			final Inscription inscription = byName.get(name);
+			if (inscription == null) {
+				throw new IOException("Unknown inscription " + name);
+			}
+			return inscription;
+		}
+	}
+
+	/**
+	 * The inscriptions of a verse interval and their precedence, with its renderings.
+	 */
+	public static class Result {
+		private final Set<Inscription> inscriptions;
+		private final PremiseBasedRelation<Inscription> precedence;
+		private final Table<Inscription, Inscription, String> edges;
+		private final String dot;
+		private byte[] svg;
+
+		public Result(Set<Inscription> inscriptions, PremiseBasedRelation<Inscription> precedence,
+				Table<Inscription, Inscription, String> edges, String dot) {
+			this.inscriptions = inscriptions;
+			this.precedence = precedence;
+			this.edges = edges;
+			this.dot = dot;
+		}
+
+		public Set<Inscription> getInscriptions() {
+			return inscriptions;
+		}
+
+		public PremiseBasedRelation<Inscription> getPrecedence() {
+			return precedence;
+		}
+
+		/**
+		 * @return the pairs related by the precedence, with the name of the premise relating them
+		 */
+		public Table<Inscription, Inscription, String> getEdges() {
+			return edges;
+		}
+
+		public String getDot() {
+			return dot;
+		}
+
+		/**
+		 * @return the SVG rendering of the graph or <code>null</code> if it has not been rendered yet
+		 */
+		public synchronized byte[] getSvg() {
+			return svg;
+		}
+
+		public synchronized void setSvg(byte[] svg) {
+			this.svg = svg;
+		}
+	}
+}
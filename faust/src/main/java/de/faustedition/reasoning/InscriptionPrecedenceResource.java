@@ -19,28 +19,34 @@
 
 package de.faustedition.reasoning;
 
-import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
 import com.google.common.io.FileBackedOutputStream;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import de.faustedition.FaustURI;
 import de.faustedition.document.Document;
 import de.faustedition.document.MaterialUnit;
 import de.faustedition.genesis.dating.GeneticSource;
-import de.faustedition.genesis.lines.GraphVerseInterval;
+import de.faustedition.genesis.lines.IndexedVerseInterval;
+import de.faustedition.genesis.lines.VerseCoverage;
 import de.faustedition.genesis.lines.VerseInterval;
 import de.faustedition.genesis.lines.VerseManager;
 import de.faustedition.graph.FaustGraph;
 import de.faustedition.reasoning.PremiseBasedRelation.Premise;
 import de.faustedition.transcript.TranscriptManager;
+import edu.bath.transitivityutils.FrozenTransitiveRelation;
 import edu.bath.transitivityutils.ImmutableRelation;
 import edu.bath.transitivityutils.Relation;
 import edu.bath.transitivityutils.Relations;
+import edu.bath.transitivityutils.TransitiveRelation;
 import eu.interedition.text.neo4j.Neo4jTextRepository;
 import org.hibernate.SessionFactory;
 import org.neo4j.graphdb.GraphDatabaseService;
@@ -58,7 +64,6 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -100,27 +105,48 @@ public class InscriptionPrecedenceResource extends ServerResource {
 	@Autowired
 	private org.slf4j.Logger logger;
 
+	@Autowired
+	private InscriptionPrecedenceCache precedenceCache;
+
 	
 	final private Map<Inscription, Node> nodeMap = new HashMap<Inscription, Node>();
 
+	private InscriptionPrecedenceCache.Result result;
+
 	@Override
 	protected void doInit() throws ResourceException {
 		super.doInit();
 
 		final VerseInterval verseInterval = VerseManager.fromRequestAttibutes(getRequestAttributes());
+		try {
+			result = precedenceCache.get(verseInterval, new Callable<InscriptionPrecedenceCache.Result>() {
+				@Override
+				public InscriptionPrecedenceCache.Result call() throws Exception {
+					return compute(verseInterval);
+				}
+			});
+		} catch (ExecutionException e) {
+			throw new ResourceException(e.getCause());
+		} catch (UncheckedExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		}
+		inscriptions = result.getInscriptions();
+		precedence = result.getPrecedence();
+		precedenceEdges = result.getEdges();
+	}
 
-
-
-		final Multimap<String, GraphVerseInterval> intervalIndex = Multimaps.index(verseManager.forInterval(verseInterval), new Function<GraphVerseInterval, String>() {
-			@Override
-			public String apply(@Nullable GraphVerseInterval input) {
-
-				//final String sigil = transcriptManager.materialUnitForTranscript(input.getTranscript(textRepo)).toString();
-				final String sigil = ((Document)(transcriptManager.materialUnitForTranscript(input.getTranscript(textRepo)))).getSource().toString();
-				return sigil;
+	private InscriptionPrecedenceCache.Result compute(VerseInterval verseInterval) {
+		final VerseCoverage coverage = verseManager.getCoverage();
+		final Multimap<String, IndexedVerseInterval> intervalIndex = ArrayListMultimap.create();
+		for (int mu : coverage.covering(verseInterval.getStart(), verseInterval.getEnd()).toArray()) {
+			final Node materialUnit = graphDb.getNodeById(coverage.getMaterialUnitId(mu));
+			final String sigil = ((Document) MaterialUnit.forNode(materialUnit)).getSource().toString();
+			for (IndexedVerseInterval interval : coverage.getIntervals(mu)) {
+				if (interval.getStart() <= verseInterval.getEnd() && interval.getEnd() >= verseInterval.getStart()) {
+					intervalIndex.put(sigil, interval);
+				}
 			}
-
-		});
+		}
 
 		inscriptions = Sets.newHashSet();
 		for (String sigil : Ordering.natural().immutableSortedCopy(intervalIndex.keySet())) {
@@ -132,26 +158,23 @@ public class InscriptionPrecedenceResource extends ServerResource {
 			inscriptions.add(inscription);
 			//long materialUnitId = intervalIndex.get(sigil).iterator().next().getTranscript(textRepo).getMaterialUnitId();
 			//Node node = graphDb.getNodeById(materialUnitId);
-			Node node = transcriptManager.materialUnitForTranscript(intervalIndex.get(sigil).iterator().next().getTranscript(textRepo)).node;
+			Node node = graphDb.getNodeById(intervalIndex.get(sigil).iterator().next().getMaterialUnitId());
 			nodeMap.put(inscription, node);
 			
 		}
-		for (Inscription subject : inscriptions) {
-			for (Inscription object : inscriptions) {
-				if (InscriptionRelations.syntagmaticallyPrecedesByFirstLine(subject, object)) {
-//				if (InscriptionRelations.syntagmaticallyPrecedesByAverage(subject, object)) {
-				
-					syntagmaticPrecedence.relate(subject, object);
-				}
-				if (InscriptionRelations.exclusivelyContains(subject, object)) {
-					exclusiveContainment.relate(subject, object);
-				}
-				if (InscriptionRelations.paradigmaticallyContains(subject, object)) {
-					paradigmaticContainment.relate(subject, object);
-				}
-				
-			}
+		// the premises evaluating these relations end up in the cached result, shared by concurrent requests
+		List<FrozenTransitiveRelation<Inscription>> relations = precedenceCache.loadRelations(verseInterval, coverage.getFingerprint(), inscriptions);
+		if (relations == null || relations.size() != 3) {
+			InscriptionRelations.relateAll(inscriptions, syntagmaticPrecedence, exclusiveContainment, paradigmaticContainment);
+			relations = Arrays.asList(
+					Relations.freeze(syntagmaticPrecedence),
+					Relations.freeze(exclusiveContainment),
+					Relations.freeze(paradigmaticContainment));
+			precedenceCache.storeRelations(verseInterval, coverage.getFingerprint(), relations);
 		}
+		syntagmaticPrecedence = relations.get(0);
+		exclusiveContainment = relations.get(1);
+		paradigmaticContainment = relations.get(2);
 		try {
 			explicitPrecedence = new GraphBasedRelation<Inscription>(nodeMap, new FaustURI(new URI("faust://secondary/gruss2011")));
 		} catch (URISyntaxException e) {
@@ -166,32 +189,74 @@ public class InscriptionPrecedenceResource extends ServerResource {
 		precedence = new PremiseBasedRelation<Inscription> (premises);
 //		precedence = new LastPremiseRelation<Inscription> (premises);
 		
-		Relation<Inscription> test = Util.wrapTransitive(
-				new PremiseBasedRelation<Inscription> (premisesFromInference()
-							), inscriptions);
+		precedenceEdges = HashBasedTable.create();
+		final List<Inscription> pairs = new ArrayList<Inscription>(inscriptions);
+		// same edges as precedence.areRelated() over all ordered pairs: the first premise applying in either direction
+		// decides, relating both ways if it applies both ways, which includes the reflexive r_pcon loops
+		for (int i = 0; i < pairs.size(); i++) {
+			for (int j = i; j < pairs.size(); j++) {
+				final Inscription a = pairs.get(i);
+				final Inscription b = pairs.get(j);
+				for (Premise<Inscription> premise : precedence) {
+					final boolean forward = premise.applies(a, b);
+					final boolean backward = (i == j ? forward : premise.applies(b, a));
+					if (forward) {
+						precedenceEdges.put(a, b, premise.getName());
+					}
+					if (backward) {
+						precedenceEdges.put(b, a, premise.getName());
+					}
+					if (forward || backward) {
+						break;
+					}
+				}
+			}
+		}
 
-		
 		Relation<Inscription> check = Util.wrapTransitive(
 				new PremiseBasedRelation<Inscription> (premisesFromGeneticSources()
 							), inscriptions);
 
+		final Statistics statistics = Statistics.evaluate(new ImmutableRelation<Inscription>() {
+			@Override
+			public boolean areRelated(Inscription subject, Inscription object) {
+				return precedenceEdges.contains(subject, object);
+			}
+		}, check, inscriptions);
 		logger.info("Genetic graph statistics: ");
 		logger.info( 
-				"  Coverage: " + Statistics.completeness(precedence, check, inscriptions) * 100 +
-				", Recall: " + Statistics.recall(precedence, check, inscriptions) * 100 +
-				", Accuracy : "+ Statistics.correctness(precedence, check, inscriptions) * 100
+				"  Coverage: " + statistics.getCompleteness() * 100 +
+				", Recall: " + statistics.getRecall() * 100 +
+				", Accuracy : "+ statistics.getCorrectness() * 100
 
 				) ;
-		
+
+		return new InscriptionPrecedenceCache.Result(inscriptions, precedence, precedenceEdges, asDot());
 	}
 
 	@Get("txt")
 	public Representation dot() {
-		return new StringRepresentation(asDot());
+		return new StringRepresentation(result.getDot());
 	}
 
 	@Get("svg|html")
 	public Representation svg() throws IOException, ExecutionException, InterruptedException {
+		final byte[] svg;
+		synchronized (result) {
+			if (result.getSvg() == null) {
+				result.setSvg(renderSvg(result.getDot()));
+			}
+			svg = result.getSvg();
+		}
+		return new OutputRepresentation(MediaType.IMAGE_SVG) {
+			@Override
+			public void write(OutputStream outputStream) throws IOException {
+				outputStream.write(svg);
+			}
+		};
+	}
+
+	private byte[] renderSvg(final String graph) throws IOException, ExecutionException, InterruptedException {
 		final ExecutorService executorService = Executors.newCachedThreadPool();
 		final Process tred = new ProcessBuilder(environment.getRequiredProperty("graphviz.tred.path")).start();
 		final Process dot = new ProcessBuilder(environment.getRequiredProperty("graphviz.dot.path"), "-Tsvg").start();
@@ -202,7 +267,7 @@ public class InscriptionPrecedenceResource extends ServerResource {
 				InputStream dataStream = null;
 				OutputStream tredStream = null;
 				try {
-					ByteStreams.copy(dataStream = new ByteArrayInputStream(asDot().getBytes(Charset.forName("UTF-8"))), tredStream = tred.getOutputStream());
+					ByteStreams.copy(dataStream = new ByteArrayInputStream(graph.getBytes(Charset.forName("UTF-8"))), tredStream = tred.getOutputStream());
 				} finally {
 					Closeables.close(dataStream, false);
 					Closeables.close(tredStream, false);
@@ -245,14 +310,12 @@ public class InscriptionPrecedenceResource extends ServerResource {
 		Preconditions.checkState(dot.waitFor() == 0);
 
 		final FileBackedOutputStream resultBuf = dotFuture.get();
-
-		return new OutputRepresentation(MediaType.IMAGE_SVG) {
-			@Override
-			public void write(OutputStream outputStream) throws IOException {
-				ByteStreams.copy(resultBuf.getSupplier(), outputStream);
-				resultBuf.reset();
-			}
-		};
+		try {
+			return ByteStreams.toByteArray(resultBuf.getSupplier());
+		} finally {
+			resultBuf.reset();
+			executorService.shutdown();
+		}
 	}
 
 	private String asDot() {
@@ -279,21 +342,17 @@ public class InscriptionPrecedenceResource extends ServerResource {
 		dot.append(" weight=").append("1");
 		dot.append(" ];\n");
 
-		for (Inscription i : inscriptions) {
-			for (Inscription j : inscriptions) {
-				if (precedence.areRelated(i, j)) {
-					final String premise = precedence.findRelevantPremise(i, j).getName();
-
-					dot.append(toLabel(i));
-					dot.append(" -> ");
-					dot.append(toLabel(j));
-					dot.append(" [ ");
-					dot.append(" label=").append(premise);
-					dot.append(" color=").append("r_syn".equals(premise) ? "grey" : "black");
-					dot.append(" weight=").append("r_syn".equals(premise) ? "1" : "1");
-					dot.append(" ];\n");
-				}
-			}
+		for (Table.Cell<Inscription, Inscription, String> edge : precedenceEdges.cellSet()) {
+			final String premise = edge.getValue();
+
+			dot.append(toLabel(edge.getRowKey()));
+			dot.append(" -> ");
+			dot.append(toLabel(edge.getColumnKey()));
+			dot.append(" [ ");
+			dot.append(" label=").append(premise);
+			dot.append(" color=").append("r_syn".equals(premise) ? "grey" : "black");
+			dot.append(" weight=").append("r_syn".equals(premise) ? "1" : "1");
+			dot.append(" ];\n");
 		}
 
 		dot.append("}\n");
@@ -305,9 +364,9 @@ public class InscriptionPrecedenceResource extends ServerResource {
 	}
 
 	private Set<Inscription> inscriptions;
-	private Relation<Inscription> syntagmaticPrecedence = Relations.newTransitiveRelation();
-	private Relation<Inscription> exclusiveContainment = Relations.newTransitiveRelation();//MultimapBasedRelation.create();
-	private Relation<Inscription> paradigmaticContainment = Relations.newTransitiveRelation(); //MultimapBasedRelation.create();
+	private TransitiveRelation<Inscription> syntagmaticPrecedence = Relations.newTransitiveRelation();
+	private TransitiveRelation<Inscription> exclusiveContainment = Relations.newTransitiveRelation();//MultimapBasedRelation.create();
+	private TransitiveRelation<Inscription> paradigmaticContainment = Relations.newTransitiveRelation(); //MultimapBasedRelation.create();
 	private ImmutableRelation<Inscription> explicitPrecedence;
 
 
@@ -385,6 +444,11 @@ public class InscriptionPrecedenceResource extends ServerResource {
 	}
 	
 	public PremiseBasedRelation<Inscription> precedence; 
+
+	/**
+	 * The pairs related by {@link #precedence}, with the name of the premise relating them.
+	 */
+	private Table<Inscription, Inscription, String> precedenceEdges;
 	
 
 	/**
@@ -19,32 +19,32 @@
 
 package de.faustedition.reasoning;
 
-import com.google.common.collect.Sets;
+import com.google.common.collect.Lists;
+import edu.bath.transitivityutils.Relation;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 public class InscriptionRelations {
 
 	private static final double COMMON_RATIO = 0.4;
 
+	private static final Comparator<Inscription> BY_FIRST_LINE = new Comparator<Inscription>() {
+		@Override
+		public int compare(Inscription o1, Inscription o2) {
+			return (o1.first() < o2.first() ? -1 : (o1.first() > o2.first() ? 1 : 0));
+		}
+	};
+
 	public static boolean areParadigmaticallyRelated(Inscription i, Inscription j) {
-		final int intersectionSize = Sets.intersection(i, j).size();
+		final int intersectionSize = i.intersectionSize(j);
 		return (intersectionSize >= (COMMON_RATIO * i.size())) && (intersectionSize >= (COMMON_RATIO * j.size()));
 	}
 
 	public static boolean syntagmaticallyPrecedesByAverage(Inscription i, Inscription j) {
-		double iAverage = 0;
-		for (int line : i) {
-			iAverage += line;
-		}
-		iAverage = iAverage / i.size();
-		
-		double jAverage = 0;
-		for (int line : j) {
-			jAverage += line;
-		}
-		jAverage = jAverage / j.size();
-		
-		return iAverage < jAverage;
+		return i.average() < j.average();
 	}
 	
 	public static boolean syntagmaticallyPrecedesByFirstLine(Inscription i, Inscription j) {	
@@ -57,16 +57,63 @@ public class InscriptionRelations {
 
 	public static boolean exclusivelyContains(Inscription i, Inscription j) {
 		// i spans j but j is missing from i
-		return i.spans(j) && Sets.intersection(i, j).isEmpty();
+		return i.spans(j) && !i.intersects(j);
 	}
 
 	public static boolean paradigmaticallyContains(Inscription i, Inscription j) {
-		Inscription intersection = ((Inscription)i.clone());
-		intersection.retainAll(j);
-		
 		// (i spans j && j is contained in i
 		return i.spans(j) && i.containsAll(j);
 	}
 
-	
+	/**
+	 * Relates all pairs of inscriptions satisfying {@link #syntagmaticallyPrecedesByFirstLine(Inscription, Inscription)},
+	 * {@link #exclusivelyContains(Inscription, Inscription)} and {@link #paradigmaticallyContains(Inscription,
+	 * Inscription)} respectively, in a single sweep over the inscriptions ordered by their first line.
+	 * <p/>
+	 * As the given relations are expected to be transitive, syntagmatic precedence is only stated between inscriptions
+	 * of consecutive first lines. Containment is only tested for inscriptions starting within the span of the
+	 * containing one.
+	 */
+	public static void relateAll(Collection<Inscription> inscriptions, Relation<Inscription> syntagmaticPrecedence,
+			Relation<Inscription> exclusiveContainment, Relation<Inscription> paradigmaticContainment) {
+		final List<Inscription> sorted = Lists.newArrayList(inscriptions);
+		Collections.sort(sorted, BY_FIRST_LINE);
+
+		final int size = sorted.size();
+		int previousGroup = 0;
+		int group = 0;
+		while (group < size) {
+			final int first = sorted.get(group).first();
+			int nextGroup = group + 1;
+			while (nextGroup < size && sorted.get(nextGroup).first() == first) {
+				nextGroup++;
+			}
+
+			for (int i = group; i < nextGroup; i++) {
+				final Inscription object = sorted.get(i);
+				for (int s = previousGroup; s < group; s++) {
+					syntagmaticPrecedence.relate(sorted.get(s), object);
+				}
+			}
+
+			for (int i = group; i < nextGroup; i++) {
+				final Inscription subject = sorted.get(i);
+				final int last = subject.last();
+				for (int j = nextGroup; j < size && sorted.get(j).first() < last; j++) {
+					final Inscription object = sorted.get(j);
+					if (object.last() >= last) {
+						continue;
+					}
+					if (!subject.intersects(object)) {
+						exclusiveContainment.relate(subject, object);
+					} else if (subject.containsAll(object)) {
+						paradigmaticContainment.relate(subject, object);
+					}
+				}
+			}
+
+			previousGroup = group;
+			group = nextGroup;
+		}
+	}
 }
@@ -19,76 +19,107 @@
 
 package de.faustedition.reasoning;
 
+import com.google.common.collect.Lists;
 import edu.bath.transitivityutils.ImmutableRelation;
 
+import java.util.List;
 import java.util.Set;
 
+/**
+ * Compares a relation <code>r</code> to a reference relation <code>s</code> over a universe of elements, counting
+ * pairs related unidirectionally, i.e. in one direction but not the other.
+ */
 public class Statistics {
 
-	private static <E> boolean unidirectionallyRelated(ImmutableRelation<E> rel,
-			E subject, E object) {
-		return
-			subject != object
-			&& rel.areRelated(subject, object) 
-			&& ! rel.areRelated(object, subject); 
+	private final float correctness;
+	private final float completeness;
+	private final float recall;
+
+	private Statistics(float correctness, float completeness, float recall) {
+		this.correctness = correctness;
+		this.completeness = completeness;
+		this.recall = recall;
 	}
-	
-	public static <E> float correctness(ImmutableRelation<E> r,
-			ImmutableRelation<E> s, Set<E> universe) {
+
+	/**
+	 * Evaluates correctness, completeness and recall in one pass, querying both relations once per direction of each
+	 * unordered pair of elements.
+	 */
+	public static <E> Statistics evaluate(ImmutableRelation<E> r, ImmutableRelation<E> s, Set<E> universe) {
+		final List<E> elements = Lists.newArrayList(universe);
+		final int size = elements.size();
+
 		int correct = 0;
 		int incorrect = 0;
-		for (E subject : universe)
-			for (E object : universe)
-					if (unidirectionallyRelated(r, subject, object))
-						if (unidirectionallyRelated(s, subject, object))
-							correct++;
-						else if (unidirectionallyRelated(s, object, subject))
-							incorrect++;
-		if (correct + incorrect == 0)
-			return 1;
-		else
-			return ((float) correct / (float) (correct + incorrect));
-	}
-
-	public static <E> float completeness(ImmutableRelation<E> r,
-			ImmutableRelation<E> s, Set<E> universe) {
 		int inSandR = 0;
 		int inS = 0;
-		for (E subject : universe)
-			for (E object : universe) {
-				if (unidirectionallyRelated(s, subject, object)
-						|| unidirectionallyRelated(s, object, subject)) {
-					inS++;
-					if (unidirectionallyRelated(r, subject, object)
-							|| unidirectionallyRelated(r, object, subject))
-						inSandR++;
+		int unidirectionallyInS = 0;
+		int unidirectionallyInR = 0;
+		for (int i = 0; i < size; i++) {
+			final E a = elements.get(i);
+			for (int j = i + 1; j < size; j++) {
+				final E b = elements.get(j);
+				final boolean rAB = r.areRelated(a, b);
+				final boolean rBA = r.areRelated(b, a);
+				final boolean sAB = s.areRelated(a, b);
+				final boolean sBA = s.areRelated(b, a);
+
+				final boolean rForward = rAB && !rBA;
+				final boolean rBackward = rBA && !rAB;
+				final boolean sForward = sAB && !sBA;
+				final boolean sBackward = sBA && !sAB;
+
+				if (rForward || rBackward) {
+					if ((rForward && sForward) || (rBackward && sBackward)) {
+						correct++;
+					} else if (sForward || sBackward) {
+						incorrect++;
+					}
+				}
+				if (sForward || sBackward) {
+					// both orders of the pair count
+					inS += 2;
+					if (rForward || rBackward) {
+						inSandR += 2;
+					}
+					unidirectionallyInS++;
+					if ((rForward && sForward) || (rBackward && sBackward)) {
+						unidirectionallyInR++;
+					}
 				}
 			}
+		}
 
-		if (inS == 0)
-			return 1;
-		else
-			return ((float) inSandR / (float) inS);
+		return new Statistics(
+				(correct + incorrect == 0 ? 1 : ((float) correct / (float) (correct + incorrect))),
+				(inS == 0 ? 1 : ((float) inSandR / (float) inS)),
+				(unidirectionallyInS == 0 ? 1 : ((float) unidirectionallyInR / unidirectionallyInS)));
+	}
+
+	public static <E> float correctness(ImmutableRelation<E> r,
+			ImmutableRelation<E> s, Set<E> universe) {
+		return evaluate(r, s, universe).getCorrectness();
+	}
+
+	public static <E> float completeness(ImmutableRelation<E> r,
+			ImmutableRelation<E> s, Set<E> universe) {
+		return evaluate(r, s, universe).getCompleteness();
 	}
 	
 	public static <E> float recall(ImmutableRelation<E> r,
 			ImmutableRelation<E> s, Set<E> universe) {
-		int inR = 0;
-		int inS =0;
-		for (E subject : universe)
-			for (E object : universe) {
-				if (unidirectionallyRelated(s, subject, object)) {
-					inS++;
-					if (unidirectionallyRelated(r, subject, object))
-						inR++;
-				}
-			}
+		return evaluate(r, s, universe).getRecall();
+	}
+
+	public float getCorrectness() {
+		return correctness;
+	}
+
+	public float getCompleteness() {
+		return completeness;
+	}
 
-		if (inS == 0)
-			return 1;
-		else
-			return ((float) inR / inS);
-		
-		
+	public float getRecall() {
+		return recall;
 	}
 }
@@ -19,7 +19,10 @@
 
 package de.faustedition.reasoning;
 
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
 import edu.bath.transitivityutils.ImmutableRelation;
+import edu.bath.transitivityutils.Navigators;
 import edu.bath.transitivityutils.Relations;
 import edu.bath.transitivityutils.TransitiveRelation;
 
@@ -28,12 +31,12 @@ import java.util.Set;
 public class Util{
 
 	public static <E> TransitiveRelation<E> wrapTransitive(ImmutableRelation<E> r, Set<E> universe) {
-		TransitiveRelation<E> result = Relations.newTransitiveRelation();
+		SetMultimap<E, E> related = HashMultimap.create();
 		for (E subject : universe)
 			for (E object: universe)
 				if (r.areRelated(subject, object))
-					result.relate(subject, object);
-		return result;
+					related.put(subject, object);
+		return Relations.newTransitiveRelation(Navigators.forMultimap(related));
 	}
 
 }
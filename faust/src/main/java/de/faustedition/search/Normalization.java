@@ -20,29 +20,19 @@
 package de.faustedition.search;
 
 /**
- * User: moz
- * Date: 14.07.14
- * Time: 14:56
+ * Normalization of verse text with the {@link Normalizer#DEFAULT_STEPS_NAMES default steps}.
+ *
+ * @see SearchIndex#getNormalizer()
  */
-
 public class Normalization {
 
-	public static String normalize(String text) {
-		return text
-				.toLowerCase()
-
-				.replace('.', ' ')
-				.replace(',', ' ')
-				.replace(';', ' ')
-				.replace('`', ' ')
-				.replace('!', ' ')
+	public static final Normalizer DEFAULT = Normalizer.forSteps(Normalizer.DEFAULT_STEPS_NAMES);
 
-				.replace('ſ', 's')
-				.replace('ß', 's')
-				.replace('c', 'c')
-				.replace('k', 'c')
-				.replace('z', 'c')
-				.replace('y', 'i');
+	public static String normalize(String text) {
+		return DEFAULT.normalize(text);
+	}
 
+	public static int normalize(int c) {
+		return DEFAULT.normalize(c);
 	}
 }
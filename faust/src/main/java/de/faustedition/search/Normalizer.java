@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.search;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A configurable chain of character normalizations, shared by indexing and querying.
+ * <p/>
+ * All steps map a character to exactly one character, so that normalized text keeps the offsets of its source. They
+ * are compiled into a lookup table for the Basic Multilingual Plane upon construction; normalizing a text is a single
+ * pass over its characters, which can be written into a caller-provided buffer or even in place.
+ */
+public final class Normalizer {
+
+	public enum Step {
+		/**
+		 * Compatibility decomposition and composition (NFKC), applied to characters whose normal form is a single
+		 * character; ligatures and other expansions are left as they are.
+		 */
+		NFKC,
+
+		LOWER_CASE,
+
+		/**
+		 * Folds umlauts and other letters with diacritics to their base letter.
+		 */
+		UMLAUTS,
+
+		/**
+		 * Maps historic spellings to a common form: <code>ſ</code> and <code>ß</code> to <code>s</code>,
+		 * <code>k</code> and <code>z</code> to <code>c</code>, <code>y</code> to <code>i</code>.
+		 */
+		HISTORIC_SPELLING,
+
+		/**
+		 * Replaces the punctuation marks <code>.,;`!</code> with spaces, as the search did before normalizations
+		 * became configurable.
+		 */
+		PUNCTUATION,
+
+		/**
+		 * Replaces all Unicode punctuation and symbols with spaces, including apostrophes, quotes, brackets and
+		 * dashes.
+		 */
+		UNICODE_PUNCTUATION;
+
+		public String getName() {
+			return name().toLowerCase().replace('_', '-');
+		}
+
+		public static Step forName(String name) {
+			return valueOf(name.trim().toUpperCase().replace('-', '_'));
+		}
+	}
+
+	/**
+	 * Reproduces the normalization of the search before it became configurable.
+	 */
+	public static final String DEFAULT_STEPS_NAMES = "lower-case,historic-spelling,punctuation";
+
+	private static final String LEGACY_PUNCTUATION = ".,;`!";
+
+	private final Set<Step> steps;
+	private final char[] table = new char[Character.MAX_VALUE + 1];
+
+	public Normalizer(Set<Step> steps) {
+		this.steps = Collections.unmodifiableSet(steps.isEmpty() ? EnumSet.noneOf(Step.class) : EnumSet.copyOf(steps));
+		for (int c = 0; c < table.length; c++) {
+			table[c] = (char) map(c);
+		}
+	}
+
+	/**
+	 * @param steps names of normalization steps, separated by commas, e.g. <code>lower-case,historic-spelling</code>
+	 */
+	public static Normalizer forSteps(String steps) {
+		final Set<Step> parsed = EnumSet.noneOf(Step.class);
+		for (String step : Splitter.on(',').omitEmptyStrings().trimResults().split(steps)) {
+			parsed.add(Step.forName(step));
+		}
+		return new Normalizer(parsed);
+	}
+
+	public Set<Step> getSteps() {
+		return steps;
+	}
+
+	public int normalize(int c) {
+		if (c <= Character.MAX_VALUE) {
+			return table[c];
+		}
+		return (steps.contains(Step.LOWER_CASE) ? Character.toLowerCase(c) : c);
+	}
+
+	/**
+	 * Normalizes a range of characters into a buffer of at least the same length; source and target may be the same
+	 * array.
+	 */
+	public void normalize(char[] source, int offset, int length, char[] target, int targetOffset) {
+		final int end = offset + length;
+		for (int i = offset, j = targetOffset; i < end; i++, j++) {
+			final char c = source[i];
+			if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(source[i + 1])) {
+				final int normalized = normalize(Character.toCodePoint(c, source[i + 1]));
+				if (Character.isSupplementaryCodePoint(normalized)) {
+					Character.toChars(normalized, target, j);
+					i++;
+					j++;
+					continue;
+				}
+			}
+			target[j] = table[c];
+		}
+	}
+
+	public String normalize(String text) {
+		final char[] buffer = text.toCharArray();
+		normalize(buffer, 0, buffer.length, buffer, 0);
+		return new String(buffer);
+	}
+
+	private int map(int c) {
+		if (Character.isSurrogate((char) c)) {
+			return c;
+		}
+		if (steps.contains(Step.NFKC)) {
+			c = singleChar(java.text.Normalizer.normalize(String.valueOf((char) c), java.text.Normalizer.Form.NFKC), c);
+		}
+		if (steps.contains(Step.LOWER_CASE)) {
+			c = Character.toLowerCase(c);
+		}
+		if (steps.contains(Step.UMLAUTS) && Character.isLetter(c)) {
+			final String decomposed = java.text.Normalizer.normalize(String.valueOf((char) c), java.text.Normalizer.Form.NFD);
+			if (decomposed.length() > 1 && Character.isLetter(decomposed.charAt(0))) {
+				boolean marks = true;
+				for (int i = 1; i < decomposed.length(); i++) {
+					marks &= (Character.getType(decomposed.charAt(i)) == Character.NON_SPACING_MARK);
+				}
+				if (marks) {
+					c = decomposed.charAt(0);
+				}
+			}
+		}
+		if (steps.contains(Step.HISTORIC_SPELLING)) {
+			switch (c) {
+				case 'ſ':
+				case 'ß':
+					c = 's';
+					break;
+				case 'k':
+				case 'z':
+					c = 'c';
+					break;
+				case 'y':
+					c = 'i';
+					break;
+			}
+		}
+		if (steps.contains(Step.PUNCTUATION) && LEGACY_PUNCTUATION.indexOf(c) >= 0) {
+			c = ' ';
+		}
+		if (steps.contains(Step.UNICODE_PUNCTUATION) && isPunctuation(c)) {
+			c = ' ';
+		}
+		return c;
+	}
+
+	private static int singleChar(String text, int fallback) {
+		return (text.length() == 1 ? text.charAt(0) : fallback);
+	}
+
+	private static boolean isPunctuation(int c) {
+		switch (Character.getType(c)) {
+			case Character.CONNECTOR_PUNCTUATION:
+			case Character.DASH_PUNCTUATION:
+			case Character.START_PUNCTUATION:
+			case Character.END_PUNCTUATION:
+			case Character.INITIAL_QUOTE_PUNCTUATION:
+			case Character.FINAL_QUOTE_PUNCTUATION:
+			case Character.OTHER_PUNCTUATION:
+			case Character.MATH_SYMBOL:
+			case Character.CURRENCY_SYMBOL:
+			case Character.MODIFIER_SYMBOL:
+			case Character.OTHER_SYMBOL:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	@Override
+	public String toString() {
+		final List<String> names = Lists.newArrayList();
+		for (Step step : steps) {
+			names.add(step.getName());
+		}
+		return Joiner.on(',').join(names);
+	}
+}
@@ -0,0 +1,568 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.search;
+
+import com.google.common.collect.Sets;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full-text index of all verses, kept on disk below <code>search.home</code>.
+ * <p/>
+ * Each verse is indexed with its normalized text, and stored with its original text, the sigil, source and idnos of
+ * its document, its verse number and its offsets within the transcript. Search results can therefore be rendered
+ * without consulting the graph.
+ * <p/>
+ * Queries follow the Lucene query syntax, supporting phrases (<code>"a b"</code>), proximity
+ * (<code>"a b"~5</code>), fuzzy terms (<code>a~</code>) and wildcards. Changes become visible to searches right
+ * away and are committed to disk every few seconds.
+ * <p/>
+ * Verses and queries are normalized with the steps listed in <code>search.normalization</code>. The index records
+ * the steps it has been built with and is cleared on startup if they have changed, so that it gets rebuilt.
+ */
+@Component
+public class SearchIndex implements InitializingBean, DisposableBean {
+	private static final Logger LOG = LoggerFactory.getLogger(SearchIndex.class);
+
+	public static final String TEXT_FIELD = "text";
+	private static final String TRANSCRIPT_FIELD = "transcript";
+	private static final String DOCUMENT_FIELD = "document";
+	private static final String SIGIL_FIELD = "sigil";
+	private static final String SOURCE_FIELD = "source";
+	private static final String IDNOS_FIELD = "idnos";
+	private static final String VERSE_FIELD = "verse";
+	private static final String START_FIELD = "start";
+	private static final String END_FIELD = "end";
+
+	private static final String NORMALIZATION_DATA = "normalization";
+
+	private static final long COMMIT_INTERVAL = 5;
+
+	@Autowired
+	private Environment environment;
+
+	private Normalizer normalizer;
+	private Analyzer analyzer;
+	private FSDirectory directory;
+	private IndexWriter writer;
+	private IndexReader reader;
+	private ScheduledExecutorService committer;
+	private volatile boolean dirty = false;
+	private final List<CommitListener> listeners = new CopyOnWriteArrayList<CommitListener>();
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		final File home = environment.getRequiredProperty("search.home", File.class);
+		if (!home.isDirectory() && !home.mkdirs()) {
+			throw new IOException("Cannot create " + home);
+		}
+		this.normalizer = Normalizer.forSteps(environment.getProperty("search.normalization", Normalizer.DEFAULT_STEPS_NAMES));
+		this.analyzer = new VerseAnalyzer(normalizer);
+
+		this.directory = FSDirectory.open(home);
+		final String indexedNormalization = (IndexReader.indexExists(directory)
+				? IndexReader.getCommitUserData(directory).get(NORMALIZATION_DATA)
+				: null);
+		this.writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_35, analyzer));
+		if (!normalizer.toString().equals(indexedNormalization)) {
+			LOG.info("Search index normalized with '{}' instead of '{}'; clearing it", indexedNormalization, normalizer);
+			writer.deleteAll();
+			writer.commit(commitData());
+		}
+		this.reader = IndexReader.open(writer, true);
+
+		this.committer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				final Thread thread = new Thread(r, "search-index-committer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		committer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					commit();
+				} catch (IOException e) {
+					LOG.error("I/O error while committing search index", e);
+				}
+			}
+		}, COMMIT_INTERVAL, COMMIT_INTERVAL, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		committer.shutdownNow();
+		commit();
+		synchronized (this) {
+			reader.decRef();
+		}
+		writer.close();
+		directory.close();
+	}
+
+	/**
+	 * @return the normalization applied to indexed verses and queries alike
+	 */
+	public Normalizer getNormalizer() {
+		return normalizer;
+	}
+
+	/**
+	 * @return the node ids of all transcripts with verses in the index
+	 */
+	public Set<Long> transcripts() throws IOException {
+		final Set<Long> transcripts = Sets.newHashSet();
+		final IndexReader reader = acquire();
+		try {
+			final TermEnum terms = reader.terms(new Term(TRANSCRIPT_FIELD, ""));
+			try {
+				do {
+					final Term term = terms.term();
+					if (term == null || !TRANSCRIPT_FIELD.equals(term.field())) {
+						break;
+					}
+					// the document frequency still counts deleted verses
+					final TermDocs docs = reader.termDocs(term);
+					try {
+						if (docs.next()) {
+							transcripts.add(Long.parseLong(term.text()));
+						}
+					} finally {
+						docs.close();
+					}
+				} while (terms.next());
+			} finally {
+				terms.close();
+			}
+		} finally {
+			reader.decRef();
+		}
+		return transcripts;
+	}
+
+	/**
+	 * Adds a verse of a transcript.
+	 *
+	 * @param transcript node id of the transcript
+	 * @param document   node id of the transcript's document
+	 */
+	public void add(long transcript, long document, String sigil, String source, String idnos, int verse, String text, long start, long end) throws IOException {
+		final Document doc = new Document();
+		doc.add(new Field(TEXT_FIELD, text, Field.Store.YES, Field.Index.ANALYZED));
+		doc.add(new Field(TRANSCRIPT_FIELD, Long.toString(transcript), Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS));
+		doc.add(new Field(DOCUMENT_FIELD, Long.toString(document), Field.Store.YES, Field.Index.NO));
+		doc.add(new Field(SIGIL_FIELD, sigil, Field.Store.YES, Field.Index.NO));
+		if (source != null) {
+			doc.add(new Field(SOURCE_FIELD, source, Field.Store.YES, Field.Index.NO));
+		}
+		if (idnos != null) {
+			doc.add(new Field(IDNOS_FIELD, idnos, Field.Store.YES, Field.Index.NO));
+		}
+		doc.add(new NumericField(VERSE_FIELD, Field.Store.YES, true).setIntValue(verse));
+		doc.add(new NumericField(START_FIELD, Field.Store.YES, false).setLongValue(start));
+		doc.add(new NumericField(END_FIELD, Field.Store.YES, false).setLongValue(end));
+		writer.addDocument(doc);
+		dirty = true;
+	}
+
+	/**
+	 * Removes all verses of a transcript.
+	 */
+	public void remove(long transcript) throws IOException {
+		writer.deleteDocuments(new Term(TRANSCRIPT_FIELD, Long.toString(transcript)));
+		dirty = true;
+	}
+
+	public void commit() throws IOException {
+		if (dirty) {
+			dirty = false;
+			writer.commit(commitData());
+			for (CommitListener listener : listeners) {
+				try {
+					listener.committed(this);
+				} catch (IOException e) {
+					LOG.warn("I/O error while notifying listener of search index commit", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Registers a listener, which is notified after changes have been committed, on the committing thread.
+	 */
+	public void addCommitListener(CommitListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Enumerates the tokens of all indexed verses with the number of verses containing them.
+	 */
+	public void terms(TermCallback callback) throws IOException {
+		final IndexReader reader = acquire();
+		try {
+			final TermEnum terms = reader.terms(new Term(TEXT_FIELD, ""));
+			try {
+				do {
+					final Term term = terms.term();
+					if (term == null || !TEXT_FIELD.equals(term.field())) {
+						break;
+					}
+					callback.term(term.text(), terms.docFreq());
+				} while (terms.next());
+			} finally {
+				terms.close();
+			}
+		} finally {
+			reader.decRef();
+		}
+	}
+
+	/**
+	 * Passes hits to a callback as they are loaded from the index, so that they can be written out without being
+	 * collected first.
+	 *
+	 * @param queryString a query in Lucene syntax; if it cannot be parsed, it is searched for literally
+	 * @param cursor      the {@link Result#getNext() cursor} of the previous page or <code>null</code> for the first
+	 * @param limit       maximum number of hits to return
+	 * @throws IllegalArgumentException if the cursor is malformed
+	 */
+	public Result search(String queryString, String cursor, int limit, HitCallback callback) throws IOException {
+		final ScoreDoc after = parseCursor(cursor);
+		final IndexReader reader = acquire();
+		try {
+			final IndexSearcher searcher = new IndexSearcher(reader);
+			final Query query = searcher.rewrite(parse(queryString));
+			final TopDocs topDocs = searcher.searchAfter(after, query, limit + 1);
+
+			final Set<String> terms = terms(query);
+			final int hits = Math.min(limit, topDocs.scoreDocs.length);
+			for (int i = 0; i < hits; i++) {
+				final ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+				callback.hit(new Hit(searcher.doc(scoreDoc.doc), scoreDoc.score, terms));
+			}
+			final String next = (topDocs.scoreDocs.length > limit ? toCursor(topDocs.scoreDocs[hits - 1]) : null);
+			return new Result(topDocs.totalHits, next);
+		} finally {
+			reader.decRef();
+		}
+	}
+
+	/**
+	 * Cursors encode the score and index-internal number of the last hit of a page. They are meant for paging through
+	 * the results of a query in quick succession; if segments of the index are merged in the meantime, pages might
+	 * overlap or skip hits.
+	 */
+	private static String toCursor(ScoreDoc scoreDoc) {
+		return Integer.toHexString(Float.floatToIntBits(scoreDoc.score)) + "-" + Integer.toHexString(scoreDoc.doc);
+	}
+
+	static ScoreDoc parseCursor(String cursor) {
+		if (cursor == null) {
+			return null;
+		}
+		final int separator = cursor.indexOf('-');
+		if (separator < 0) {
+			throw new IllegalArgumentException(cursor);
+		}
+		final float score = Float.intBitsToFloat((int) Long.parseLong(cursor.substring(0, separator), 16));
+		final int doc = Integer.parseInt(cursor.substring(separator + 1), 16);
+		return new ScoreDoc(doc, score);
+	}
+
+	private Map<String, String> commitData() {
+		return Collections.singletonMap(NORMALIZATION_DATA, normalizer.toString());
+	}
+
+	private Query parse(String queryString) {
+		final QueryParser parser = new VerseQueryParser();
+		try {
+			return parser.parse(queryString);
+		} catch (ParseException e) {
+			try {
+				return parser.parse(QueryParser.escape(queryString));
+			} catch (ParseException escapedException) {
+				return new BooleanQuery();
+			}
+		}
+	}
+
+	/**
+	 * Normalizes wildcard, prefix and fuzzy terms, which the query parser does not pass through the analyzer,
+	 * leaving the wildcards themselves intact.
+	 */
+	private class VerseQueryParser extends QueryParser {
+
+		private VerseQueryParser() {
+			super(Version.LUCENE_35, TEXT_FIELD, analyzer);
+			setDefaultOperator(AND_OPERATOR);
+			setMultiTermRewriteMethod(MultiTermQuery.SCORING_BOOLEAN_QUERY_REWRITE);
+			setLowercaseExpandedTerms(false);
+		}
+
+		@Override
+		protected Query getWildcardQuery(String field, String termStr) throws ParseException {
+			return super.getWildcardQuery(field, normalize(termStr));
+		}
+
+		@Override
+		protected Query getPrefixQuery(String field, String termStr) throws ParseException {
+			return super.getPrefixQuery(field, normalize(termStr));
+		}
+
+		@Override
+		protected Query getFuzzyQuery(String field, String termStr, float minSimilarity) throws ParseException {
+			return super.getFuzzyQuery(field, normalize(termStr), minSimilarity);
+		}
+
+		private String normalize(String term) {
+			final char[] normalized = term.toCharArray();
+			normalizer.normalize(normalized, 0, normalized.length, normalized, 0);
+			for (int i = 0; i < normalized.length; i++) {
+				final char c = term.charAt(i);
+				if (c == '*' || c == '?') {
+					normalized[i] = c;
+				}
+			}
+			return new String(normalized);
+		}
+	}
+
+	private static Set<String> terms(Query query) {
+		final Set<Term> terms = Sets.newHashSet();
+		try {
+			query.extractTerms(terms);
+		} catch (UnsupportedOperationException e) {
+			return Collections.emptySet();
+		}
+		final Set<String> texts = Sets.newHashSet();
+		for (Term term : terms) {
+			if (TEXT_FIELD.equals(term.field())) {
+				texts.add(term.text());
+			}
+		}
+		return texts;
+	}
+
+	/**
+	 * @return the current reader, reopened if the index has changed, with its reference count incremented
+	 */
+	private synchronized IndexReader acquire() throws IOException {
+		final IndexReader changed = IndexReader.openIfChanged(reader, writer, true);
+		if (changed != null) {
+			reader.decRef();
+			reader = changed;
+		}
+		reader.incRef();
+		return reader;
+	}
+
+	/**
+	 * Marks all tokens of a text, which match one of the given terms, with <code>&lt;em&gt;</code>, escaping the
+	 * rest for inclusion in HTML.
+	 */
+	private String highlight(String text, Set<String> terms) throws IOException {
+		final StringBuilder highlighted = new StringBuilder(text.length() + 16);
+		int last = 0;
+		final TokenStream tokens = analyzer.tokenStream(TEXT_FIELD, new StringReader(text));
+		try {
+			final CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+			final OffsetAttribute offset = tokens.addAttribute(OffsetAttribute.class);
+			tokens.reset();
+			while (tokens.incrementToken()) {
+				if (terms.contains(term.toString())) {
+					escape(text, last, offset.startOffset(), highlighted);
+					highlighted.append("<em>");
+					escape(text, offset.startOffset(), offset.endOffset(), highlighted);
+					highlighted.append("</em>");
+					last = offset.endOffset();
+				}
+			}
+			tokens.end();
+		} finally {
+			tokens.close();
+		}
+		escape(text, last, text.length(), highlighted);
+		return highlighted.toString();
+	}
+
+	private static void escape(String text, int start, int end, StringBuilder target) {
+		for (int i = start; i < end; i++) {
+			final char c = text.charAt(i);
+			switch (c) {
+				case '&':
+					target.append("&amp;");
+					break;
+				case '<':
+					target.append("&lt;");
+					break;
+				case '>':
+					target.append("&gt;");
+					break;
+				case '"':
+					target.append("&quot;");
+					break;
+				default:
+					target.append(c);
+			}
+		}
+	}
+
+	public interface CommitListener {
+		void committed(SearchIndex index) throws IOException;
+	}
+
+	public interface HitCallback {
+		void hit(Hit hit) throws IOException;
+	}
+
+	public interface TermCallback {
+		void term(String text, int frequency);
+	}
+
+	public static class Result {
+		private final int total;
+		private final String next;
+
+		private Result(int total, String next) {
+			this.total = total;
+			this.next = next;
+		}
+
+		public int getTotal() {
+			return total;
+		}
+
+		/**
+		 * @return the cursor for the next page of hits or <code>null</code> if this has been the last page
+		 */
+		public String getNext() {
+			return next;
+		}
+	}
+
+	public class Hit {
+		private final float score;
+		private final long document;
+		private final String sigil;
+		private final String source;
+		private final String idnos;
+		private final int verse;
+		private final String text;
+		private final String highlighted;
+		private final long start;
+		private final long end;
+
+		private Hit(Document doc, float score, Set<String> terms) throws IOException {
+			this.score = score;
+			this.document = Long.parseLong(doc.get(DOCUMENT_FIELD));
+			this.sigil = doc.get(SIGIL_FIELD);
+			this.source = doc.get(SOURCE_FIELD);
+			this.idnos = doc.get(IDNOS_FIELD);
+			this.verse = Integer.parseInt(doc.get(VERSE_FIELD));
+			this.text = doc.get(TEXT_FIELD);
+			this.highlighted = highlight(text, terms);
+			this.start = Long.parseLong(doc.get(START_FIELD));
+			this.end = Long.parseLong(doc.get(END_FIELD));
+		}
+
+		public float getScore() {
+			return score;
+		}
+
+		public long getDocument() {
+			return document;
+		}
+
+		public String getSigil() {
+			return sigil;
+		}
+
+		public String getSource() {
+			return source;
+		}
+
+		public String getIdnos() {
+			return idnos;
+		}
+
+		public int getVerse() {
+			return verse;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public String getHighlighted() {
+			return highlighted;
+		}
+
+		public long getStart() {
+			return start;
+		}
+
+		public long getEnd() {
+			return end;
+		}
+	}
+}
@@ -22,17 +22,11 @@ package de.faustedition.search;
 import com.google.common.base.Objects;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import de.faustedition.JsonRepresentationFactory;
 import de.faustedition.document.Document;
-import de.faustedition.transcript.TranscriptManager;
-import de.faustedition.genesis.lines.VerseManager;
-import eu.interedition.text.Anchor;
-import eu.interedition.text.Layer;
-import eu.interedition.text.neo4j.LayerNode;
-import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonGenerator;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.restlet.data.Form;
 import org.restlet.data.Reference;
 import org.restlet.data.Status;
 import org.restlet.representation.Representation;
@@ -58,6 +52,9 @@ public class SearchResource extends ServerResource {
 
 	private static final Logger LOG = LoggerFactory.getLogger(SearchResource.class);
 
+	private static final int DEFAULT_LIMIT = 15;
+	private static final int MAX_LIMIT = 100;
+
 	@Autowired
 	private JsonRepresentationFactory jsonFactory;
 
@@ -65,12 +62,11 @@ public class SearchResource extends ServerResource {
 	private GraphDatabaseService db;
 
 	@Autowired
-	private VerseManager verseManager;
-
-	@Autowired
-	private TranscriptManager transcriptManager;
+	private SearchIndex searchIndex;
 
 	private String searchTerm;
+	private String cursor;
+	private int limit;
 
 
 	@Override
@@ -80,72 +76,72 @@ public class SearchResource extends ServerResource {
 		if (searchTerm.isEmpty()) {
 			throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST);
 		}
+		try {
+			final Form query = getQuery();
+			cursor = query.getFirstValue("cursor");
+			SearchIndex.parseCursor(cursor);
+			limit = Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(query.getFirstValue("limit", Integer.toString(DEFAULT_LIMIT)))));
+		} catch (IllegalArgumentException e) {
+			throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
+		}
 	}
 
 	@Get("json")
-	public Representation results() {
+	public Representation results() throws IOException {
 		if (LOG.isTraceEnabled()) {
 			LOG.trace("Searching for '{}'", searchTerm);
 		}
-		final Map<String,Object> results = Maps.newHashMap();
-
-		final List<Map<String, Object>> documentDescs = Lists.newArrayList();
-		results.put("documents", documentDescs);
-
-		List<Document> documents = idnoQuery(searchTerm);
-		if (documents.isEmpty()) {
-			documents = idnoQuery(toQuery(searchTerm));
-		}
-		for (Document document : documents) {
-			final Map<String, Object> documentDesc = documentDescMap(document);
-			documentDescs.add(documentDesc);
-		}
-
-		List<LayerNode<JsonNode>> lines = fulltextQuery(searchTerm);
-		for (Layer<JsonNode> line : lines) {
-			Anchor<JsonNode> anchor = Iterables.getOnlyElement(line.getAnchors());
-			LayerNode<JsonNode> transcript = (LayerNode<JsonNode>) anchor.getText();
-
-			try {
-				String verseText = anchor.getText().read(anchor.getRange());
-				LOG.trace("Found verse: " + verseText);
-				Document document = ((Document) transcriptManager.materialUnitForTranscript(transcript));
 
-				final Map<String, Object> documentDesc = documentDescMap(document);
-				documentDesc.put("fulltextWindow", verseText);
-
-				documentDescs.add(documentDesc);
-
-			} catch (IOException e) {
-				LOG.error("Error reading line.");
+		List<Document> documents = Collections.emptyList();
+		if (cursor == null) {
+			documents = idnoQuery(searchTerm);
+			if (documents.isEmpty()) {
+				documents = Lists.newArrayList(Iterables.limit(Document.findByInfix(db, searchTerm), 10));
 			}
 		}
-		return jsonFactory.map(results, false);
-	}
-
-	private Map<String, Object> documentDescMap(Document document) {
-		final Map<String, Object> documentDesc = Maps.newHashMap();
-		documentDesc.put("id", document.node.getId());
-		documentDesc.put("name", document.toString());
-		documentDesc.put("idnos", document.allIdnos());
-		documentDesc.put("source", document.getSource().toString());
-		return documentDesc;
-	}
-
-	private List<LayerNode<JsonNode>> fulltextQuery(String term) {
-		return Lists.newArrayList(Iterables.limit(verseManager.fulltextQuery(term), 15));
+		final List<Document> documentHits = documents;
+
+		return jsonFactory.stream(new JsonRepresentationFactory.Generator() {
+			@Override
+			public void generate(final JsonGenerator jg) throws IOException {
+				jg.writeStartObject();
+				jg.writeArrayFieldStart("documents");
+				for (Document document : documentHits) {
+					jg.writeStartObject();
+					jg.writeNumberField("id", document.node.getId());
+					jg.writeStringField("name", document.toString());
+					jg.writeStringField("idnos", document.allIdnos());
+					jg.writeStringField("source", document.getSource().toString());
+					jg.writeEndObject();
+				}
+
+				final SearchIndex.Result verses = searchIndex.search(searchTerm, cursor, limit, new SearchIndex.HitCallback() {
+					@Override
+					public void hit(SearchIndex.Hit hit) throws IOException {
+						jg.writeStartObject();
+						jg.writeNumberField("id", hit.getDocument());
+						jg.writeStringField("name", hit.getSigil());
+						jg.writeStringField("idnos", hit.getIdnos());
+						jg.writeStringField("source", hit.getSource());
+						jg.writeNumberField("verse", hit.getVerse());
+						jg.writeNumberField("score", hit.getScore());
+						jg.writeStringField("fulltextWindow", hit.getText());
+						jg.writeStringField("highlighted", hit.getHighlighted());
+						jg.writeEndObject();
+					}
+				});
+				jg.writeEndArray();
+
+				jg.writeNumberField("total", verses.getTotal());
+				jg.writeStringField("next", verses.getNext());
+				jg.writeEndObject();
+			}
+		}, false);
 	}
 
 	private List<Document> idnoQuery(String term) {
 		return Lists.newArrayList(Iterables.limit(Document.find(db, term), 10));
 	}
 
-	public static String toQuery(String search) {
-		return new StringBuilder("*").append(search.replaceAll("\\*", "").toLowerCase()).append("*").toString();
-	}
-
-	private static SortedSet<String> toSortedValues(String[] metadata) {
-		return Sets.newTreeSet(Arrays.asList(Objects.firstNonNull(metadata, new String[0])));
-	}	
 	
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.search;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import de.faustedition.JsonRepresentationFactory;
+import org.restlet.data.Reference;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ResourceException;
+import org.restlet.resource.ServerResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Type-ahead completions of a prefix to document sigils and verse tokens.
+ */
+@Component
+@Scope(BeanDefinition.SCOPE_PROTOTYPE)
+public class SuggestResource extends ServerResource {
+
+	private static final int DEFAULT_LIMIT = 10;
+	private static final int MAX_LIMIT = 50;
+
+	@Autowired
+	private JsonRepresentationFactory jsonFactory;
+
+	@Autowired
+	private Suggester suggester;
+
+	private String prefix;
+	private int limit;
+
+	@Override
+	protected void doInit() throws ResourceException {
+		super.doInit();
+		prefix = Reference.decode(Objects.firstNonNull((String) getRequest().getAttributes().get("prefix"), "")).trim();
+		if (prefix.isEmpty()) {
+			throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST);
+		}
+		try {
+			limit = Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(getQuery().getFirstValue("limit", Integer.toString(DEFAULT_LIMIT)))));
+		} catch (NumberFormatException e) {
+			throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
+		}
+	}
+
+	@Get("json")
+	public Representation suggestions() {
+		final Map<String, Object> suggestions = Maps.newHashMap();
+		suggestions.put("documents", toList(suggester.documents(prefix, limit)));
+		suggestions.put("verses", toList(suggester.verses(prefix, limit)));
+		return jsonFactory.map(suggestions, false);
+	}
+
+	private static List<Map<String, Object>> toList(List<SuggestionTrie.Suggestion> suggestions) {
+		final List<Map<String, Object>> list = Lists.newArrayListWithCapacity(suggestions.size());
+		for (SuggestionTrie.Suggestion suggestion : suggestions) {
+			final Map<String, Object> entry = Maps.newHashMap();
+			entry.put("key", suggestion.getKey());
+			entry.put("value", suggestion.getValue());
+			entry.put("weight", suggestion.getWeight());
+			list.add(entry);
+		}
+		return list;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.search;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Sets;
+import de.faustedition.document.Document;
+import de.faustedition.document.MaterialUnit;
+import de.faustedition.graph.FaustGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StopWatch;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Completes prefixes of document sigils and call numbers as well as of verse tokens.
+ * <p/>
+ * Documents are added and removed as their import into the graph is committed. Verse tokens are taken from the
+ * {@link SearchIndex}, weighted by the number of verses containing them, and reloaded whenever changes to the index
+ * have been committed.
+ */
+@Component
+public class Suggester implements InitializingBean {
+	private static final Logger LOG = LoggerFactory.getLogger(Suggester.class);
+
+	@Autowired
+	private FaustGraph graph;
+
+	@Autowired
+	private SearchIndex searchIndex;
+
+	private final SuggestionTrie documents = new SuggestionTrie();
+	private volatile SuggestionTrie verses = new SuggestionTrie();
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		final StopWatch sw = new StopWatch();
+		sw.start();
+		for (MaterialUnit mu : graph.getMaterialUnits()) {
+			final MaterialUnit typed = MaterialUnit.forNode(mu.node);
+			if (typed instanceof Document) {
+				add((Document) typed);
+			}
+		}
+		loadVerses(searchIndex);
+		searchIndex.addCommitListener(new SearchIndex.CommitListener() {
+			@Override
+			public void committed(SearchIndex index) throws IOException {
+				loadVerses(index);
+			}
+		});
+		sw.stop();
+		LOG.debug("Loaded {} document and {} verse suggestions in {}s", new Object[] {
+				documents.size(), verses.size(), sw.getTotalTimeSeconds() });
+	}
+
+	/**
+	 * Adds the suggestions for a document once the current transaction has been committed.
+	 */
+	public void add(Document document) {
+		final String sigil = document.toString();
+		final Set<String> keys = keys(document);
+		graph.afterCommit(new Runnable() {
+			@Override
+			public void run() {
+				for (String key : keys) {
+					documents.add(key, sigil, 1);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Removes the suggestions for a document once the current transaction has been committed.
+	 */
+	public void remove(Document document) {
+		final Set<String> keys = keys(document);
+		graph.afterCommit(new Runnable() {
+			@Override
+			public void run() {
+				for (String key : keys) {
+					documents.remove(key, 1);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return completions of the given prefix to sigils, with the sigil of the matching document as their value
+	 */
+	public List<SuggestionTrie.Suggestion> documents(String prefix, int limit) {
+		return documents.complete(prefix.toLowerCase(), limit);
+	}
+
+	/**
+	 * @return completions of the given prefix to normalized verse tokens, most frequent tokens first
+	 */
+	public List<SuggestionTrie.Suggestion> verses(String prefix, int limit) {
+		return verses.complete(searchIndex.getNormalizer().normalize(prefix).trim(), limit);
+	}
+
+	/**
+	 * Builds a new trie of verse tokens and swaps it in once complete, so that completions are served from the
+	 * previous state in the meantime.
+	 */
+	private void loadVerses(SearchIndex index) throws IOException {
+		final SuggestionTrie loaded = new SuggestionTrie();
+		index.terms(new SearchIndex.TermCallback() {
+			@Override
+			public void term(String text, int frequency) {
+				loaded.add(text, text, frequency);
+			}
+		});
+		verses = loaded;
+	}
+
+	private static Set<String> keys(Document document) {
+		final Set<String> keys = Sets.newHashSet();
+		keys.add(document.toString().toLowerCase());
+		for (String idno : document.allIdnos().split(";")) {
+			idno = idno.trim();
+			if (!Strings.isNullOrEmpty(idno) && !"none".equals(idno)) {
+				keys.add(idno.toLowerCase());
+			}
+		}
+		return keys;
+	}
+}
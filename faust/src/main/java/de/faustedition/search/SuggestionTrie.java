@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.search;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A radix trie of weighted completions.
+ * <p/>
+ * Edges are labelled with character arrays and every node knows the maximum weight found in its subtree, so that
+ * the <code>k</code> heaviest completions of a prefix are found best-first, without visiting the rest of the
+ * subtree. Weights of a key accumulate over repeated additions and are decremented by removals; keys are dropped
+ * once their weight reaches zero.
+ */
+public class SuggestionTrie {
+
+	private static final char[] EMPTY = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private final Node root = new Node(EMPTY);
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private int size = 0;
+
+	public void add(String key, String value, int weight) {
+		lock.writeLock().lock();
+		try {
+			add(root, key, 0, value, weight);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(String key, int weight) {
+		lock.writeLock().lock();
+		try {
+			remove(root, key, 0, weight);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			root.children = NO_CHILDREN;
+			root.weight = 0;
+			root.value = null;
+			root.maxWeight = 0;
+			size = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the heaviest completions of the given prefix, heaviest first
+	 */
+	public List<Suggestion> complete(String prefix, int limit) {
+		lock.readLock().lock();
+		try {
+			Node node = root;
+			final StringBuilder path = new StringBuilder(prefix.length() + 16);
+			int matched = 0;
+			while (matched < prefix.length()) {
+				final Node child = node.child(prefix.charAt(matched));
+				if (child == null) {
+					return Collections.emptyList();
+				}
+				final int common = commonPrefix(child.label, prefix, matched);
+				if (matched + common < prefix.length() && common < child.label.length) {
+					return Collections.emptyList();
+				}
+				path.append(child.label);
+				matched += common;
+				node = child;
+			}
+
+			final List<Suggestion> suggestions = Lists.newArrayListWithCapacity(limit);
+			final PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+			queue.add(new Candidate(node, path.toString(), false));
+			while (!queue.isEmpty() && suggestions.size() < limit) {
+				final Candidate candidate = queue.poll();
+				final Node current = candidate.node;
+				if (candidate.terminal) {
+					suggestions.add(new Suggestion(candidate.key, current.value, current.weight));
+					continue;
+				}
+				if (current.weight > 0) {
+					queue.add(new Candidate(current, candidate.key, true));
+				}
+				for (Node child : current.children) {
+					queue.add(new Candidate(child, candidate.key + new String(child.label), false));
+				}
+			}
+			return suggestions;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void add(Node node, String key, int offset, String value, int weight) {
+		if (offset == key.length()) {
+			if (node.weight == 0) {
+				size++;
+			}
+			node.weight += weight;
+			node.value = value;
+			node.updateMaxWeight();
+			return;
+		}
+
+		final int index = node.childIndex(key.charAt(offset));
+		if (index < 0) {
+			final Node leaf = new Node(key.substring(offset).toCharArray());
+			leaf.weight = weight;
+			leaf.value = value;
+			leaf.maxWeight = weight;
+			node.insertChild(-(index + 1), leaf);
+			size++;
+		} else {
+			Node child = node.children[index];
+			final int common = commonPrefix(child.label, key, offset);
+			if (common < child.label.length) {
+				child = split(node, index, common);
+			}
+			add(child, key, offset + common, value, weight);
+		}
+		node.updateMaxWeight();
+	}
+
+	/**
+	 * @return <code>true</code> if the node can be pruned
+	 */
+	private boolean remove(Node node, String key, int offset, int weight) {
+		if (offset == key.length()) {
+			if (node.weight > 0) {
+				node.weight -= weight;
+				if (node.weight <= 0) {
+					node.weight = 0;
+					node.value = null;
+					size--;
+				}
+			}
+		} else {
+			final int index = node.childIndex(key.charAt(offset));
+			if (index < 0) {
+				return false;
+			}
+			final Node child = node.children[index];
+			final int common = commonPrefix(child.label, key, offset);
+			if (common < child.label.length) {
+				return false;
+			}
+			if (remove(child, key, offset + common, weight)) {
+				node.removeChild(index);
+			} else if (child.weight == 0 && child.children.length == 1) {
+				node.children[index] = merge(child);
+			}
+		}
+		node.updateMaxWeight();
+		return (node != root && node.weight == 0 && node.children.length == 0);
+	}
+
+	private static Node split(Node parent, int index, int at) {
+		final Node child = parent.children[index];
+		final Node intermediate = new Node(copy(child.label, 0, at));
+		child.label = copy(child.label, at, child.label.length);
+		intermediate.children = new Node[] { child };
+		intermediate.maxWeight = child.maxWeight;
+		parent.children[index] = intermediate;
+		return intermediate;
+	}
+
+	private static Node merge(Node node) {
+		final Node child = node.children[0];
+		final char[] label = new char[node.label.length + child.label.length];
+		System.arraycopy(node.label, 0, label, 0, node.label.length);
+		System.arraycopy(child.label, 0, label, node.label.length, child.label.length);
+		child.label = label;
+		return child;
+	}
+
+	private static int commonPrefix(char[] label, String key, int offset) {
+		final int max = Math.min(label.length, key.length() - offset);
+		int common = 0;
+		while (common < max && label[common] == key.charAt(offset + common)) {
+			common++;
+		}
+		return common;
+	}
+
+	private static char[] copy(char[] source, int from, int to) {
+		final char[] copy = new char[to - from];
+		System.arraycopy(source, from, copy, 0, copy.length);
+		return copy;
+	}
+
+	public static class Suggestion {
+		private final String key;
+		private final String value;
+		private final int weight;
+
+		private Suggestion(String key, String value, int weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		public int getWeight() {
+			return weight;
+		}
+
+		@Override
+		public String toString() {
+			return Objects.toStringHelper(this).add("key", key).add("value", value).add("weight", weight).toString();
+		}
+	}
+
+	private static class Node {
+		private char[] label;
+		private Node[] children = NO_CHILDREN;
+		private String value;
+		private int weight;
+		private int maxWeight;
+
+		private Node(char[] label) {
+			this.label = label;
+		}
+
+		/**
+		 * @return the index of the child starting with the given character or <code>-(insertion point + 1)</code>
+		 */
+		private int childIndex(char c) {
+			int low = 0;
+			int high = children.length - 1;
+			while (low <= high) {
+				final int mid = (low + high) >>> 1;
+				final char first = children[mid].label[0];
+				if (first < c) {
+					low = mid + 1;
+				} else if (first > c) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -(low + 1);
+		}
+
+		private Node child(char c) {
+			final int index = childIndex(c);
+			return (index < 0 ? null : children[index]);
+		}
+
+		private void insertChild(int index, Node child) {
+			final Node[] extended = new Node[children.length + 1];
+			System.arraycopy(children, 0, extended, 0, index);
+			extended[index] = child;
+			System.arraycopy(children, index, extended, index + 1, children.length - index);
+			children = extended;
+		}
+
+		private void removeChild(int index) {
+			final Node[] reduced = (children.length == 1 ? NO_CHILDREN : new Node[children.length - 1]);
+			System.arraycopy(children, 0, reduced, 0, index);
+			System.arraycopy(children, index + 1, reduced, index, children.length - index - 1);
+			children = reduced;
+		}
+
+		private void updateMaxWeight() {
+			int max = weight;
+			for (Node child : children) {
+				max = Math.max(max, child.maxWeight);
+			}
+			maxWeight = max;
+		}
+	}
+
+	private static class Candidate implements Comparable<Candidate> {
+		private final Node node;
+		private final String key;
+		private final boolean terminal;
+
+		private Candidate(Node node, String key, boolean terminal) {
+			this.node = node;
+			this.key = key;
+			this.terminal = terminal;
+		}
+
+		private int priority() {
+			return (terminal ? node.weight : node.maxWeight);
+		}
+
+		@Override
+		public int compareTo(Candidate o) {
+			final int diff = o.priority() - priority();
+			if (diff != 0) {
+				return diff;
+			}
+			// prefer results over subtrees of equal weight, then shorter keys
+			if (terminal != o.terminal) {
+				return (terminal ? -1 : 1);
+			}
+			return key.length() - o.key.length();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.search;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharTokenizer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.util.Version;
+
+import java.io.Reader;
+
+/**
+ * Splits verse text at non-alphanumeric characters and {@link Normalizer normalizes} the resulting tokens.
+ * <p/>
+ * Normalization works character by character, so token offsets refer to the original text.
+ */
+public final class VerseAnalyzer extends Analyzer {
+
+	private final Normalizer normalizer;
+
+	public VerseAnalyzer(Normalizer normalizer) {
+		this.normalizer = normalizer;
+	}
+
+	@Override
+	public TokenStream tokenStream(String fieldName, Reader reader) {
+		return new CharTokenizer(Version.LUCENE_35, reader) {
+			@Override
+			protected boolean isTokenChar(int c) {
+				return Character.isLetterOrDigit(c);
+			}
+
+			@Override
+			protected int normalize(int c) {
+				return normalizer.normalize(c);
+			}
+		};
+	}
+}
@@ -19,6 +19,8 @@
 
 package de.faustedition.transcript;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import de.faustedition.FaustURI;
 import de.faustedition.Runtime;
@@ -27,11 +29,12 @@ import de.faustedition.document.MaterialUnit;
 import de.faustedition.genesis.lines.VerseManager;
 import de.faustedition.graph.FaustGraph;
 import de.faustedition.transcript.input.TranscriptInvalidException;
-import eu.interedition.text.Layer;
 import eu.interedition.text.TextRepository;
-import org.codehaus.jackson.JsonNode;
+import org.neo4j.graphdb.Direction;
 import org.slf4j.Logger;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
@@ -41,14 +44,31 @@ import org.springframework.util.StopWatch;
 import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
+ * Imports all transcripts referenced by material units in the graph, which have not been imported yet.
+ * <p/>
+ * Import is pipelined: a pool of workers reads and transforms the XML transcripts concurrently
+ * ({@link TranscriptManager#prepare(MaterialUnit)}), while the calling thread only copies the results to the text
+ * repository ({@link TranscriptManager#store(MaterialUnit, TranscriptManager.TransformedTranscript)}) in batches,
+ * one transaction per batch. If a transcript of a batch cannot be stored, the batch is rolled back and its
+ * transcripts are stored one transaction each, so that no transcript is committed partially.
+ *
  * @author <a href="http://gregor.middell.net/" title="Homepage">Gregor Middell</a>
  */
 @Service
-public class TranscriptBatchReader extends Runtime implements Runnable {
+public class TranscriptBatchReader extends Runtime implements Runnable, InitializingBean {
 
 	@Autowired
 	private FaustGraph graph;
@@ -68,63 +88,228 @@ public class TranscriptBatchReader extends Runtime implements Runnable {
 	@Autowired
 	private VerseManager verseManager;
 
+	@Autowired
+	private Environment environment;
+
+	private int parallelism;
+	private int batchSize;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		this.parallelism = Math.max(1, environment.getProperty("transcript.import.threads", Integer.class,
+				java.lang.Runtime.getRuntime().availableProcessors()));
+		this.batchSize = Math.max(1, environment.getProperty("transcript.import.batch-size", Integer.class, 50));
+	}
 
 	@Override
 	public void run() {
-		logger.debug("Reading transcripts in the background");
+		read(graph.getMaterialUnits());
+	}
+
+	/**
+	 * Imports the pending transcripts of the given material units and their contents.
+	 */
+	public void read(Iterable<MaterialUnit> materialUnits) {
+		logger.debug("Reading transcripts in the background with {} worker(s)", parallelism);
 
 		StopWatch stopWatch = new StopWatch();
 		stopWatch.start();
+		final long start = System.currentTimeMillis();
+
+		final List<MaterialUnit> pending = pending(materialUnits);
+		final int total = pending.size();
+
+		final ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+		try {
+			final CompletionService<PreparedTranscript> prepared = new ExecutorCompletionService<PreparedTranscript>(workers);
+
+			// bound the number of transformed transcripts held in memory while waiting for the writer
+			final int maxInFlight = parallelism + batchSize;
+			final Iterator<MaterialUnit> toPrepare = pending.iterator();
+			int inFlight = 0;
+			while (inFlight < maxInFlight && toPrepare.hasNext()) {
+				prepared.submit(new TranscriptPreparation(toPrepare.next()));
+				inFlight++;
+			}
+
+			final List<PreparedTranscript> batch = Lists.newArrayListWithCapacity(batchSize);
+			int imported = 0;
+			while (inFlight > 0) {
+				batch.add(prepared.take().get());
+				inFlight--;
+				if (toPrepare.hasNext()) {
+					prepared.submit(new TranscriptPreparation(toPrepare.next()));
+					inFlight++;
+				}
+
+				if (batch.size() == batchSize || inFlight == 0) {
+					write(batch);
+					imported += batch.size();
+					batch.clear();
+
+					if (logger.isInfoEnabled()) {
+						final double seconds = Math.max(0.001, (System.currentTimeMillis() - start) / 1000.0);
+						logger.info(String.format("Read %d of %d transcripts (%.1f transcripts/s)", imported, total, imported / seconds));
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted while reading transcripts", e);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.error("Error while reading transcripts", e.getCause());
+		} finally {
+			workers.shutdownNow();
+		}
+		verseManager.rebuildCoverage();
+		stopWatch.stop();
+
+		logger.debug("Read {} transcripts in the background: {} s", total, stopWatch.getTotalTimeSeconds());
 
-		final Set<FaustURI> imported = Sets.newHashSet();
+	}
 
-		final Deque<MaterialUnit> queue = new ArrayDeque<MaterialUnit>(graph.getMaterialUnits());
+	/**
+	 * @return the given material units and their contents, which reference a transcript not imported yet
+	 */
+	protected List<MaterialUnit> pending(Iterable<MaterialUnit> materialUnits) {
+		final List<MaterialUnit> pending = Lists.newArrayList();
+		final Set<MaterialUnit> visited = Sets.newHashSet();
+		final Deque<MaterialUnit> queue = new ArrayDeque<MaterialUnit>();
+		Iterables.addAll(queue, materialUnits);
 		while (!queue.isEmpty()) {
 			final MaterialUnit mu = queue.pop();
-			final String source = mu.getMetadataValue(DocumentDescriptorHandler.internalKeyDocumentSource);
+			if (!visited.add(mu)) {
+				continue;
+			}
+			for (MaterialUnit child : mu) {
+				queue.add(child);
+			}
 			final FaustURI transcriptSource = mu.getTranscriptSource();
-			for (MaterialUnit child: mu) {
-				if (!imported.contains(transcriptSource)) {
-					imported.add(transcriptSource);
-					queue.add(child);
-				}
-			//queue.addAll(mu);
+			if (transcriptSource == null || DocumentDescriptorHandler.noneURI.equals(transcriptSource)) {
+				continue;
 			}
-			if (mu.getTranscriptSource() == null || DocumentDescriptorHandler.noneURI.equals(transcriptSource)) {
+			if (mu.node.hasRelationship(MaterialUnit.TRANSCRIPT_RT, Direction.INCOMING)) {
 				continue;
 			}
-			transactionTemplate.execute(new TransactionCallbackWithoutResult() {
-				@Override
-				protected void doInTransactionWithoutResult(TransactionStatus status) {
-					try {
-						logger.debug("Reading transcript {} referenced in {}", transcriptSource, source);
-						Layer<JsonNode> transcript = transcriptManager.find(mu);
+			pending.add(mu);
+		}
+		return pending;
+	}
 
-					} catch (IOException e) {
-						if (logger.isWarnEnabled()) {
-							logger.warn("I/O error while reading transcript from " + mu + ": "
-                                    + source, e);
-						}
-					} catch (XMLStreamException e) {
-						if (logger.isWarnEnabled()) {
-							logger.warn("XML error while reading transcript from " + mu + ": "
-                                    + source, e);
-						}
-					} catch (TranscriptInvalidException e) {
-						if (logger.isWarnEnabled()) {
-							logger.warn("Validation error while reading transcript from " + mu + ": "
-                                    + source, e);
+	private void write(List<PreparedTranscript> batch) {
+		final List<PreparedTranscript> transformed = Lists.newArrayListWithCapacity(batch.size());
+		for (PreparedTranscript transcript : batch) {
+			if (transcript.error != null) {
+				logError(transcript.materialUnit, transcript.error);
+			} else if (transcript.transcript != null) {
+				transformed.add(transcript);
+			}
+		}
+		if (transformed.isEmpty()) {
+			return;
+		}
+
+		try {
+			store(transformed);
+		} catch (RuntimeException e) {
+			if (transformed.size() == 1) {
+				logError(transformed.get(0).materialUnit, StoreException.unwrap(e));
+				return;
+			}
+			logger.debug("Rolled back batch of transcripts; storing them one by one", e);
+			for (PreparedTranscript transcript : transformed) {
+				try {
+					store(Collections.singletonList(transcript));
+				} catch (RuntimeException single) {
+					logError(transcript.materialUnit, StoreException.unwrap(single));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores the given transcripts in one transaction, which is rolled back if any of them cannot be stored.
+	 */
+	private void store(final List<PreparedTranscript> transcripts) {
+		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				for (PreparedTranscript transcript : transcripts) {
+					final MaterialUnit mu = transcript.materialUnit;
+					try {
+						if (logger.isDebugEnabled()) {
+							logger.debug("Reading transcript {} referenced in {}", mu.getTranscriptSource(),
+									mu.getMetadataValue(DocumentDescriptorHandler.internalKeyDocumentSource));
 						}
+						transcriptManager.store(mu, transcript.transcript);
+					} catch (Exception e) {
+						throw new StoreException(e);
 					}
 				}
-			});
+			}
+		});
+	}
+
+	private void logError(MaterialUnit mu, Throwable e) {
+		if (!logger.isWarnEnabled()) {
+			return;
 		}
-		stopWatch.stop();
+		final String source = mu.getMetadataValue(DocumentDescriptorHandler.internalKeyDocumentSource);
+		if (e instanceof IOException) {
+			logger.warn("I/O error while reading transcript from " + mu + ": " + source, e);
+		} else if (e instanceof XMLStreamException) {
+			logger.warn("XML error while reading transcript from " + mu + ": " + source, e);
+		} else if (e instanceof TranscriptInvalidException) {
+			logger.warn("Validation error while reading transcript from " + mu + ": " + source, e);
+		} else {
+			logger.warn("Error while reading transcript from " + mu + ": " + source, e);
+		}
+	}
+
+	private class TranscriptPreparation implements Callable<PreparedTranscript> {
+		private final MaterialUnit materialUnit;
+
+		private TranscriptPreparation(MaterialUnit materialUnit) {
+			this.materialUnit = materialUnit;
+		}
+
+		@Override
+		public PreparedTranscript call() {
+			try {
+				return new PreparedTranscript(materialUnit, transcriptManager.prepare(materialUnit), null);
+			} catch (Exception e) {
+				return new PreparedTranscript(materialUnit, null, e);
+			}
+		}
+	}
+
+	/**
+	 * Rolls back the transaction of a batch if one of its transcripts cannot be stored.
+	 */
+	private static class StoreException extends RuntimeException {
 
-		logger.debug("Read transcripts in the background: {} s", stopWatch.getTotalTimeSeconds());
+		private static final long serialVersionUID = 2745103718562401329L;
+
+		private StoreException(Exception cause) {
+			super(cause);
+		}
 
+		private static Throwable unwrap(RuntimeException e) {
+			return (e instanceof StoreException ? e.getCause() : e);
+		}
 	}
 
+	private static class PreparedTranscript {
+		private final MaterialUnit materialUnit;
+		private final TranscriptManager.TransformedTranscript transcript;
+		private final Exception error;
+
+		private PreparedTranscript(MaterialUnit materialUnit, TranscriptManager.TransformedTranscript transcript, Exception error) {
+			this.materialUnit = materialUnit;
+			this.transcript = transcript;
+			this.error = error;
+		}
+	}
 
 	public static void main(String... args) throws Exception {
 		main(TranscriptBatchReader.class, args);
@@ -19,6 +19,10 @@
 
 package de.faustedition.transcript;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import de.faustedition.FaustURI;
 import de.faustedition.document.Document;
 import de.faustedition.document.MaterialUnit;
@@ -33,9 +37,11 @@ import eu.interedition.text.Anchor;
 import eu.interedition.text.Layer;
 import eu.interedition.text.Name;
 import eu.interedition.text.TextConstants;
+import eu.interedition.text.TextRepository;
 import eu.interedition.text.neo4j.LayerNode;
 import eu.interedition.text.neo4j.Neo4jTextRepository;
 import eu.interedition.text.simple.SimpleLayer;
+import eu.interedition.text.simple.SimpleTextRepository;
 import eu.interedition.text.xml.XMLTransformer;
 import eu.interedition.text.xml.XMLTransformerConfigurationBase;
 import eu.interedition.text.xml.XMLTransformerModule;
@@ -48,6 +54,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Component;
+import org.xml.sax.InputSource;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerException;
@@ -57,11 +64,14 @@ import javax.xml.transform.stream.StreamResult;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static eu.interedition.text.Query.text;
 import static org.neo4j.graphdb.Direction.INCOMING;
 import static org.neo4j.graphdb.Direction.OUTGOING;
 
@@ -102,6 +112,19 @@ public class TranscriptManager {
 	}
 
 	private LayerNode<JsonNode> read(MaterialUnit materialUnit) throws IOException, XMLStreamException {
+		final TransformedTranscript transcript = prepare(materialUnit);
+		return (transcript == null ? null : store(materialUnit, transcript));
+	}
+
+	/**
+	 * Reads the XML transcript of a material unit and transforms it into an in-memory text repository.
+	 * <p/>
+	 * Does not write to the graph and can therefore be called concurrently, e.g. by
+	 * the worker stage of the {@link TranscriptBatchReader}.
+	 *
+	 * @return the transformed transcript or <code>null</code> if the material unit has no transcript
+	 */
+	public TransformedTranscript prepare(MaterialUnit materialUnit) throws IOException, XMLStreamException {
 		final FaustURI source = materialUnit.getTranscriptSource();
 		if (source == null) {
 			return null;
@@ -111,50 +134,119 @@ public class TranscriptManager {
 			LOG.debug("Transforming XML transcript from {}", source);
 		}
 
-
+		final InputSource xmlSource = xml.getInputSource(source);
+		final StringWriter xmlString = new StringWriter();
 		try {
-			final StringWriter xmlString = new StringWriter();
 			// TODO Is this really necessary? It seems as if only the XML-'header' is modified.
 			TransformerFactory.newInstance().newTransformer().transform(
-					new SAXSource(xml.getInputSource(source)),
+					new SAXSource(xmlSource),
 					new StreamResult(xmlString)
 			);
+		} catch (TransformerException e) {
+			throw new TranscriptInvalidException(e);
+		} finally {
+			xmlSource.getByteStream().close();
+		}
 
-			final Layer<JsonNode> sourceLayer = textRepository.add(TextConstants.XML_TARGET_NAME, new StringReader(xmlString.toString()), null, Collections.<Anchor<JsonNode>>emptySet());
+		try {
+			final TextRepository<JsonNode> memory = new SimpleTextRepository<JsonNode>();
+			final Layer<JsonNode> sourceLayer = memory.add(TextConstants.XML_TARGET_NAME, new StringReader(xmlString.toString()), null, Collections.<Anchor<JsonNode>>emptySet());
 
-			final XMLTransformerConfigurationBase<JsonNode> conf = configure(new XMLTransformerConfigurationBase<JsonNode>(textRepository) {
+			final FacsimilePathXMLTransformerModule facsimilePath = new FacsimilePathXMLTransformerModule();
+			final XMLTransformerConfigurationBase<JsonNode> conf = configure(new XMLTransformerConfigurationBase<JsonNode>(memory) {
 				@Override
 				protected Layer<JsonNode> translate(Name name, Map<Name, String> attributes, Set<Anchor<JsonNode>> anchors) {
 					return new SimpleLayer<JsonNode>(name, "", objectMapper.valueToTree(attributes), anchors, null);
 				}
-			}, materialUnit);
-
-			final LayerNode<JsonNode> transcriptLayer = (LayerNode<JsonNode>) new XMLTransformer<JsonNode>(conf).transform(sourceLayer);
-			transcriptLayer.node.createRelationshipTo(materialUnit.node, MaterialUnit.TRANSCRIPT_RT);
+			}, materialUnit.getType(), facsimilePath);
 
-			verseManager.register(faustGraph, textRepository, materialUnit, transcriptLayer);
-
-			return transcriptLayer;
+			final Layer<JsonNode> transcriptLayer = new XMLTransformer<JsonNode>(conf).transform(sourceLayer);
+			return new TransformedTranscript(sourceLayer, transcriptLayer, facsimilePath.getFacsimile());
 		} catch (IllegalArgumentException e) {
 			throw new TranscriptInvalidException(e);
-		} catch (TransformerException e) {
-			throw new TranscriptInvalidException(e);
 		}
 	}
 
-	protected static XMLTransformerConfigurationBase<JsonNode> configure(XMLTransformerConfigurationBase<JsonNode> conf, MaterialUnit materialUnit) {
+	/**
+	 * Copies a transcript previously {@link #prepare(MaterialUnit) transformed} with all of its layers to the text
+	 * repository and registers its verses. Has to be called within a transaction.
+	 */
+	public LayerNode<JsonNode> store(MaterialUnit materialUnit, TransformedTranscript transcript) throws IOException, XMLStreamException {
+		final Map<Layer<JsonNode>, Layer<JsonNode>> copies = Maps.newIdentityHashMap();
+		final Deque<Layer<JsonNode>> queue = new ArrayDeque<Layer<JsonNode>>();
+		queue.add(transcript.source);
+		while (!queue.isEmpty()) {
+			final Layer<JsonNode> layer = queue.remove();
+			if (copies.containsKey(layer)) {
+				continue;
+			}
+			final Set<Anchor<JsonNode>> anchors = Sets.newHashSet();
+			boolean anchored = true;
+			for (Anchor<JsonNode> anchor : layer.getAnchors()) {
+				final Layer<JsonNode> text = copies.get(anchor.getText());
+				if (text == null) {
+					anchored = false;
+					break;
+				}
+				anchors.add(new Anchor<JsonNode>(text, anchor.getRange()));
+			}
+			if (!anchored) {
+				// revisited as a port of the texts it is anchored to, once they have all been copied
+				continue;
+			}
+			copies.put(layer, textRepository.add(layer.getName(), new StringReader(layer.read()), layer.data(), anchors));
+			Iterables.addAll(queue, ((SimpleLayer<JsonNode>) layer).getPorts());
+		}
+
+		final LayerNode<JsonNode> transcriptLayer = (LayerNode<JsonNode>) copies.get(transcript.transcript);
+		transcriptLayer.node.createRelationshipTo(materialUnit.node, MaterialUnit.TRANSCRIPT_RT);
+		if (transcript.facsimile != null) {
+			materialUnit.setFacsimile(transcript.facsimile);
+		}
+
+		verseManager.register(faustGraph, textRepository, materialUnit, transcriptLayer);
+
+		return transcriptLayer;
+	}
+
+	/**
+	 * Removes the transcript of a material unit, its annotations and verse intervals from the graph, so that it
+	 * will be read anew on next access. Has to be called within a transaction.
+	 *
+	 * @return <code>true</code> if the material unit had a transcript
+	 */
+	public boolean remove(MaterialUnit materialUnit) {
+		final Relationship rel = materialUnit.node.getSingleRelationship(MaterialUnit.TRANSCRIPT_RT, INCOMING);
+		if (rel == null) {
+			return false;
+		}
+		final LayerNode<JsonNode> transcript = new LayerNode<JsonNode>(textRepository, rel.getStartNode());
+		verseManager.unregister(faustGraph, textRepository, transcript);
+		rel.delete();
+
+		final List<Layer<JsonNode>> layers = Lists.newArrayList(textRepository.query(text(transcript)));
+		layers.add(transcript);
+		textRepository.delete(layers);
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Removed transcript of {} ({} layers)", materialUnit, layers.size());
+		}
+		return true;
+	}
+
+	protected static XMLTransformerConfigurationBase<JsonNode> configure(XMLTransformerConfigurationBase<JsonNode> conf, MaterialUnit.Type type, FacsimilePathXMLTransformerModule facsimilePath) {
 
 		TranscriptTransformerConfiguration.configure(conf);
 
 		List<XMLTransformerModule<JsonNode>> modules = conf.getModules();
-		switch (materialUnit.getType()) {
+		switch (type) {
 			case ARCHIVALDOCUMENT:
 			case DOCUMENT:
 				modules.add(new StageXMLTransformerModule(conf));
 				break;
 			case PAGE:
 				modules.add(new HandsXMLTransformerModule(conf));
-				modules.add(new FacsimilePathXMLTransformerModule(materialUnit));
+				modules.add(facsimilePath);
 				break;
 			default: break;
 		}
@@ -164,4 +256,19 @@ public class TranscriptManager {
 		return conf;
 	}
 
+	/**
+	 * A transcript transformed into an in-memory text repository, ready to be {@link #store(MaterialUnit,
+	 * TransformedTranscript) stored}.
+	 */
+	public static class TransformedTranscript {
+		private final Layer<JsonNode> source;
+		private final Layer<JsonNode> transcript;
+		private final FaustURI facsimile;
+
+		private TransformedTranscript(Layer<JsonNode> source, Layer<JsonNode> transcript, FaustURI facsimile) {
+			this.source = source;
+			this.transcript = transcript;
+			this.facsimile = facsimile;
+		}
+	}
 }
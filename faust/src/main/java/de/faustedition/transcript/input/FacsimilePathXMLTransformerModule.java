@@ -20,25 +20,25 @@
 package de.faustedition.transcript.input;
 
 import de.faustedition.FaustURI;
-import de.faustedition.document.MaterialUnit;
 import eu.interedition.text.Name;
 import eu.interedition.text.xml.XMLEntity;
 import eu.interedition.text.xml.XMLTransformer;
 import eu.interedition.text.xml.module.XMLTransformerModuleAdapter;
 import org.codehaus.jackson.JsonNode;
 
+/**
+ * Records the URI of the first facsimile referenced in a transcript.
+ * <p/>
+ * Does not write to the graph, so that transcripts can be transformed concurrently; the URI is
+ * {@link de.faustedition.document.MaterialUnit#setFacsimile(FaustURI) set} when the transcript is stored.
+ */
 public class FacsimilePathXMLTransformerModule extends XMLTransformerModuleAdapter<JsonNode> {
 
-	private boolean read = false;
-	private final MaterialUnit materialUnit;
-
-	public FacsimilePathXMLTransformerModule(MaterialUnit materialUnit) {
-		this.materialUnit = materialUnit;
-	}
+	private FaustURI facsimile;
 
 	@Override
 	public void end(XMLTransformer transformer, XMLEntity entity) {
-		if (read || !entity.getName().getLocalName().equals("graphic") || entity.getAttributes().containsKey(new Name("mimeType"))) {
+		if (facsimile != null || !entity.getName().getLocalName().equals("graphic") || entity.getAttributes().containsKey(new Name("mimeType"))) {
 			return;
 		}
 		final String url = entity.getAttributes().get(new Name("url"));
@@ -46,10 +46,16 @@ public class FacsimilePathXMLTransformerModule extends XMLTransformerModuleAdapt
 			return;
 		}
 		try {
-			materialUnit.setFacsimile(FaustURI.parse(url));
-			read = true;
+			facsimile = FaustURI.parse(url);
 		} catch (IllegalArgumentException e){
 			throw new TranscriptInvalidException("Invalid facsimile URI in transcript!");
 		}
 	}
+
+	/**
+	 * @return the facsimile referenced in the transcript or <code>null</code> if there is none
+	 */
+	public FaustURI getFacsimile() {
+		return facsimile;
+	}
 }
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.xml;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import de.faustedition.FaustAuthority;
+import de.faustedition.FaustURI;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * Records path, modification time, size and content hash of every file in the {@link XMLStorage}, so changes to
+ * the store can be detected between imports.
+ * <p/>
+ * Content hashes are only recomputed for files whose modification time or size differ from a previous manifest;
+ * files which have merely been touched are not reported as changed.
+ */
+public class XMLManifest {
+	private static final String HASH_ALGORITHM = "SHA-1";
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final SortedMap<String, Entry> entries = Maps.newTreeMap();
+
+	/**
+	 * @return the file the manifest of the given graph database is kept in, next to its directory
+	 */
+	public static File location(File graphHome) throws IOException {
+		final File home = graphHome.getCanonicalFile();
+		return new File(home.getParentFile(), home.getName() + ".manifest");
+	}
+
+	public static XMLManifest scan(XMLStorage storage, XMLManifest previous) throws IOException {
+		final XMLManifest manifest = new XMLManifest();
+		for (FaustURI uri : storage) {
+			manifest.entries.put(uri.getPath(), scan(storage, uri, previous));
+		}
+		return manifest;
+	}
+
+	/**
+	 * Copies a previous manifest, rescanning only the given resources; those which are not in the storage anymore
+	 * are left out.
+	 */
+	public static XMLManifest update(XMLStorage storage, XMLManifest previous, Collection<FaustURI> uris) throws IOException {
+		final XMLManifest manifest = new XMLManifest();
+		manifest.entries.putAll(previous.entries);
+		for (FaustURI uri : uris) {
+			if (storage.isResource(uri)) {
+				manifest.entries.put(uri.getPath(), scan(storage, uri, previous));
+			} else {
+				manifest.entries.remove(uri.getPath());
+			}
+		}
+		return manifest;
+	}
+
+	private static Entry scan(XMLStorage storage, FaustURI uri, XMLManifest previous) throws IOException {
+		final File file = storage.toFile(uri);
+		final long lastModified = file.lastModified();
+		final long length = file.length();
+
+		final Entry previousEntry = (previous == null ? null : previous.entries.get(uri.getPath()));
+		if (previousEntry != null && previousEntry.lastModified == lastModified && previousEntry.length == length) {
+			return previousEntry;
+		}
+		return new Entry(lastModified, length, hash(file));
+	}
+
+	/**
+	 * @return the manifest stored in the given file or <code>null</code> if there is none
+	 */
+	public static XMLManifest load(File file) throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+		final XMLManifest manifest = new XMLManifest();
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charsets.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() == 0) {
+					continue;
+				}
+				final String[] fields = line.split("\t");
+				if (fields.length != 4) {
+					throw new IOException("Invalid manifest entry in " + file + ": " + line);
+				}
+				try {
+					manifest.entries.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid manifest entry in " + file + ": " + line, e);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return manifest;
+	}
+
+	/**
+	 * Writes the manifest to a temporary file first and renames it afterwards, so an interrupted write never
+	 * leaves a truncated manifest behind.
+	 */
+	public void save(File file) throws IOException {
+		final File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+		final PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tempFile), Charsets.UTF_8));
+		try {
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				final Entry e = entry.getValue();
+				writer.print(entry.getKey());
+				writer.print('\t');
+				writer.print(e.lastModified);
+				writer.print('\t');
+				writer.print(e.length);
+				writer.print('\t');
+				writer.print(e.hash);
+				writer.print('\n');
+			}
+		} finally {
+			writer.close();
+		}
+		if (writer.checkError()) {
+			throw new IOException("Error while writing manifest " + tempFile);
+		}
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Cannot replace manifest " + file);
+		}
+		if (!tempFile.renameTo(file)) {
+			throw new IOException("Cannot rename " + tempFile + " to " + file);
+		}
+	}
+
+	public Diff diff(XMLManifest previous) {
+		final Diff diff = new Diff();
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			final Entry previousEntry = (previous == null ? null : previous.entries.get(entry.getKey()));
+			if (previousEntry == null) {
+				diff.added.add(toUri(entry.getKey()));
+			} else if (!previousEntry.hash.equals(entry.getValue().hash)) {
+				diff.changed.add(toUri(entry.getKey()));
+			}
+		}
+		if (previous != null) {
+			for (String path : previous.entries.keySet()) {
+				if (!entries.containsKey(path)) {
+					diff.deleted.add(toUri(path));
+				}
+			}
+		}
+		return diff;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	void put(String path, Entry entry) {
+		entries.put(path, entry);
+	}
+
+	private static FaustURI toUri(String path) {
+		return new FaustURI(FaustAuthority.XML, path);
+	}
+
+	private static String hash(File file) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(HASH_ALGORITHM + " not supported", e);
+		}
+
+		final InputStream in = new FileInputStream(file);
+		try {
+			final byte[] buf = new byte[8192];
+			int read;
+			while ((read = in.read(buf)) >= 0) {
+				digest.update(buf, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+
+		final byte[] hash = digest.digest();
+		final char[] hex = new char[hash.length * 2];
+		for (int bc = 0; bc < hash.length; bc++) {
+			hex[bc * 2] = HEX_DIGITS[(hash[bc] >> 4) & 0xf];
+			hex[bc * 2 + 1] = HEX_DIGITS[hash[bc] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	static class Entry {
+		private final long lastModified;
+		private final long length;
+		private final String hash;
+
+		Entry(long lastModified, long length, String hash) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.hash = hash;
+		}
+	}
+
+	public static class Diff {
+		private final SortedSet<FaustURI> added = Sets.newTreeSet();
+		private final SortedSet<FaustURI> changed = Sets.newTreeSet();
+		private final SortedSet<FaustURI> deleted = Sets.newTreeSet();
+
+		public SortedSet<FaustURI> getAdded() {
+			return added;
+		}
+
+		public SortedSet<FaustURI> getChanged() {
+			return changed;
+		}
+
+		public SortedSet<FaustURI> getDeleted() {
+			return deleted;
+		}
+
+		public boolean isEmpty() {
+			return added.isEmpty() && changed.isEmpty() && deleted.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return Objects.toStringHelper(this)
+					.add("added", added.size())
+					.add("changed", changed.size())
+					.add("deleted", deleted.size())
+					.toString();
+		}
+	}
+}
@@ -19,10 +19,16 @@
 
 package de.faustedition.xml;
 
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 import de.faustedition.FaustAuthority;
 import de.faustedition.FaustURI;
-import org.neo4j.helpers.collection.IterableWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
@@ -34,55 +40,192 @@ import javax.xml.transform.TransformerException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.NavigableSet;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 
+/**
+ * Provides access to the XML files below <code>xml.home</code>.
+ * <p/>
+ * The directory tree is indexed in memory on startup, so that iteration and lookups of resources do not touch the
+ * file system. The index is kept up to date by the {@link XMLStorageWatcher} if the storage is watched
+ * (<code>xml.watch</code>) and by {@link #put(FaustURI, Document)}; otherwise it reflects the state of the
+ * storage at startup until {@link #reindex()} is called.
+ */
 @Component
-public class XMLStorage implements Iterable<FaustURI>, InitializingBean {
+public class XMLStorage implements Iterable<FaustURI>, InitializingBean, DisposableBean {
+	private static final Logger LOG = LoggerFactory.getLogger(XMLStorage.class);
+
 	private final Pattern xmlFilenamePattern = Pattern.compile("[^\\.]+\\.[xX][mM][lL]$");
 
 	@Autowired
 	private Environment environment;
 
 	private File storageDirectory;
-	private String storagePath;
+	private Path storageRoot;
+
+	/**
+	 * Paths of all resources relative to the storage directory, e.g. <code>/document/faust.xml</code>.
+	 */
+	private volatile NavigableSet<String> resources = new ConcurrentSkipListSet<String>();
+
+	/**
+	 * Paths of all directories relative to the storage directory, with a trailing slash, e.g. <code>/document/</code>.
+	 */
+	private volatile NavigableSet<String> directories = new ConcurrentSkipListSet<String>();
+
+	private final List<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+	private XMLStorageWatcher watcher;
 
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		this.storageDirectory = environment.getRequiredProperty("xml.home", File.class);
 		Preconditions.checkArgument(this.storageDirectory.isDirectory(), storageDirectory.getCanonicalPath() + " is a directory");
-		this.storagePath = storageDirectory.getCanonicalPath();
+		this.storageRoot = storageDirectory.getCanonicalFile().toPath();
+
+		reindex();
+
+		if (environment.getProperty("xml.watch", Boolean.class, false)) {
+			LOG.info("Watching {} for changes", storageRoot);
+			this.watcher = new XMLStorageWatcher(this, storageRoot, environment.getProperty("xml.watch.delay", Long.class, 2000L));
+			this.watcher.start();
+		}
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		if (watcher != null) {
+			watcher.stop();
+		}
+	}
+
+	/**
+	 * Registers a listener to be notified about changes to the stored resources.
+	 * <p/>
+	 * Notifications are only sent while the storage is watched (<code>xml.watch</code>); they are delivered on
+	 * the watcher's background thread.
+	 */
+	public void addListener(ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(ChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	void changed(SortedSet<FaustURI> uris) {
+		LOG.debug("{} resource(s) changed in XML storage", uris.size());
+		for (ChangeListener listener : listeners) {
+			try {
+				listener.changed(uris);
+			} catch (Exception e) {
+				LOG.error("Error while notifying " + listener + " about changes in XML storage", e);
+			}
+		}
 	}
 
 	@Override
 	public Iterator<FaustURI> iterator() {
-		return iterate(storageDirectory).iterator();
+		return iterate(new FaustURI(FaustAuthority.XML, "/")).iterator();
 	}
 
+	/**
+	 * @return a lazy view of all resources below the given directory, in lexicographic order of their paths
+	 */
 	public Iterable<FaustURI> iterate(FaustURI base) {
-		final File baseFile = toFile(base);
-		Preconditions.checkArgument(baseFile.isDirectory(), baseFile.getAbsolutePath() + " is not a valid base directory");
-		return iterate(baseFile);
+		final String directory = directoryPath(relativePath(base));
+		Preconditions.checkArgument(directories.contains(directory), base + " is not a valid base directory");
+		return Iterables.transform(resources.subSet(directory, true, directory + Character.MAX_VALUE, false), pathToUri);
 	}
 
-	protected Iterable<FaustURI> iterate(File base) {
-		Preconditions.checkArgument(isInStore(base), base.getAbsolutePath() + " is not in XML storage");
-		final List<File> files = new LinkedList<File>();
-		listRecursively(files, base);
-		return new FileToUriWrapper(files);
+	/**
+	 * Rebuilds the in-memory index of the storage directory.
+	 */
+	public void reindex() throws IOException {
+		final NavigableSet<String> resources = new ConcurrentSkipListSet<String>();
+		final NavigableSet<String> directories = new ConcurrentSkipListSet<String>();
+		index(storageRoot, resources, directories);
+		this.resources = resources;
+		this.directories = directories;
+		LOG.debug("Indexed {} resource(s) in {} director(y|ies) of XML storage", resources.size(), directories.size());
 	}
 
-	private void listRecursively(List<File> contents, File base) {
-		for (File contained : base.listFiles()) {
-			if (contained.isDirectory()) {
-				listRecursively(contents, contained);
-			} else if (contained.isFile() && xmlFilenamePattern.matcher(contained.getName()).matches()) {
-				contents.add(contained);
-			}
+	/**
+	 * Adds a file or directory tree to the index.
+	 *
+	 * @return the resources added
+	 */
+	SortedSet<FaustURI> addToIndex(Path path) throws IOException {
+		final Path resolved = realPath(path);
+		final String relativePath = relativize(resolved);
+		if (Files.isDirectory(resolved)) {
+			index(resolved, resources, directories);
+			final String directory = directoryPath(relativePath);
+			return Sets.newTreeSet(Iterables.transform(resources.subSet(directory, true, directory + Character.MAX_VALUE, false), pathToUri));
+		}
+		if (Files.isRegularFile(resolved) && isResourceName(resolved.getFileName().toString())) {
+			resources.add(relativePath);
+			return Sets.newTreeSet(Collections.singleton(pathToUri.apply(relativePath)));
 		}
+		return Sets.newTreeSet();
+	}
+
+	/**
+	 * Removes a file or directory tree from the index.
+	 *
+	 * @return the resources removed
+	 */
+	SortedSet<FaustURI> removeFromIndex(Path path) {
+		final String relativePath = relativePath(path);
+		if (resources.remove(relativePath)) {
+			return Sets.newTreeSet(Collections.singleton(pathToUri.apply(relativePath)));
+		}
+		final String directory = directoryPath(relativePath);
+		if (!directories.contains(directory)) {
+			return Sets.newTreeSet();
+		}
+		final NavigableSet<String> removed = resources.subSet(directory, true, directory + Character.MAX_VALUE, false);
+		final SortedSet<FaustURI> removedUris = Sets.newTreeSet(Iterables.transform(removed, pathToUri));
+		removed.clear();
+		directories.subSet(directory, true, directory + Character.MAX_VALUE, false).clear();
+		return removedUris;
+	}
+
+	private void index(Path start, final NavigableSet<String> resources, final NavigableSet<String> directories) throws IOException {
+		// symbolic links are not followed, so paths below the resolved start need not be resolved again
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				directories.add(directoryPath(relativize(dir)));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if (attrs.isRegularFile() && isResourceName(file.getFileName().toString())) {
+					resources.add(relativize(file));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+				LOG.warn("Cannot index " + file, exc);
+				return FileVisitResult.CONTINUE;
+			}
+		});
 	}
 
 	public InputSource getInputSource(FaustURI uri) throws IOException {
@@ -93,6 +236,14 @@ public class XMLStorage implements Iterable<FaustURI>, InitializingBean {
 
 	public void put(FaustURI uri, Document xml) throws TransformerException {
 		XMLUtil.serialize(xml, toFile(uri));
+
+		final String path = relativePath(uri);
+		if (isResourceName(path.substring(path.lastIndexOf('/') + 1))) {
+			resources.add(path);
+		}
+		for (int sc = path.indexOf('/'); sc >= 0; sc = path.indexOf('/', sc + 1)) {
+			directories.add(path.substring(0, sc + 1));
+		}
 	}
 
 	public FaustURI walk (Deque<String> path) {
@@ -123,53 +274,113 @@ public class XMLStorage implements Iterable<FaustURI>, InitializingBean {
 	}
 
 	public boolean isDirectory(FaustURI uri) {
-		final File file = toFile(uri);
-		return file.isDirectory() && isInStore(file);
+		return directories.contains(directoryPath(relativePath(uri)));
 	}
 
 	public boolean isResource(FaustURI uri) {
-		final File file = toFile(uri);
-		return file.isFile() && isInStore(file) && xmlFilenamePattern.matcher(file.getName()).matches();
+		return resources.contains(relativePath(uri));
+	}
+
+	boolean isResourceName(String filename) {
+		return xmlFilenamePattern.matcher(filename).matches();
 	}
 
+	/**
+	 * @throws IllegalArgumentException if the URI does not point into the storage, also via symbolic links
+	 */
 	protected File toFile(FaustURI uri) {
-		Preconditions.checkArgument(FaustAuthority.XML == uri.getAuthority(), uri + " not valid");
-		final File file = new File(storageDirectory, uri.getPath());
-		try {
-			Preconditions.checkArgument(isInStore(file), file.getCanonicalPath() + " is not in XML storage");
-		} catch (IOException e) {
-			throw new IllegalArgumentException(file.getAbsolutePath() + " is not in XML storage", e);
-		}
+		final File file = new File(storageDirectory, relativePath(uri));
+		Preconditions.checkArgument(realPath(file.toPath()).startsWith(storageRoot), uri + " is not in XML storage");
 		return file;
 	}
 
 	protected FaustURI toUri(File file) {
-		try {
-			final String filePath = file.getCanonicalPath();
-			Preconditions.checkArgument(isInStore(file), filePath + " not in XML store");
-			return new FaustURI(FaustAuthority.XML, filePath.substring(storagePath.length()));
-		} catch (IOException e) {
-			throw new IllegalArgumentException(file.getAbsolutePath() + " is not in XML storage", e);
+		return pathToUri.apply(relativePath(file.toPath()));
+	}
+
+	/**
+	 * @return the normalized path of the given URI relative to the storage directory, without a trailing slash
+	 * @throws IllegalArgumentException if the URI does not point into the storage
+	 */
+	protected String relativePath(FaustURI uri) {
+		Preconditions.checkArgument(FaustAuthority.XML == uri.getAuthority(), uri + " not valid");
+		final Deque<String> segments = new ArrayDeque<String>();
+		for (String segment : uri.getPath().split("/")) {
+			if (segment.isEmpty() || ".".equals(segment)) {
+				continue;
+			}
+			if ("..".equals(segment)) {
+				Preconditions.checkArgument(!segments.isEmpty(), uri + " is not in XML storage");
+				segments.removeLast();
+			} else {
+				segments.addLast(segment);
+			}
 		}
+		return "/" + Joiner.on('/').join(segments);
 	}
 
-	protected boolean isInStore(File file) {
+	/**
+	 * @return the path of the given file relative to the storage directory, without a trailing slash
+	 * @throws IllegalArgumentException if the file is not in the storage, also via symbolic links
+	 */
+	protected String relativePath(Path path) {
+		return relativize(realPath(path));
+	}
+
+	/**
+	 * @return the given path with symbolic links resolved; trailing segments which do not exist (anymore) are
+	 * appended as given
+	 */
+	private static Path realPath(Path path) {
+		final Path absolute = path.toAbsolutePath().normalize();
+		Path existing = absolute;
+		while (existing != null && !Files.exists(existing)) {
+			existing = existing.getParent();
+		}
+		if (existing == null) {
+			return absolute;
+		}
 		try {
-			return file.getCanonicalPath().startsWith(storagePath);
+			return existing.toRealPath().resolve(existing.relativize(absolute));
 		} catch (IOException e) {
-			return false;
+			throw new IllegalArgumentException(path + " cannot be resolved", e);
 		}
 	}
 
-	private class FileToUriWrapper extends IterableWrapper<FaustURI, File> {
-
-		private FileToUriWrapper(Iterable<File> iterableToWrap) {
-			super(iterableToWrap);
+	/**
+	 * @param path an absolute path without symbolic links, e.g. as found by walking the storage directory
+	 */
+	private String relativize(Path path) {
+		final Path relative = storageRoot.relativize(path);
+		Preconditions.checkArgument(!relative.startsWith(".."), path + " is not in XML storage");
+		final StringBuilder relativePath = new StringBuilder();
+		for (Path segment : relative) {
+			if (segment.toString().length() > 0) {
+				relativePath.append('/').append(segment);
+			}
 		}
+		return (relativePath.length() == 0 ? "/" : relativePath.toString());
+	}
 
+	private static String directoryPath(String relativePath) {
+		return (relativePath.endsWith("/") ? relativePath : relativePath + "/");
+	}
+
+	private final Function<String, FaustURI> pathToUri = new Function<String, FaustURI>() {
 		@Override
-		protected FaustURI underlyingObjectToObject(File file) {
-			return toUri(file);
+		public FaustURI apply(String input) {
+			return new FaustURI(FaustAuthority.XML, input);
 		}
+	};
+
+	/**
+	 * Callback for changes to resources in the storage.
+	 */
+	public interface ChangeListener {
+
+		/**
+		 * @param uris the resources which have been added, modified or deleted
+		 */
+		void changed(SortedSet<FaustURI> uris);
 	}
 }
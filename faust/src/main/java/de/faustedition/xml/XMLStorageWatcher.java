@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2014 Faust Edition development team.
+ *
+ * This file is part of the Faust Edition.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.faustedition.xml;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import de.faustedition.FaustURI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches the directory tree of an {@link XMLStorage} for changes on a background thread, keeping the storage's
+ * index up to date.
+ * <p/>
+ * Bursts of changes are debounced: listeners are notified once no further change has been observed for the
+ * configured delay, or at the latest after ten times the delay, with all XML resources touched in the meantime.
+ */
+class XMLStorageWatcher implements Runnable {
+	private static final Logger LOG = LoggerFactory.getLogger(XMLStorageWatcher.class);
+
+	private final XMLStorage storage;
+	private final long delay;
+	private final WatchService watchService;
+	private final Map<WatchKey, Path> directories = Maps.newHashMap();
+	private Thread thread;
+
+	XMLStorageWatcher(XMLStorage storage, Path root, long delay) throws IOException {
+		this.storage = storage;
+		this.delay = delay;
+		this.watchService = root.getFileSystem().newWatchService();
+		register(root);
+	}
+
+	void start() {
+		thread = new Thread(this, "xml-storage-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	void stop() throws IOException {
+		if (thread != null) {
+			thread.interrupt();
+		}
+		watchService.close();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				final SortedSet<FaustURI> changed = Sets.newTreeSet();
+				boolean overflow = process(watchService.take(), changed);
+
+				final long deadline = System.currentTimeMillis() + 10 * delay;
+				WatchKey key;
+				while (System.currentTimeMillis() < deadline && (key = watchService.poll(delay, TimeUnit.MILLISECONDS)) != null) {
+					overflow |= process(key, changed);
+				}
+
+				if (overflow) {
+					LOG.warn("Lost file system events in XML storage; reindexing and reporting all resources as changed");
+					// resources indexed before are reported as well, so that deletions are not lost
+					changed.addAll(Sets.newTreeSet(storage));
+					try {
+						storage.reindex();
+					} catch (IOException e) {
+						LOG.error("I/O error while reindexing XML storage", e);
+					}
+					changed.addAll(Sets.newTreeSet(storage));
+				}
+				if (!changed.isEmpty()) {
+					storage.changed(changed);
+				}
+			}
+		} catch (InterruptedException e) {
+			LOG.debug("XML storage watcher interrupted");
+		} catch (ClosedWatchServiceException e) {
+			LOG.debug("XML storage watcher closed");
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if events have been lost
+	 */
+	private boolean process(WatchKey key, SortedSet<FaustURI> changed) {
+		boolean overflow = false;
+		final Path directory = directories.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				overflow = true;
+				continue;
+			}
+			if (directory == null) {
+				continue;
+			}
+			final Path path = directory.resolve((Path) event.context());
+			try {
+				if (event.kind() == ENTRY_DELETE) {
+					changed.addAll(storage.removeFromIndex(path));
+				} else {
+					if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+						register(path);
+					}
+					changed.addAll(storage.addToIndex(path));
+				}
+			} catch (IOException e) {
+				LOG.warn("I/O error while watching " + path, e);
+				overflow = true;
+			} catch (IllegalArgumentException e) {
+				LOG.debug("Ignoring change outside of XML storage: {}", path);
+			}
+		}
+		if (!key.reset()) {
+			directories.remove(key);
+		}
+		return overflow;
+	}
+
+	private void register(Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
@@ -5,10 +5,13 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -62,6 +65,145 @@ class DefaultTransitiveRelation<E> implements TransitiveRelation<E>, Serializabl
         directRelationships.put(subject, object);
     }
 
+    /**
+     * Creates a relation holding the relationships of an acyclic navigator, labeling all elements in bulk instead
+     * of relating them pair by pair.
+     *
+     * <p>Every subject is nested into the interval of the object starting its longest path, so chains share
+     * intervals, and then the interval sets are merged in topological order, each set being passed on to the
+     * directly related objects exactly once.
+     *
+     * @return the relation, or {@code null} if the relationships of the navigator form a cycle
+     */
+    static <E> DefaultTransitiveRelation<E> createAcyclic(Navigator<E> navigator) {
+        final Map<E, Integer> indices = Maps.newHashMap();
+        final List<E> values = Lists.newArrayList();
+        final List<int[]> related = Lists.newArrayList();
+        int edgeCount = 0;
+        for (E subject : navigator.domain()) {
+            final Set<E> objects = navigator.related(subject);
+            final int[] objectIndices = new int[objects.size()];
+            int count = 0;
+            for (E object : objects) {
+                if (!Objects.equal(subject, object)) {
+                    objectIndices[count++] = indexOf(object, indices, values, related);
+                }
+            }
+            if (count > 0) {
+                related.set(indexOf(subject, indices, values, related), Arrays.copyOf(objectIndices, count));
+                edgeCount += count;
+            }
+        }
+        final int size = values.size();
+
+        //topological order (Kahn), subjects before their objects
+        final int[] predecessors = new int[size];
+        for (int[] objects : related) {
+            for (int object : objects) predecessors[object]++;
+        }
+        final int[] order = new int[size];
+        int ordered = 0;
+        for (int i = 0; i < size; i++) {
+            if (predecessors[i] == 0) order[ordered++] = i;
+        }
+        for (int head = 0; head < ordered; head++) {
+            for (int object : related.get(order[head])) {
+                if (--predecessors[object] == 0) order[ordered++] = object;
+            }
+        }
+        if (ordered < size) {
+            return null;
+        }
+
+        //nesting every subject into the object starting its longest path; objects of no relationship are the roots
+        final int[] pathLengths = new int[size];
+        final int[] parents = new int[size];
+        final int[] childCounts = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            final int subject = order[i];
+            parents[subject] = -1;
+            for (int object : related.get(subject)) {
+                if (parents[subject] < 0 || pathLengths[object] > pathLengths[parents[subject]]) {
+                    parents[subject] = object;
+                }
+            }
+            if (parents[subject] >= 0) {
+                pathLengths[subject] = pathLengths[parents[subject]] + 1;
+                childCounts[parents[subject]]++;
+            }
+        }
+        final int[][] children = new int[size][];
+        for (int i = 0; i < size; i++) {
+            children[i] = new int[childCounts[i]];
+            childCounts[i] = 0;
+        }
+        for (int i = 0; i < size; i++) {
+            if (parents[i] >= 0) children[parents[i]][childCounts[parents[i]]++] = i;
+        }
+
+        //appending pre and post nodes in depth-first order of the nesting forest
+        final DefaultTransitiveRelation<E> relation = new DefaultTransitiveRelation<E>();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final Node<E>[] nodes = new Node[size];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final OrderList.Node<E>[] preNodes = new OrderList.Node[size];
+        final int[] stack = new int[size];
+        final int[] cursors = new int[size];
+        for (int root = 0; root < size; root++) {
+            if (parents[root] >= 0) continue;
+            int depth = 0;
+            stack[depth] = root;
+            cursors[depth] = 0;
+            preNodes[root] = relation.magicList.addAfter(relation.magicList.base().previous(), values.get(root));
+            while (depth >= 0) {
+                final int current = stack[depth];
+                if (cursors[depth] < children[current].length) {
+                    final int child = children[current][cursors[depth]++];
+                    preNodes[child] = relation.magicList.addAfter(relation.magicList.base().previous(), values.get(child));
+                    stack[++depth] = child;
+                    cursors[depth] = 0;
+                } else {
+                    nodes[current] = relation.createPost(preNodes[current], parents[current] < 0);
+                    depth--;
+                }
+            }
+        }
+
+        //passing the interval sets on, in topological order
+        for (int i = 0; i < size; i++) {
+            final Node<E> subject = nodes[order[i]];
+            for (int objectIndex : related.get(order[i])) {
+                final Node<E> object = nodes[objectIndex];
+                if (!object.intervalSet.containsAll(subject.intervalSet)) {
+                    object.intervalSet.addIntervals(subject.intervalSet);
+                }
+                relation.directRelationships.put(subject, object);
+            }
+        }
+        assert relation.directRelationships.size() == edgeCount;
+        return relation;
+    }
+
+    private static <E> int indexOf(E value, Map<E, Integer> indices, List<E> values, List<int[]> related) {
+        Integer index = indices.get(value);
+        if (index == null) {
+            index = values.size();
+            indices.put(value, index);
+            values.add(value);
+            related.add(NO_OBJECTS);
+        }
+        return index;
+    }
+
+    private static final int[] NO_OBJECTS = new int[0];
+
+    @SuppressWarnings("unchecked") //see Node.create()
+    private Node<E> createPost(OrderList.Node<E> pre, boolean isEnclosable) {
+        final OrderList.Node<E> post = magicList.addAfter(magicList.base().previous(),
+                isEnclosable ? (E)Node.ENCLOSABLE_MARKER : null);
+        return Node.createAndRegister(this, pre, post, pre.getValue());
+    }
+
     private boolean isNew(E subject) {
         return !nodeMap.containsKey(subject);
     }
@@ -105,6 +247,45 @@ class DefaultTransitiveRelation<E> implements TransitiveRelation<E>, Serializabl
         return navigator;
     }
 
+    /**
+     * Creates an immutable snapshot of this relation.
+     *
+     * @see Relations#freeze(TransitiveRelation)
+     */
+    FrozenTransitiveRelation<E> freeze() {
+        final int size = nodeMap.size();
+        final List<E> values = Lists.newArrayListWithCapacity(size);
+        final Map<Node<E>, Integer> indices = new IdentityHashMap<Node<E>, Integer>(size);
+        int intervalCount = 0;
+        for (Map.Entry<E, Node<E>> entry : nodeMap.entrySet()) {
+            indices.put(entry.getValue(), values.size());
+            values.add(entry.getKey());
+            intervalCount += entry.getValue().intervalSet.size();
+        }
+
+        final long[] pre = new long[size];
+        final int[] intervalOffsets = new int[size + 1];
+        final long[] intervals = new long[intervalCount];
+        final int[] directOffsets = new int[size + 1];
+        final int[] directTargets = new int[directRelationships.size()];
+        for (int i = 0, intervalIndex = 0, directIndex = 0; i < size; i++) {
+            final Node<E> node = nodeMap.get(values.get(i));
+            pre[i] = node.pre.tag();
+
+            intervalOffsets[i] = intervalIndex;
+            for (int j = 0; j < node.intervalSet.size(); j++) {
+                intervals[intervalIndex++] = node.intervalSet.get(j).tag();
+            }
+            directOffsets[i] = directIndex;
+            for (Node<E> object : directRelationships.get(node)) {
+                directTargets[directIndex++] = indices.get(object);
+            }
+            intervalOffsets[i + 1] = intervalIndex;
+            directOffsets[i + 1] = directIndex;
+        }
+        return new FrozenTransitiveRelation<E>(values, pre, intervalOffsets, intervals, directOffsets, directTargets);
+    }
+
     @Override
     public String toString() {
         return nodeMap.toString();
@@ -0,0 +1,382 @@
+package edu.bath.transitivityutils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * An immutable snapshot of a transitive relation, as created by {@link Relations#freeze(TransitiveRelation)}.
+ *
+ * <p>Each element is mapped to an index, and all per-element state is kept in flat arrays indexed by it: the tag
+ * of the element's pre-order node and, sliced by offsets, the tags of its intervals and the indices of its direct
+ * relationships. {@link #areRelated(Object, Object)} therefore costs two hash lookups and a binary search,
+ * without allocating or writing anything.
+ *
+ * <p>Instances are thread-safe and may be published to any number of readers without synchronization.
+ * {@link #relate(Object, Object)} throws {@code UnsupportedOperationException}.
+ *
+ * <p>Snapshots can be {@linkplain #writeTo(DataOutput, Codec) written} in a versioned binary format that holds these
+ * arrays as they are, so {@linkplain #readFrom(DataInput, Codec) reading} one back takes a single sequential pass,
+ * without relating any elements again. The format, all numbers big-endian:
+ * <pre>
+ * header:     int magic, int version, int elements, int intervals, int direct relationships
+ * elements:   per element, its value as written by the {@link Codec}
+ * pre tags:   per element, long tag
+ * intervals:  per element, int interval tag count, then per element, the long interval tags
+ * direct:     per element, int direct relationship count, then per relationship, int element index
+ * </pre>
+ */
+public final class FrozenTransitiveRelation<E> implements TransitiveRelation<E> {
+    private static final int MAGIC = 0x46545231; // "FTR1"
+    private static final int VERSION = 1;
+
+    private final List<E> values;
+    private final Map<E, Integer> indices;
+
+    private final long[] pre;
+    private final int[] intervalOffsets;
+    private final long[] intervals;
+
+    private final int[] directOffsets;
+    private final int[] directTargets;
+
+    private final Navigator<E> navigator;
+
+    /**
+     * @param values the elements, in index order
+     * @param pre the pre-order tag of each element
+     * @param intervalOffsets for each element and past the last, where its intervals start in {@code intervals}
+     * @param intervals the sorted {@code [pre, post]} tag pairs of the elements' intervals
+     * @param directOffsets for each element and past the last, where its direct relationships start in {@code directTargets}
+     * @param directTargets the indices of the directly related elements
+     */
+    FrozenTransitiveRelation(List<E> values, long[] pre, int[] intervalOffsets, long[] intervals,
+            int[] directOffsets, int[] directTargets) {
+        final int size = values.size();
+        Preconditions.checkArgument(pre.length == size, "Pre tags do not match elements");
+        Preconditions.checkArgument(intervalOffsets.length == size + 1 && intervalOffsets[size] == intervals.length,
+                "Interval offsets do not match intervals");
+        Preconditions.checkArgument(directOffsets.length == size + 1 && directOffsets[size] == directTargets.length,
+                "Direct offsets do not match direct relationships");
+        this.values = Collections.unmodifiableList(Lists.newArrayList(values));
+        this.indices = Maps.newHashMapWithExpectedSize(size);
+        for (int i = 0; i < size; i++) {
+            Preconditions.checkArgument(indices.put(this.values.get(i), i) == null, "Duplicate element");
+        }
+        this.pre = pre;
+        this.intervalOffsets = intervalOffsets;
+        this.intervals = intervals;
+        this.directOffsets = directOffsets;
+        this.directTargets = directTargets;
+        this.navigator = new DirectNavigator();
+    }
+
+    public boolean areRelated(E subjectValue, E objectValue) {
+        if (Objects.equal(subjectValue, objectValue)) return true;
+
+        final Integer subject = indices.get(subjectValue);
+        if (subject == null) return false;
+
+        final Integer object = indices.get(objectValue);
+        if (object == null) return false;
+
+        final int from = intervalOffsets[object];
+        final int index = Arrays.binarySearch(intervals, from, intervalOffsets[object + 1], pre[subject]);
+        return index >= 0 || //the subject's pre tag is an interval boundary
+                ((-index - 1 - from) & 1) != 0; //otherwise, it is inside an interval if inserted after a pre tag
+    }
+
+    public Navigator<E> direct() {
+        return navigator;
+    }
+
+    public void relate(E subject, E object) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the number of elements related to or from any other element.
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Writes this relation in the binary format described {@linkplain FrozenTransitiveRelation above}.
+     *
+     * @param out the output to write to
+     * @param codec writes the elements of this relation
+     */
+    public void writeTo(DataOutput out, Codec<? super E> codec) throws IOException {
+        final int size = values.size();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(size);
+        out.writeInt(intervals.length);
+        out.writeInt(directTargets.length);
+        for (E value : values) {
+            codec.write(out, value);
+        }
+        for (long tag : pre) {
+            out.writeLong(tag);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeInt(intervalOffsets[i + 1] - intervalOffsets[i]);
+        }
+        for (long tag : intervals) {
+            out.writeLong(tag);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeInt(directOffsets[i + 1] - directOffsets[i]);
+        }
+        for (int target : directTargets) {
+            out.writeInt(target);
+        }
+    }
+
+    /**
+     * Reads a relation written by {@link #writeTo(DataOutput, Codec)}.
+     *
+     * @param in the input to read from
+     * @param codec reads the elements of the relation
+     * @throws IOException if the input cannot be read or does not hold a relation in a supported version
+     */
+    public static <E> FrozenTransitiveRelation<E> readFrom(DataInput in, Codec<? extends E> codec) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a transitive relation");
+        }
+        final int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version of transitive relation: " + version);
+        }
+        final int size = in.readInt();
+        final int intervalCount = in.readInt();
+        final int directCount = in.readInt();
+        if (size < 0 || intervalCount < 0 || directCount < 0) {
+            throw new IOException("Corrupt transitive relation header");
+        }
+
+        // the header is not trusted: per-element arrays are allocated once the elements have been read, and the
+        // others grow with what has actually been read, so that a corrupt count fails with an EOFException instead
+        // of allocating whatever the header claims
+        final List<E> values = Lists.newArrayList();
+        for (int i = 0; i < size; i++) {
+            values.add(codec.read(in));
+        }
+        final long[] pre = new long[size];
+        for (int i = 0; i < size; i++) {
+            pre[i] = in.readLong();
+        }
+        final int[] intervalOffsets = readOffsets(in, size, intervalCount);
+        final long[] intervals = readIntervals(in, intervalOffsets);
+        final int[] directOffsets = readOffsets(in, size, directCount);
+        int[] directTargets = new int[Math.min(directCount, 1024)];
+        for (int i = 0; i < directCount; i++) {
+            if (i == directTargets.length) {
+                directTargets = Arrays.copyOf(directTargets, (int) Math.min(directCount, 2L * i));
+            }
+            final int target = in.readInt();
+            if (target < 0 || target >= size) {
+                throw new IOException("Corrupt direct relationship: " + target);
+            }
+            directTargets[i] = target;
+        }
+
+        try {
+            return new FrozenTransitiveRelation<E>(values, pre, intervalOffsets, intervals, directOffsets, directTargets);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt transitive relation", e);
+        }
+    }
+
+    private static int[] readOffsets(DataInput in, int size, int total) throws IOException {
+        final int[] offsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            final int count = in.readInt();
+            if (count < 0 || count > total - offsets[i]) {
+                throw new IOException("Corrupt transitive relation offsets");
+            }
+            offsets[i + 1] = offsets[i] + count;
+        }
+        if (offsets[size] != total) {
+            throw new IOException("Corrupt transitive relation offsets");
+        }
+        return offsets;
+    }
+
+    /**
+     * Reads the interval tags sliced by the given offsets, checking that each element has strictly ascending
+     * {@code [pre, post]} pairs, as {@link #areRelated(Object, Object)} relies on.
+     */
+    private static long[] readIntervals(DataInput in, int[] offsets) throws IOException {
+        final int total = offsets[offsets.length - 1];
+        long[] intervals = new long[Math.min(total, 1024)];
+        for (int element = 0; element + 1 < offsets.length; element++) {
+            final int from = offsets[element];
+            final int to = offsets[element + 1];
+            if (((to - from) & 1) != 0) {
+                throw new IOException("Corrupt transitive relation: odd number of interval tags");
+            }
+            for (int i = from; i < to; i++) {
+                if (i == intervals.length) {
+                    intervals = Arrays.copyOf(intervals, (int) Math.min(total, 2L * i));
+                }
+                intervals[i] = in.readLong();
+                if (i > from && intervals[i - 1] >= intervals[i]) {
+                    throw new IOException("Corrupt transitive relation: interval tags not ascending");
+                }
+            }
+        }
+        return intervals;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(values.get(i)).append('=')
+                    .append(Arrays.toString(Arrays.copyOfRange(intervals, intervalOffsets[i], intervalOffsets[i + 1])));
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Writes and reads the elements of a relation in its {@linkplain FrozenTransitiveRelation binary format}.
+     */
+    public interface Codec<E> {
+        void write(DataOutput out, E value) throws IOException;
+
+        E read(DataInput in) throws IOException;
+    }
+
+    /**
+     * Writes {@code Integer} elements as ints.
+     */
+    public static final Codec<Integer> INTEGERS = new Codec<Integer>() {
+        public void write(DataOutput out, Integer value) throws IOException {
+            out.writeInt(value);
+        }
+
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    /**
+     * Writes {@code String} elements in modified UTF-8.
+     */
+    public static final Codec<String> STRINGS = new Codec<String>() {
+        public void write(DataOutput out, String value) throws IOException {
+            out.writeUTF(value);
+        }
+
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    private class DirectNavigator implements Navigator<E> {
+        private final Set<E> domain;
+
+        DirectNavigator() {
+            int domainSize = 0;
+            for (int i = 0; i < values.size(); i++) {
+                if (directOffsets[i] < directOffsets[i + 1]) domainSize++;
+            }
+            final int size = domainSize;
+            this.domain = new AbstractSet<E>() {
+                @Override
+                public boolean contains(Object o) {
+                    final Integer index = indices.get(o);
+                    return index != null && directOffsets[index] < directOffsets[index + 1];
+                }
+
+                @Override
+                public Iterator<E> iterator() {
+                    return new Iterator<E>() {
+                        private int element = advance(0);
+
+                        private int advance(int from) {
+                            while (from < values.size() && directOffsets[from] == directOffsets[from + 1]) {
+                                from++;
+                            }
+                            return from;
+                        }
+
+                        public boolean hasNext() {
+                            return element < values.size();
+                        }
+
+                        public E next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            final E current = values.get(element);
+                            element = advance(element + 1);
+                            return current;
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+        public Set<E> related(E subjectValue) {
+            final Integer subject = indices.get(subjectValue);
+            if (subject == null) return Collections.emptySet();
+
+            final int from = directOffsets[subject];
+            final int to = directOffsets[subject + 1];
+            return new AbstractSet<E>() {
+                @Override
+                public Iterator<E> iterator() {
+                    return new Iterator<E>() {
+                        private int index = from;
+
+                        public boolean hasNext() {
+                            return index < to;
+                        }
+
+                        public E next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            return values.get(directTargets[index++]);
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return to - from;
+                }
+            };
+        }
+
+        public Set<E> domain() {
+            return domain;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package edu.bath.transitivityutils;
+
+import java.util.Arrays;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link MergingIntervalSet} of {@link IntOrderList} nodes, stored as an array of int handles
+ * {@code [preA, postA, preB, postB, ...]} sorted by the tags of the nodes.
+ *
+ * <p>Relabeling the list preserves the order of its nodes, so the handles stay sorted without being touched.
+ */
+final class IntIntervalSet {
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * Size above which we switch to binary search.
+     */
+    private static final int BINARY_SEARCH_CUTOFF_POINT = 8;
+
+    private int[] array = EMPTY;
+    private int size = 0;
+
+    IntIntervalSet() { }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the pre node (at even indices) or post node (at odd indices) of an interval, in order.
+     */
+    int get(int index) {
+        return array[index];
+    }
+
+    /**
+     * Adds all intervals of another interval set, merging both in a single pass.
+     */
+    void addIntervals(IntOrderList list, IntIntervalSet other) {
+        if (other.size == 0) {
+            return;
+        }
+        if (other.size == 2) {
+            addInterval(list, other.array[0], other.array[1]);
+            return;
+        }
+        final int[] merged = new int[size + other.size];
+        int mergedSize = 0;
+        long mergedEnd = Long.MIN_VALUE;
+        for (int i = 0, j = 0; i < size || j < other.size; ) {
+            final int pre;
+            final int post;
+            if (j == other.size || (i < size && list.tag(array[i]) < list.tag(other.array[j]))) {
+                pre = array[i++];
+                post = array[i++];
+            } else {
+                pre = other.array[j++];
+                post = other.array[j++];
+            }
+            if (mergedSize > 0 && list.tag(pre) <= mergedEnd) { //overlapping the last merged interval
+                final long postTag = list.tag(post);
+                if (postTag > mergedEnd) {
+                    merged[mergedSize - 1] = post;
+                    mergedEnd = postTag;
+                }
+            } else {
+                merged[mergedSize++] = pre;
+                merged[mergedSize++] = post;
+                mergedEnd = list.tag(post);
+            }
+        }
+        array = merged;
+        size = mergedSize;
+    }
+
+    void addInterval(IntOrderList list, int pre, int post) {
+        Preconditions.checkState(list.tag(pre) < list.tag(post), "Pre node does not precede post node");
+        int preIndex = search(list, pre);
+        int postIndex = search(list, post);
+
+        if (preIndex < 0) preIndex = -preIndex - 1;
+        if (postIndex < 0) postIndex = -postIndex - 1;
+
+        if ((preIndex & 1) != 0 || (postIndex & 1) != 0) { //overlapping interval
+            if (preIndex == postIndex)
+                return; //the interval is subsumed
+
+            if ((preIndex & 1) != 0) {
+                preIndex -= 1;
+                pre = array[preIndex];
+            }
+            if ((postIndex & 1) != 0) {
+                post = array[postIndex];
+                postIndex += 1;
+            }
+        }
+
+        final int newSize = size + 2 - (postIndex - preIndex);
+        if (newSize > array.length) {
+            final int[] newArray = new int[Math.max(2, Integer.highestOneBit(newSize - 1) << 1)];
+            System.arraycopy(array, 0, newArray, 0, preIndex);
+            System.arraycopy(array, postIndex, newArray, preIndex + 2, size - postIndex);
+            array = newArray;
+        } else {
+            System.arraycopy(array, postIndex, array, preIndex + 2, size - postIndex);
+        }
+        array[preIndex] = pre;
+        array[preIndex + 1] = post;
+        size = newSize;
+    }
+
+    /**
+     * Tests whether a node is contained in any interval (or defines an interval boundary) of this interval set.
+     */
+    boolean contains(IntOrderList list, int node) {
+        if (size <= BINARY_SEARCH_CUTOFF_POINT) {
+            return contains_linearScan(list, node);
+        } else {
+            return contains_binarySearch(list, node);
+        }
+    }
+
+    @VisibleForTesting
+    boolean contains_linearScan(IntOrderList list, int node) {
+        final long tag = list.tag(node);
+        for (int i = 0; i < size; i += 2) {
+            if (tag < list.tag(array[i])) {
+                return false;
+            }
+            if (tag <= list.tag(array[i + 1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @VisibleForTesting
+    boolean contains_binarySearch(IntOrderList list, int node) {
+        final int index = search(list, node);
+        return index >= 0 || (index & 1) == 0;
+    }
+
+    /**
+     * Tests whether this interval set contains every interval of another interval set.
+     */
+    boolean containsAll(IntOrderList list, IntIntervalSet other) {
+        if (this.size == 0) return other.size == 0;
+        int thisIndex = 0;
+        long thisLeft = list.tag(array[0]);
+        long thisRight = list.tag(array[1]);
+        for (int thatIndex = 0; thatIndex < other.size; thatIndex += 2) {
+            final long otherLeft = list.tag(other.array[thatIndex]);
+            final long otherRight = list.tag(other.array[thatIndex + 1]);
+            while (thisLeft > otherLeft || otherRight > thisRight) {
+                thisIndex += 2;
+                if (thisIndex == this.size) {
+                    return false;
+                }
+                thisLeft = list.tag(array[thisIndex]);
+                thisRight = list.tag(array[thisIndex + 1]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @see Arrays#binarySearch(int[], int, int, int)
+     */
+    private int search(IntOrderList list, int node) {
+        final long tag = list.tag(node);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long midTag = list.tag(array[mid]);
+            if (midTag < tag) {
+                low = mid + 1;
+            } else if (midTag > tag) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(Arrays.copyOf(array, size));
+    }
+}
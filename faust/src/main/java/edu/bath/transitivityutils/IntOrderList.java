@@ -0,0 +1,225 @@
+package edu.bath.transitivityutils;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An order-maintenance list like {@link OrderList}, whose nodes are int handles instead of objects.
+ *
+ * <p>The nodes occupy the slots of an array in list order, with gaps between them, and the slot of a node serves as
+ * its tag: precedence tests compare two array elements, and no object is allocated per node. A node is added into
+ * the gap after its predecessor; if there is none, the smallest enclosing window of slots that is sparse enough is
+ * scanned from left to right and its nodes are spread evenly over it (a <em>packed memory array</em>), so
+ * relabeling always walks memory sequentially. The array doubles when it is half full.
+ *
+ * <p>Handle {@code 0} is the {@linkplain #base() base} node, which precedes all others. Handles are assigned in
+ * order of creation and are never reused, so a deleted handle stays invalid, and callers can keep per-node data in
+ * their own arrays indexed by handle. Methods accepting a handle not created by this instance behave undefined.
+ *
+ * @see OrderList
+ * @see <a href="http://portal.acm.org/citation.cfm?id=740822">Two Simplified Algorithms for Maintaining Order in a List (Bender et al., 2002)</a>
+ */
+public final class IntOrderList {
+    private static final int BASE = 0;
+    private static final int DELETED = -1;
+    private static final int EMPTY = -1;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The handle in each slot, or {@code EMPTY}.
+     */
+    private int[] handleAt = new int[16];
+    /**
+     * Per handle, its slot (tag), and its neighbours in the list.
+     */
+    private int[] slotOf = new int[16];
+    private int[] next = new int[16];
+    private int[] prev = new int[16];
+    private int size = 0;
+    private int handles = 1;
+
+    private IntOrderList() {
+        Arrays.fill(handleAt, EMPTY);
+        handleAt[0] = BASE;
+    }
+
+    /**
+     * Creates an empty {@code IntOrderList}.
+     */
+    public static IntOrderList create() {
+        return new IntOrderList();
+    }
+
+    /**
+     * Returns the base (sentinel) node, which precedes any other node in this list and cannot be deleted.
+     */
+    public int base() {
+        return BASE;
+    }
+
+    /**
+     * Returns the number of nodes (not counting the {@linkplain #base() base} node) contained in this instance.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the node following the specified one, or {@code -1} if that has been deleted.
+     * The base node follows the last node.
+     */
+    public int next(int node) {
+        return next[node];
+    }
+
+    /**
+     * Returns the node preceding the specified one, or {@code -1} if that has been deleted.
+     * The last node precedes the base node.
+     */
+    public int previous(int node) {
+        return prev[node];
+    }
+
+    /**
+     * Returns {@code true} if the specified node has been created by this instance and is not deleted.
+     */
+    public boolean isValid(int node) {
+        return node >= 0 && node < handles && prev[node] != DELETED;
+    }
+
+    /**
+     * Returns whether a node precedes another one. A node never precedes itself.
+     *
+     * @throws IllegalStateException if either node has been deleted
+     */
+    public boolean precedes(int node, int other) {
+        Preconditions.checkState(isValid(node), "This node is deleted");
+        Preconditions.checkState(isValid(other), "The argument node is deleted");
+        return slotOf[node] < slotOf[other];
+    }
+
+    /**
+     * Returns the current tag of a node, without checking it. Tags grow in list order, but change whenever the
+     * list is relabeled.
+     */
+    long tag(int node) {
+        return slotOf[node];
+    }
+
+    /**
+     * Adds a new node immediately after the specified one.
+     *
+     * @return the handle of the new node
+     * @throws IllegalStateException if the specified node has been deleted
+     */
+    public int addAfter(int node) {
+        Preconditions.checkState(isValid(node), "Node has been deleted");
+        Preconditions.checkState(handles != Integer.MAX_VALUE, "Too many elements");
+
+        final int newNode = handles++;
+        if (newNode == slotOf.length) {
+            final int capacity = slotOf.length * 2;
+            slotOf = Arrays.copyOf(slotOf, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+        }
+        prev[newNode] = node;
+        next[newNode] = next[node];
+        next[node] = newNode;
+        prev[next[newNode]] = newNode;
+        size++;
+
+        final int slot = slotOf[node];
+        final int nextSlot = (next[newNode] == BASE ? handleAt.length : slotOf[next[newNode]]);
+        if (nextSlot - slot > 1) {
+            place(newNode, (slot + nextSlot) >>> 1);
+        } else {
+            rebalance(slot);
+        }
+        return newNode;
+    }
+
+    /**
+     * Deletes a node from this list, if the node is not already deleted. The {@linkplain #base() base} node can
+     * never be deleted.
+     *
+     * @return {@code true} if the node was deleted, {@code false} if it is already deleted or the base node
+     */
+    public boolean delete(int node) {
+        if (node == BASE || !isValid(node)) return false;
+        handleAt[slotOf[node]] = EMPTY;
+        next[prev[node]] = next[node];
+        prev[next[node]] = prev[node];
+        prev[node] = next[node] = DELETED;
+        size--;
+        return true;
+    }
+
+    private void place(int node, int slot) {
+        handleAt[slot] = node;
+        slotOf[node] = slot;
+    }
+
+    /**
+     * Makes room for the node just linked after the one in the specified slot: finds the smallest aligned window
+     * around the slot whose density stays within its threshold, which falls from 1 for single slots to 1/2 for the
+     * whole array, and spreads the nodes of the window over it evenly, growing the array if even that is too dense.
+     */
+    private void rebalance(int slot) {
+        final int levels = Integer.numberOfTrailingZeros(handleAt.length);
+        int low = slot;
+        int high = slot;
+        int count = 1; //the new node, which has no slot yet
+        for (int level = 0; level <= levels; level++) {
+            final int width = 1 << level;
+            final int newLow = slot & -width;
+            count += occupied(newLow, low) + occupied(high, newLow + width);
+            low = newLow;
+            high = newLow + width;
+            if (count <= width - (long) width * level / (2 * levels)) {
+                spread(low, high, count);
+                return;
+            }
+        }
+        Preconditions.checkState(handleAt.length < MAXIMUM_CAPACITY, "Too many elements");
+        handleAt = new int[handleAt.length * 2];
+        handleAt[0] = BASE;
+        spread(0, handleAt.length, count);
+    }
+
+    private int occupied(int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (handleAt[i] != EMPTY) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Spreads the nodes of a window evenly over it. The nodes of a window are consecutive in the list, so they are
+     * found by following the links from the first one, which includes the new node that has no slot yet.
+     */
+    private void spread(int low, int high, int count) {
+        int node = EMPTY;
+        for (int i = low; node == EMPTY; i++) {
+            node = handleAt[i];
+        }
+        Arrays.fill(handleAt, low, high, EMPTY);
+        final long width = high - low;
+        for (int i = 0; i < count; i++) {
+            place(node, low + (int) (i * width / count));
+            node = next[node];
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("[");
+        for (int node = next[BASE]; node != BASE; node = next[node]) {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(node);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,362 @@
+package edu.bath.transitivityutils;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * A (transitive, reflexive) binary relation over a dense domain of non-negative ints.
+ *
+ * <p>This is a specialization of the relation created by {@link Relations#newTransitiveRelation()}, using the same
+ * interval labeling scheme, but keeping all per-element state in arrays indexed by the elements themselves: the
+ * pre- and post-order nodes in an {@link IntOrderList}, the direct relationships as int adjacency arrays and
+ * the interval sets as sorted arrays of node handles. Memory usage is proportional to the largest element related,
+ * so the domain should be compact, e.g. indices into a list.
+ *
+ * <p>The {@link TransitiveRelation} methods box and unbox their arguments; use the {@code int} overloads to avoid that.
+ *
+ * @see Relations#newIntTransitiveRelation()
+ */
+public final class IntTransitiveRelation implements TransitiveRelation<Integer> {
+    private static final int NONE = -1;
+
+    private final IntOrderList magicList = IntOrderList.create();
+
+    private int[] pre = new int[0];
+    private int[] post = new int[0];
+    private boolean[] enclosable = new boolean[0];
+    private IntIntervalSet[] intervalSets = new IntIntervalSet[0];
+
+    private int[][] direct = new int[0][];
+    private int[] directCount = new int[0];
+    private int domainSize = 0;
+
+    private int[] queue = new int[16];
+    private int[] visited = new int[0];
+    private int propagation = 0;
+
+    private final Navigator<Integer> navigator = new DirectNavigator();
+
+    IntTransitiveRelation() { }
+
+    public void relate(Integer subject, Integer object) {
+        relate(subject.intValue(), object.intValue());
+    }
+
+    public void relate(int subject, int object) {
+        Preconditions.checkArgument(subject >= 0 && object >= 0, "Negative element");
+        if (subject == object) {
+            return;
+        }
+        ensureCapacity(Math.max(subject, object) + 1);
+
+        if (isNew(subject)) {
+            if (isNew(object)) {
+                create(subject);
+                createEnclosing(subject, object);
+            } else {
+                createEnclosed(object, subject);
+            }
+        } else {
+            if (isEnclosable(subject) && isNew(object)) {
+                createEnclosing(subject, object);
+            } else {
+                if (isNew(object)) {
+                    create(object);
+                }
+                propagate(subject, object);
+            }
+        }
+        addDirect(subject, object);
+    }
+
+    public boolean areRelated(Integer subject, Integer object) {
+        return areRelated(subject.intValue(), object.intValue());
+    }
+
+    public boolean areRelated(int subject, int object) {
+        if (subject == object) return true;
+        if (subject < 0 || object < 0 || subject >= pre.length || object >= pre.length) return false;
+        if (isNew(subject) || isNew(object)) return false;
+        return intervalSets[object].contains(magicList, pre[subject]);
+    }
+
+    public Navigator<Integer> direct() {
+        return navigator;
+    }
+
+    /**
+     * Creates an immutable snapshot of this relation, which can be shared by concurrent readers.
+     *
+     * @see Relations#freeze(TransitiveRelation)
+     */
+    public FrozenTransitiveRelation<Integer> freeze() {
+        final List<Integer> values = Lists.newArrayList();
+        int intervalCount = 0;
+        int directCountTotal = 0;
+        final int[] indices = new int[pre.length];
+        for (int element = 0; element < pre.length; element++) {
+            if (!isNew(element)) {
+                indices[element] = values.size();
+                values.add(element);
+                intervalCount += intervalSets[element].size();
+                directCountTotal += directCount[element];
+            }
+        }
+
+        final int size = values.size();
+        final long[] preTags = new long[size];
+        final int[] intervalOffsets = new int[size + 1];
+        final long[] intervals = new long[intervalCount];
+        final int[] directOffsets = new int[size + 1];
+        final int[] directTargets = new int[directCountTotal];
+        for (int i = 0, intervalIndex = 0, directIndex = 0; i < size; i++) {
+            final int element = values.get(i);
+            preTags[i] = magicList.tag(pre[element]);
+
+            final IntIntervalSet intervalSet = intervalSets[element];
+            intervalOffsets[i] = intervalIndex;
+            for (int j = 0; j < intervalSet.size(); j++) {
+                intervals[intervalIndex++] = magicList.tag(intervalSet.get(j));
+            }
+            directOffsets[i] = directIndex;
+            for (int j = 0; j < directCount[element]; j++) {
+                directTargets[directIndex++] = indices[direct[element][j]];
+            }
+            intervalOffsets[i + 1] = intervalIndex;
+            directOffsets[i + 1] = directIndex;
+        }
+        return new FrozenTransitiveRelation<Integer>(values, preTags, intervalOffsets, intervals, directOffsets, directTargets);
+    }
+
+    /**
+     * Returns whether the specified element has been related to or from any other element.
+     */
+    public boolean contains(int element) {
+        return element >= 0 && element < pre.length && !isNew(element);
+    }
+
+    private boolean isNew(int element) {
+        return pre[element] == NONE;
+    }
+
+    private void propagate(int subject, int object) {
+        final IntIntervalSet subjectIntervals = intervalSets[subject];
+        if (++propagation == 0) { //wrapped around; resetting the marks of past propagations
+            Arrays.fill(visited, 0);
+            propagation = 1;
+        }
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = object;
+        while (head < tail) {
+            final int current = queue[head++];
+            if (visited[current] == propagation) { //already holds the intervals of the subject
+                continue;
+            }
+            visited[current] = propagation;
+            final IntIntervalSet currentIntervals = intervalSets[current];
+            if (!currentIntervals.containsAll(magicList, subjectIntervals)) { //this gracefully handles cycles
+                currentIntervals.addIntervals(magicList, subjectIntervals);
+                final int[] next = direct[current];
+                final int count = directCount[current];
+                if (tail + count > queue.length) {
+                    //compacting the visited part of the queue before growing it
+                    System.arraycopy(queue, head, queue, 0, tail - head);
+                    tail -= head;
+                    head = 0;
+                    if (tail + count > queue.length) {
+                        queue = Arrays.copyOf(queue, Math.max(queue.length * 2, tail + count));
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    queue[tail++] = next[i];
+                }
+            }
+        }
+    }
+
+    private boolean isEnclosable(int element) {
+        boolean isEnclosable = enclosable[element];
+        if (isEnclosable) {
+            isEnclosable = intervalSets[element].size() == 2; //otherwise, this node has been tainted
+            //with foreign intervals, and it can never be enclosable
+            if (!isEnclosable) enclosable[element] = false;
+        }
+        return isEnclosable;
+    }
+
+    private void create(int element) {
+        final int newPre = magicList.addAfter(magicList.previous(magicList.base()));
+        final int newPost = magicList.addAfter(newPre);
+        register(element, newPre, newPost, true);
+    }
+
+    private void createEnclosing(int enclosed, int element) {
+        final int newPre = magicList.addAfter(magicList.previous(pre[enclosed]));
+        final int newPost = magicList.addAfter(post[enclosed]);
+        enclosable[enclosed] = false;
+        register(element, newPre, newPost, true);
+    }
+
+    //Note that in this case the created node cannot be enclosed; it is created already enclosed
+    private void createEnclosed(int enclosing, int element) {
+        final int newPre = magicList.addAfter(magicList.previous(post[enclosing]));
+        final int newPost = magicList.addAfter(newPre);
+        register(element, newPre, newPost, false);
+    }
+
+    private void register(int element, int newPre, int newPost, boolean isEnclosable) {
+        pre[element] = newPre;
+        post[element] = newPost;
+        enclosable[element] = isEnclosable;
+        final IntIntervalSet intervals = new IntIntervalSet();
+        intervals.addInterval(magicList, newPre, newPost);
+        intervalSets[element] = intervals;
+    }
+
+    private void addDirect(int subject, int object) {
+        int[] related = direct[subject];
+        final int count = directCount[subject];
+        for (int i = 0; i < count; i++) {
+            if (related[i] == object) {
+                return;
+            }
+        }
+        if (related == null) {
+            related = direct[subject] = new int[2];
+        } else if (count == related.length) {
+            related = direct[subject] = Arrays.copyOf(related, count * 2);
+        }
+        related[count] = object;
+        directCount[subject] = count + 1;
+        if (count == 0) {
+            domainSize++;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= pre.length) {
+            return;
+        }
+        final int oldCapacity = pre.length;
+        final int newCapacity = Math.max(capacity, oldCapacity + (oldCapacity >> 1) + 8);
+        pre = Arrays.copyOf(pre, newCapacity);
+        post = Arrays.copyOf(post, newCapacity);
+        Arrays.fill(pre, oldCapacity, newCapacity, NONE);
+        Arrays.fill(post, oldCapacity, newCapacity, NONE);
+        enclosable = Arrays.copyOf(enclosable, newCapacity);
+        intervalSets = Arrays.copyOf(intervalSets, newCapacity);
+        direct = Arrays.copyOf(direct, newCapacity);
+        directCount = Arrays.copyOf(directCount, newCapacity);
+        visited = Arrays.copyOf(visited, newCapacity);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("{");
+        for (int element = 0; element < pre.length; element++) {
+            if (!isNew(element)) {
+                if (sb.length() > 1) sb.append(", ");
+                sb.append(element).append('=').append(intervalSets[element]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    private class DirectNavigator implements Navigator<Integer> {
+        public Set<Integer> related(final Integer subject) {
+            return new AbstractSet<Integer>() {
+                @Override
+                public boolean contains(Object o) {
+                    if (!(o instanceof Integer) || !inDomain(subject)) return false;
+                    final int object = (Integer) o;
+                    final int[] related = direct[subject];
+                    for (int i = 0; i < directCount[subject]; i++) {
+                        if (related[i] == object) return true;
+                    }
+                    return false;
+                }
+
+                @Override
+                public Iterator<Integer> iterator() {
+                    final int count = (inDomain(subject) ? directCount[subject] : 0);
+                    return new Iterator<Integer>() {
+                        private int index = 0;
+
+                        public boolean hasNext() {
+                            return index < count;
+                        }
+
+                        public Integer next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            return direct[subject][index++];
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return (inDomain(subject) ? directCount[subject] : 0);
+                }
+            };
+        }
+
+        public Set<Integer> domain() {
+            return new AbstractSet<Integer>() {
+                @Override
+                public boolean contains(Object o) {
+                    return (o instanceof Integer) && inDomain((Integer) o);
+                }
+
+                @Override
+                public Iterator<Integer> iterator() {
+                    return new Iterator<Integer>() {
+                        private int element = advance(0);
+
+                        private int advance(int from) {
+                            while (from < directCount.length && directCount[from] == 0) {
+                                from++;
+                            }
+                            return from;
+                        }
+
+                        public boolean hasNext() {
+                            return element < directCount.length;
+                        }
+
+                        public Integer next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            final int current = element;
+                            element = advance(element + 1);
+                            return current;
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return domainSize;
+                }
+            };
+        }
+
+        private boolean inDomain(Integer element) {
+            return element != null && element >= 0 && element < directCount.length && directCount[element] > 0;
+        }
+    }
+}
@@ -11,6 +11,10 @@ import edu.bath.transitivityutils.OrderList.Node;
 
 /**
  * An interval set that supports adding intervals and testing whether a node belongs in any of them.
+ *
+ * <p>Queries compare the {@linkplain OrderList.Node#tag() tags} of the nodes directly, skipping the validity checks of
+ * {@link OrderList.Node#precedes(OrderList.Node)}: the nodes held by an interval set must not be deleted while they
+ * are in it, and a queried node must be valid when it is passed in.
  * 
  * @author Andreou Dimitris, email: jim.andreou (at) gmail.com
  */
@@ -24,6 +28,13 @@ final class MergingIntervalSet {
         return size;
     }
     
+    /**
+     * Returns the pre node (at even indices) or post node (at odd indices) of an interval, in order.
+     */
+    Node<?> get(int index) {
+        return array[index];
+    }
+
     void addIntervals(MergingIntervalSet other) {
         for (int i = 0; i < other.size; i += 2) {
             addInterval(other.array[i], other.array[i + 1]);
@@ -120,14 +131,13 @@ final class MergingIntervalSet {
         if (node == null) {
             throw new IllegalArgumentException("null");
         }
+        final long tag = node.tag();
         int i = 0;
         while (i < size) {
-            Node<?> left = array[i++];
-            if (node.precedes(left)) {
+            if (tag < array[i++].tag()) {
                 return false;
             }
-            Node<?> right = array[i++];
-            if (node.precedes(right) || node == right) {
+            if (tag <= array[i++].tag()) {
                 return true;
             }
         }
@@ -148,22 +158,18 @@ final class MergingIntervalSet {
     boolean containsAll(MergingIntervalSet other) {
         if (this.size == 0) return other.size == 0;
         int thisIndex = 0;
-        Node<?> thisLeft = this.array[thisIndex];
-        Node<?> thisRight = this.array[thisIndex + 1];
+        long thisLeft = this.array[thisIndex].tag();
+        long thisRight = this.array[thisIndex + 1].tag();
         for (int thatIndex = 0; thatIndex < other.size; thatIndex += 2) {
-            Node<?> otherLeft = other.array[thatIndex];
-            Node<?> otherRight = other.array[thatIndex + 1];
-            while (true) {
-                if ((thisLeft.precedes(otherLeft) || thisLeft == otherLeft) &&
-                    (otherRight.precedes(thisRight) || otherRight == thisRight)) {
-                    break;
-                }
+            long otherLeft = other.array[thatIndex].tag();
+            long otherRight = other.array[thatIndex + 1].tag();
+            while (thisLeft > otherLeft || otherRight > thisRight) {
                 thisIndex += 2;
                 if (thisIndex == this.size) {
                     return false; //could not find an interval that contains otherLeft and otherRight
                 }
-                thisLeft = this.array[thisIndex];
-                thisRight = this.array[thisIndex + 1];
+                thisLeft = this.array[thisIndex].tag();
+                thisRight = this.array[thisIndex + 1].tag();
             }
         }
         return true;
@@ -172,10 +178,9 @@ final class MergingIntervalSet {
     private static class NodeComparator implements Comparator<OrderList.Node<?>> {
         static final NodeComparator INSTANCE = new NodeComparator();
         public int compare(Node<?> o1, Node<?> o2) {
-            if (o1 == o2) 
-                return 0; 
-            else 
-                return o1.precedes(o2) ? -1 : 1;
+            final long t1 = o1.tag();
+            final long t2 = o2.tag();
+            return (t1 < t2 ? -1 : (t1 == t2 ? 0 : 1));
         }
     }
 
@@ -297,6 +297,14 @@ public final class OrderList<E> implements Iterable<OrderList.Node<E>>, Serializ
             return tag < n.tag;
         }
 
+        /**
+         * Returns the current label of this node. Labels grow in list order, but change whenever the list
+         * is relabeled, so they are only meaningful until the next insertion.
+         */
+        final long tag() {
+            return tag;
+        }
+
         /**
          * Returns {@code true} is this node is not deleted, {@code false} otherwise.
          */
@@ -26,6 +26,39 @@ public final class Relations {
         return new DefaultTransitiveRelation<E>();
     }
 
+    /**
+     * Creates a new transitive relation holding all particular relationships found in the specified navigator.
+     * The result is equivalent to {@linkplain #merge(TransitiveRelation, Navigator) merging} the navigator into
+     * a {@linkplain #newTransitiveRelation() new relation}, and the created relation can be related further.
+     *
+     * <p>If the relationships of the navigator are acyclic, the relation is built in bulk: the elements are
+     * ordered topologically and the interval set of each element is passed on to its directly related elements
+     * once, instead of being propagated anew for every relationship. Otherwise, this falls back to merging the
+     * relationships one by one.
+     *
+     * @param navigator a navigator
+     */
+    public static <E> TransitiveRelation<E> newTransitiveRelation(Navigator<E> navigator) {
+        Preconditions.checkNotNull(navigator);
+        final TransitiveRelation<E> relation = DefaultTransitiveRelation.createAcyclic(navigator);
+        if (relation != null) {
+            return relation;
+        }
+        final TransitiveRelation<E> cyclic = newTransitiveRelation();
+        merge(cyclic, navigator);
+        return cyclic;
+    }
+
+    /**
+     * Creates a new, empty, transitive relation over a dense domain of non-negative ints, which keeps its
+     * state in arrays indexed by the elements instead of hash maps of node objects.
+     *
+     * <p>The created relation is not serializable.
+     */
+    public static IntTransitiveRelation newIntTransitiveRelation() {
+        return new IntTransitiveRelation();
+    }
+
     /**
      * Creates a new, empty, bidirectional transitive relation.
      *
@@ -36,6 +69,36 @@ public final class Relations {
         return new DefaultTransitiveBiRelation<E>();
     }
 
+    /**
+     * Creates an immutable snapshot of a transitive relation, which answers {@link TransitiveRelation#areRelated(Object, Object)}
+     * with a binary search over flat arrays. Unlike the relations created by this class, the snapshot is thread-safe
+     * and can be shared by any number of concurrent readers without locking. Later changes of the specified relation
+     * are not reflected in the snapshot.
+     *
+     * <p>Snapshots of the relations created by {@link #newTransitiveRelation()} and {@link #newIntTransitiveRelation()}
+     * are taken directly from their interval labels; any other relation is rebuilt from its {@link TransitiveRelation#direct()
+     * direct} relationships first.
+     *
+     * @param relation the transitive relation
+     * @return an immutable snapshot of the transitive relation
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> FrozenTransitiveRelation<E> freeze(TransitiveRelation<E> relation) {
+        Preconditions.checkNotNull(relation);
+        if (relation instanceof FrozenTransitiveRelation) {
+            return (FrozenTransitiveRelation<E>) relation;
+        }
+        if (relation instanceof DefaultTransitiveRelation) {
+            return ((DefaultTransitiveRelation<E>) relation).freeze();
+        }
+        if (relation instanceof IntTransitiveRelation) {
+            return (FrozenTransitiveRelation<E>) (FrozenTransitiveRelation<?>) ((IntTransitiveRelation) relation).freeze();
+        }
+        final DefaultTransitiveRelation<E> copy = new DefaultTransitiveRelation<E>();
+        merge(copy, relation.direct());
+        return copy.freeze();
+    }
+
     /**
      * Creates an unmodifiable view of a transitive relation. In particular, {@link TransitiveRelation#relate(Object, Object)}
      * on the view throws {@code UnsupportedOperationException}. The view is also {@link Serializable}.
@@ -0,0 +1,47 @@
+package de.faustedition.document;
+
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentTrigramTest {
+
+	@Test
+	public void padsBothEnds() {
+		final Set<String> trigrams = Document.trigrams("ab");
+		assertEquals(4, trigrams.size());
+		assertTrue(trigrams.contains("^^a"));
+		assertTrue(trigrams.contains("^ab"));
+		assertTrue(trigrams.contains("ab$"));
+		assertTrue(trigrams.contains("b$$"));
+	}
+
+	@Test
+	public void lastCharacterIsTrigramPrefix() {
+		assertTrue(isTrigramPrefix(Document.trigrams("ab"), "b"));
+		assertTrue(isTrigramPrefix(Document.trigrams("b"), "b"));
+	}
+
+	@Test
+	public void everyShortInfixIsTrigramPrefix() {
+		final String identifier = "gsa_390883";
+		final Set<String> trigrams = Document.trigrams(identifier);
+		for (int start = 0; start < identifier.length(); start++) {
+			for (int end = start + 1; end <= Math.min(identifier.length(), start + 2); end++) {
+				assertTrue(identifier.substring(start, end), isTrigramPrefix(trigrams, identifier.substring(start, end)));
+			}
+		}
+	}
+
+	private static boolean isTrigramPrefix(Set<String> trigrams, String infix) {
+		for (String trigram : trigrams) {
+			if (trigram.startsWith(infix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,121 @@
+package de.faustedition.facsimile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FacsimileTileArchiveTest {
+
+	private static final int WIDTH = FacsimileTile.SIZE + FacsimileTile.SIZE / 2;
+	private static final int HEIGHT = FacsimileTile.SIZE + 1;
+
+	private File source;
+	private File archive;
+
+	@Before
+	public void writeSource() throws IOException {
+		source = File.createTempFile("facsimile-tile-archive-test", ".png");
+		archive = File.createTempFile("facsimile-tile-archive-test", ".tiles");
+		final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				image.setRGB(x, y, (x * 255 / WIDTH) << 16 | (y * 255 / HEIGHT) << 8);
+			}
+		}
+		assertTrue(ImageIO.write(image, "PNG", source));
+	}
+
+	@After
+	public void deleteFiles() {
+		source.delete();
+		archive.delete();
+	}
+
+	@Test
+	public void writeAndOpen() throws IOException {
+		FacsimileTileArchive.write(source, archive);
+		final FacsimileTileArchive tiles = FacsimileTileArchive.open(archive);
+
+		assertTrue(tiles.isCurrent(source));
+		assertTrue(tiles.isOpen());
+		assertEquals(1, tiles.getLevels());
+		assertEquals(WIDTH, tiles.getWidth(0));
+		assertEquals(HEIGHT, tiles.getHeight(0));
+		assertEquals(FacsimileTile.SIZE, tiles.getTileSize());
+
+		assertTileSize(tiles.getTile(0, 0, 0), FacsimileTile.SIZE, FacsimileTile.SIZE);
+		assertTileSize(tiles.getTile(0, 1, 0), FacsimileTile.SIZE / 2, FacsimileTile.SIZE);
+		assertTileSize(tiles.getTile(0, 0, 1), FacsimileTile.SIZE, 1);
+		assertTileSize(tiles.getTile(0, 1, 1), FacsimileTile.SIZE / 2, 1);
+
+		assertNull(tiles.getTile(0, 2, 0));
+		assertNull(tiles.getTile(0, 0, 2));
+		assertNull(tiles.getTile(1, 0, 0));
+		assertNull(tiles.getTile(-1, 0, 0));
+	}
+
+	@Test
+	public void rejectsTruncatedArchives() throws IOException {
+		FacsimileTileArchive.write(source, archive);
+		final byte[] contents = read(archive);
+
+		// within the header, the level descriptions, the tile index and the tile data respectively
+		for (int length : new int[] { 0, 16, 40, 60, contents.length - 1 }) {
+			write(archive, contents, length);
+			try {
+				FacsimileTileArchive.open(archive);
+				fail("Archive truncated to " + length + " bytes has been opened");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	private static void assertTileSize(ByteBuffer tile, int width, int height) throws IOException {
+		assertNotNull(tile);
+		final byte[] data = new byte[tile.remaining()];
+		tile.get(data);
+		final BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+		assertNotNull(image);
+		assertEquals(width, image.getWidth());
+		assertEquals(height, image.getHeight());
+	}
+
+	private static byte[] read(File file) throws IOException {
+		final byte[] contents = new byte[(int) file.length()];
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < contents.length) {
+				read += in.read(contents, read, contents.length - read);
+			}
+		} finally {
+			in.close();
+		}
+		return contents;
+	}
+
+	private static void write(File file, byte[] contents, int length) throws IOException {
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(contents, 0, length);
+		} finally {
+			out.close();
+		}
+	}
+}
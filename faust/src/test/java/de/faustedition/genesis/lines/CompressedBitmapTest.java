@@ -0,0 +1,105 @@
+package de.faustedition.genesis.lines;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedBitmapTest {
+
+	@Test
+	public void unionAndIntersection() {
+		final CompressedBitmap a = CompressedBitmap.of(1, 5, 70000);
+		final CompressedBitmap b = CompressedBitmap.of(5, 6, 70000, 140000);
+
+		assertArrayEquals(new int[] { 1, 5, 6, 70000, 140000 }, a.or(b).toArray());
+		assertArrayEquals(new int[] { 5, 70000 }, a.and(b).toArray());
+		assertTrue(a.contains(70000));
+		assertFalse(a.contains(6));
+		assertFalse(a.contains(-1));
+		assertTrue(CompressedBitmap.of(1).and(CompressedBitmap.of(2)).isEmpty());
+		assertEquals(CompressedBitmap.EMPTY, CompressedBitmap.union(Arrays.<CompressedBitmap>asList()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnorderedValues() {
+		CompressedBitmap.of(5, 1);
+	}
+
+	@Test
+	public void matchesBitSet() throws IOException {
+		final Random random = new Random(42);
+		for (int round = 0; round < 20; round++) {
+			final BitSet x = randomBits(random);
+			final BitSet y = randomBits(random);
+			final CompressedBitmap a = CompressedBitmap.of(x);
+			final CompressedBitmap b = CompressedBitmap.of(y);
+
+			final BitSet union = (BitSet) x.clone();
+			union.or(y);
+			final BitSet intersection = (BitSet) x.clone();
+			intersection.and(y);
+
+			assertEquals(x.cardinality(), a.cardinality());
+			assertEquals(CompressedBitmap.of(union), a.or(b));
+			assertEquals(CompressedBitmap.of(intersection), a.and(b));
+			assertEquals(intersection.cardinality(), a.and(b).cardinality());
+			assertEquals(a, roundTrip(a));
+		}
+	}
+
+	@Test
+	public void unionOfManySparseBitmaps() {
+		final Random random = new Random(42);
+		final List<CompressedBitmap> bitmaps = Lists.newArrayList();
+		final BitSet union = new BitSet();
+		for (int round = 0; round < 100; round++) {
+			final BitSet bits = new BitSet();
+			for (int i = 0; i < 100; i++) {
+				bits.set(random.nextInt(140000));
+			}
+			union.or(bits);
+			bitmaps.add(CompressedBitmap.of(bits));
+		}
+		final CompressedBitmap dense = CompressedBitmap.of(randomBits(new Random(0)));
+		final CompressedBitmap denseCopy = CompressedBitmap.of(randomBits(new Random(0)));
+		bitmaps.add(dense);
+		union.or(randomBits(new Random(0)));
+
+		assertEquals(CompressedBitmap.of(union), CompressedBitmap.union(bitmaps));
+		assertEquals(union.cardinality(), CompressedBitmap.union(bitmaps).cardinality());
+		assertEquals(denseCopy, dense);
+	}
+
+	private static BitSet randomBits(Random random) {
+		final BitSet bits = new BitSet();
+		final int dense = random.nextInt(3);
+		for (int i = 0; i < 200000; i++) {
+			if (random.nextInt(dense == 0 ? 2 : 1000) == 0) {
+				bits.set(i);
+			}
+		}
+		return bits;
+	}
+
+	private static CompressedBitmap roundTrip(CompressedBitmap bitmap) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		bitmap.write(out);
+		out.close();
+		return CompressedBitmap.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+}
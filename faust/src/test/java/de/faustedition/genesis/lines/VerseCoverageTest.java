@@ -0,0 +1,107 @@
+package de.faustedition.genesis.lines;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VerseCoverageTest {
+
+	@Test
+	public void countsMaterialUnitsPerRange() {
+		final VerseCoverage coverage = VerseCoverage.build(Arrays.asList(
+				new IndexedVerseInterval(10, 20, 1, 100),
+				new IndexedVerseInterval(30, 40, 1, 100),
+				new IndexedVerseInterval(15, 35, 2, 200),
+				new IndexedVerseInterval(50, 50, 3, 300)));
+
+		assertEquals(3, coverage.getMaterialUnitCount());
+		assertEquals(1, coverage.count(10, 14));
+		assertEquals(2, coverage.count(15, 15));
+		assertEquals(2, coverage.count(21, 30));
+		assertEquals(3, coverage.count(0, 100));
+		assertEquals(0, coverage.count(41, 49));
+		assertEquals(1, coverage.count(50));
+		assertEquals(0, coverage.count(51));
+		assertEquals(0, coverage.count(-1));
+
+		final CompressedBitmap covering = coverage.covering(36, 50);
+		assertEquals(2, covering.cardinality());
+		for (int mu : covering.toArray()) {
+			assertTrue(coverage.getMaterialUnitId(mu) == 100 || coverage.getMaterialUnitId(mu) == 300);
+		}
+
+		assertEquals(2, coverage.coveringAll(15, 20).cardinality());
+		assertEquals(1, coverage.coveringAll(15, 30).cardinality());
+		assertEquals(0, coverage.coveringAll(15, 50).cardinality());
+		assertEquals(3, coverage.coveringScene(new SimpleVerseInterval("Scene", 20, 51)).cardinality());
+		assertEquals(2, coverage.coveringScene(new SimpleVerseInterval("Scene", 20, 50)).cardinality());
+	}
+
+	@Test
+	public void readsWhatItWrites() throws IOException {
+		final List<IndexedVerseInterval> intervals = Arrays.asList(
+				new IndexedVerseInterval(10, 20, 1, 100),
+				new IndexedVerseInterval(15, 35, 2, 200));
+		final VerseCoverage coverage = VerseCoverage.build(intervals);
+		final File file = File.createTempFile("verse-", ".coverage");
+		try {
+			coverage.write(file);
+			final VerseCoverage read = VerseCoverage.read(file);
+			assertEquals(coverage.getFingerprint(), read.getFingerprint());
+			assertEquals(VerseCoverage.fingerprint(Lists.reverse(intervals)), read.getFingerprint());
+			assertEquals(coverage.covering(0, 100), read.covering(0, 100));
+			assertEquals(2, read.count(17));
+			for (int mu = 0; mu < read.getMaterialUnitCount(); mu++) {
+				final IndexedVerseInterval interval = read.getIntervals(mu).get(0);
+				assertEquals(read.getMaterialUnitId(mu), interval.getMaterialUnitId());
+				assertEquals(interval.getMaterialUnitId() / 100, interval.getTranscriptId());
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void ordersIntervalsPerMaterialUnit() {
+		final VerseCoverage coverage = VerseCoverage.build(Arrays.asList(
+				new IndexedVerseInterval(30, 40, 1, 100),
+				new IndexedVerseInterval(10, 20, 1, 100)));
+		final List<IndexedVerseInterval> intervals = coverage.getIntervals(0);
+		assertEquals(2, intervals.size());
+		assertEquals(10, intervals.get(0).getStart());
+		assertEquals(30, intervals.get(1).getStart());
+	}
+
+	@Test
+	public void matchesIntervalIndex() {
+		final Random random = new Random(42);
+		final VerseIntervalIndex index = new VerseIntervalIndex();
+		for (int i = 0; i < 1000; i++) {
+			final int start = random.nextInt(12000);
+			index.add(new IndexedVerseInterval(start, start + random.nextInt(300), i, random.nextInt(200)));
+		}
+		final VerseCoverage coverage = VerseCoverage.build(index.overlapping(Integer.MIN_VALUE, Integer.MAX_VALUE));
+
+		for (int q = 0; q < 200; q++) {
+			final int start = random.nextInt(12500);
+			final int end = start + random.nextInt(500);
+			final BitSet expected = new BitSet();
+			for (IndexedVerseInterval interval : index.overlapping(start, end)) {
+				expected.set((int) interval.getMaterialUnitId());
+			}
+			assertEquals(expected.cardinality(), coverage.count(start, end));
+			for (int mu : coverage.covering(start, end).toArray()) {
+				assertTrue(expected.get((int) coverage.getMaterialUnitId(mu)));
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package de.faustedition.genesis.lines;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class VerseIntervalIndexTest {
+
+	@Test
+	public void overlapIsInclusive() {
+		final VerseIntervalIndex index = new VerseIntervalIndex();
+		index.add(new IndexedVerseInterval(10, 20, 1, 100));
+		index.add(new IndexedVerseInterval(21, 30, 1, 100));
+		index.add(new IndexedVerseInterval(5, 9, 2, 200));
+
+		assertEquals(1, index.overlapping(20, 20).size());
+		assertEquals(2, index.overlapping(20, 21).size());
+		assertEquals(3, index.overlapping(0, 100).size());
+		assertTrue(index.overlapping(31, 40).isEmpty());
+		assertEquals(200, index.overlapping(9, 9).get(0).getMaterialUnitId());
+	}
+
+	@Test
+	public void removeTranscript() {
+		final VerseIntervalIndex index = new VerseIntervalIndex();
+		index.add(new IndexedVerseInterval(10, 20, 1, 100));
+		index.add(new IndexedVerseInterval(15, 25, 2, 200));
+		assertEquals(2, index.overlapping(15, 15).size());
+
+		index.removeTranscript(1);
+		final List<IndexedVerseInterval> result = index.overlapping(15, 15);
+		assertEquals(1, result.size());
+		assertEquals(2, result.get(0).getTranscriptId());
+	}
+
+	@Test
+	public void matchesLinearScan() {
+		final Random random = new Random(42);
+		final VerseIntervalIndex index = new VerseIntervalIndex();
+		final int[][] intervals = new int[1000][];
+		for (int i = 0; i < intervals.length; i++) {
+			final int start = random.nextInt(12000);
+			intervals[i] = new int[] { start, start + random.nextInt(300) };
+			index.add(new IndexedVerseInterval(intervals[i][0], intervals[i][1], i, i));
+		}
+
+		for (int q = 0; q < 200; q++) {
+			final int start = random.nextInt(12500);
+			final int end = start + random.nextInt(500);
+			int expected = 0;
+			for (int[] interval : intervals) {
+				if (interval[0] <= end && interval[1] >= start) {
+					expected++;
+				}
+			}
+			final List<IndexedVerseInterval> result = index.overlapping(start, end);
+			assertEquals(expected, result.size());
+			for (int i = 1; i < result.size(); i++) {
+				assertTrue(result.get(i - 1).getStart() <= result.get(i).getStart());
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package de.faustedition.reasoning;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Evaluates the relation predicates over all pairs of a set of inscriptions shaped like those of Faust II, comparing
+ * {@link Inscription} with the boxed {@link TreeSet} representation it replaced.
+ * <p/>
+ * Without a database at hand, the inscriptions are generated: each covers a few runs of verses within lines 4613 to
+ * 12111, from single verses on loose sheets to whole acts in fair copies.
+ */
+class InscriptionBenchmark {
+
+	private static final int FIRST_LINE = 4613;
+	private static final int LAST_LINE = 12111;
+	private static final double COMMON_RATIO = 0.4;
+
+	public static void main(String[] args) {
+		final int count = (args.length > 0 ? Integer.parseInt(args[0]) : 400);
+
+		final Random random = new Random(0);
+		final List<Inscription> inscriptions = Lists.newArrayListWithCapacity(count);
+		final List<TreeSet<Integer>> legacy = Lists.newArrayListWithCapacity(count);
+		for (int i = 0; i < count; i++) {
+			final Inscription inscription = new Inscription(Integer.toString(i));
+			final TreeSet<Integer> lines = new TreeSet<Integer>();
+			final int runs = 1 + random.nextInt(4);
+			final int length = (random.nextInt(10) == 0 ? 1000 + random.nextInt(2000) : 1 + random.nextInt(60));
+			for (int r = 0; r < runs; r++) {
+				final int from = FIRST_LINE + random.nextInt(LAST_LINE - FIRST_LINE - length);
+				inscription.addInterval(from, from + length - 1);
+				for (int line = from; line < from + length; line++) {
+					lines.add(line);
+				}
+			}
+			inscriptions.add(inscription);
+			legacy.add(lines);
+		}
+
+		for (int round = 0; round < 3; round++) {
+			long legacyChecksum = 0;
+			long legacyTime = -System.nanoTime();
+			for (TreeSet<Integer> i : legacy) {
+				for (TreeSet<Integer> j : legacy) {
+					final int intersection = Sets.intersection(i, j).size();
+					if (intersection >= COMMON_RATIO * i.size() && intersection >= COMMON_RATIO * j.size()) {
+						legacyChecksum++;
+					}
+					final boolean spans = i.first() < j.first() && i.last() > j.last();
+					if (spans && intersection == 0) {
+						legacyChecksum += 2;
+					}
+					if (spans && i.containsAll(j)) {
+						legacyChecksum += 4;
+					}
+				}
+			}
+			legacyTime += System.nanoTime();
+
+			long checksum = 0;
+			long time = -System.nanoTime();
+			for (Inscription i : inscriptions) {
+				for (Inscription j : inscriptions) {
+					if (InscriptionRelations.areParadigmaticallyRelated(i, j)) {
+						checksum++;
+					}
+					if (InscriptionRelations.exclusivelyContains(i, j)) {
+						checksum += 2;
+					}
+					if (InscriptionRelations.paradigmaticallyContains(i, j)) {
+						checksum += 4;
+					}
+				}
+			}
+			time += System.nanoTime();
+
+			System.out.println(count + " inscriptions: TreeSet " + (legacyTime / 1000000) + "ms (" + legacyChecksum
+					+ "), ranges " + (time / 1000000) + "ms (" + checksum + ")");
+		}
+	}
+}
@@ -1,12 +1,20 @@
 package de.faustedition.reasoning;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
+
+import edu.bath.transitivityutils.Relations;
+import edu.bath.transitivityutils.TransitiveRelation;
+
 public class InscriptionRelationTest {
 
 	private Inscription inscriptionA;
@@ -48,4 +56,51 @@ public class InscriptionRelationTest {
 		assertTrue(InscriptionRelations.covers(this.inscriptionD, this.inscriptionA));
 		assertFalse(InscriptionRelations.covers(this.inscriptionB, this.inscriptionA));
 	}
+
+	@Test
+	public void testRelateAll() {
+		final Random random = new Random(0);
+		final List<Inscription> inscriptions = Lists.newArrayList();
+		for (int i = 0; i < 60; i++) {
+			final Inscription inscription = new Inscription(Integer.toString(i));
+			for (int k = random.nextInt(3); k >= 0; k--) {
+				final int from = random.nextInt(200);
+				inscription.addInterval(from, from + random.nextInt(random.nextBoolean() ? 5 : 80));
+			}
+			inscriptions.add(inscription);
+		}
+		final Inscription sameFirstLine = new Inscription("same first line");
+		sameFirstLine.addInterval(inscriptions.get(0).first(), inscriptions.get(0).last() + 10);
+		inscriptions.add(sameFirstLine);
+
+		final TransitiveRelation<Inscription> syn = Relations.newTransitiveRelation();
+		final TransitiveRelation<Inscription> econ = Relations.newTransitiveRelation();
+		final TransitiveRelation<Inscription> pcon = Relations.newTransitiveRelation();
+		InscriptionRelations.relateAll(inscriptions, syn, econ, pcon);
+
+		final TransitiveRelation<Inscription> allSyn = Relations.newTransitiveRelation();
+		final TransitiveRelation<Inscription> allEcon = Relations.newTransitiveRelation();
+		final TransitiveRelation<Inscription> allPcon = Relations.newTransitiveRelation();
+		for (Inscription i : inscriptions) {
+			for (Inscription j : inscriptions) {
+				if (InscriptionRelations.syntagmaticallyPrecedesByFirstLine(i, j)) {
+					allSyn.relate(i, j);
+				}
+				if (InscriptionRelations.exclusivelyContains(i, j)) {
+					allEcon.relate(i, j);
+				}
+				if (InscriptionRelations.paradigmaticallyContains(i, j)) {
+					allPcon.relate(i, j);
+				}
+			}
+		}
+
+		for (Inscription i : inscriptions) {
+			for (Inscription j : inscriptions) {
+				assertEquals(allSyn.areRelated(i, j), syn.areRelated(i, j));
+				assertEquals(allEcon.areRelated(i, j), econ.areRelated(i, j));
+				assertEquals(allPcon.areRelated(i, j), pcon.areRelated(i, j));
+			}
+		}
+	}
 }
@@ -0,0 +1,88 @@
+package de.faustedition.reasoning;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InscriptionTest {
+
+	@Test
+	public void mergesIntervals() {
+		final Inscription inscription = new Inscription("A");
+		inscription.addInterval(10, 20);
+		inscription.addInterval(30, 40);
+		inscription.addInterval(21, 29);
+		inscription.add(5);
+		inscription.add(5);
+
+		assertEquals(32, inscription.size());
+		assertEquals(5, inscription.first());
+		assertEquals(40, inscription.last());
+		assertTrue(inscription.contains(25));
+		assertFalse(inscription.contains(6));
+		assertEquals(new TreeSet<Integer>(inscription), inscription);
+		assertEquals("A", inscription.toString());
+	}
+
+	@Test
+	public void matchesTreeSet() {
+		final Random random = new Random(0);
+		for (int round = 0; round < 200; round++) {
+			final TreeSet<Integer> a = new TreeSet<Integer>();
+			final TreeSet<Integer> b = new TreeSet<Integer>();
+			final Inscription i = randomInscription(random, a);
+			final Inscription j = randomInscription(random, b);
+
+			assertEquals(a, i);
+			assertEquals(a.hashCode(), i.hashCode());
+			assertEquals(a.size(), i.size());
+			assertEquals(a.first().intValue(), i.first());
+			assertEquals(a.last().intValue(), i.last());
+			assertEquals(Arrays.asList(a.toArray()), Arrays.asList(i.toArray()));
+
+			assertEquals(Sets.intersection(a, b).size(), i.intersectionSize(j));
+			assertEquals(!Sets.intersection(a, b).isEmpty(), i.intersects(j));
+			assertEquals(a.containsAll(b), i.containsAll(j));
+			assertEquals(b.containsAll(a), j.containsAll(i));
+
+			double sum = 0;
+			for (int line : a) {
+				sum += line;
+			}
+			assertEquals(sum / a.size(), i.average(), 1e-9);
+		}
+	}
+
+	@Test
+	public void copiesContents() {
+		final Inscription original = new Inscription(Arrays.asList(1, 2, 3, 7), "A");
+		final Inscription copy = new Inscription(original, "B");
+		copy.addInterval(4, 6);
+
+		assertEquals(4, original.size());
+		assertEquals(7, copy.size());
+		assertTrue(copy.containsAll(original));
+		assertFalse(original.containsAll(copy));
+	}
+
+	private static Inscription randomInscription(Random random, TreeSet<Integer> reference) {
+		final Inscription inscription = new Inscription("I");
+		final int intervals = 1 + random.nextInt(6);
+		for (int k = 0; k < intervals; k++) {
+			final int from = random.nextInt(100);
+			final int to = from + random.nextInt(random.nextBoolean() ? 3 : 30);
+			inscription.addInterval(from, to);
+			for (int line = from; line <= to; line++) {
+				reference.add(line);
+			}
+		}
+		return inscription;
+	}
+}
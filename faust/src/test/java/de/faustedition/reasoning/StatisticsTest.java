@@ -66,4 +66,11 @@ public class StatisticsTest {
 
 	}
 
+	@Test
+	public void testRecall() {
+		assertEquals(0.5f, Statistics.recall(relB, relA, universe), delta);
+		assertEquals(1f, Statistics.recall(relA, relB, universe), delta);
+		assertEquals(0f, Statistics.recall(relD, relB, universe), delta);
+	}
+
 }
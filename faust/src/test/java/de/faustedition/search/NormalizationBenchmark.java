@@ -0,0 +1,66 @@
+package de.faustedition.search;
+
+import java.util.Random;
+
+/**
+ * Compares the single-pass {@link Normalizer} with the chain of <code>String.replace()</code> calls it replaced.
+ */
+class NormalizationBenchmark {
+
+	private static final String[] VERSES = {
+			"Habe nun, ach! Philoſophie,",
+			"Juriſterey und Medizin,",
+			"Und leider auch Theologie!",
+			"Durchaus ſtudirt, mit heißem Bemühn.",
+			"Da ſteh' ich nun, ich armer Thor!",
+			"Und bin ſo klug als wie zuvor;",
+			"Heiße Magiſter, heiße Doktor gar,",
+			"Und ziehe ſchon an die zehen Jahr,"
+	};
+
+	public static void main(String[] args) {
+		final int iterations = (args.length > 0 ? Integer.parseInt(args[0]) : 2000000);
+		final Normalizer normalizer = Normalizer.forSteps(Normalizer.DEFAULT_STEPS_NAMES);
+		final char[] buffer = new char[256];
+
+		for (int round = 0; round < 3; round++) {
+			final Random random = new Random(0);
+			long checksum = 0;
+			long legacy = -System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				checksum += legacy(VERSES[random.nextInt(VERSES.length)]).length();
+			}
+			legacy += System.nanoTime();
+
+			long singlePass = -System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				final String verse = VERSES[random.nextInt(VERSES.length)];
+				verse.getChars(0, verse.length(), buffer, 0);
+				normalizer.normalize(buffer, 0, verse.length(), buffer, 0);
+				checksum += buffer[0];
+			}
+			singlePass += System.nanoTime();
+
+			System.out.println("Legacy: " + (legacy / iterations) + "ns/verse, single pass: " + (singlePass / iterations)
+					+ "ns/verse (" + checksum + ")");
+		}
+	}
+
+	static String legacy(String text) {
+		return text
+				.toLowerCase()
+
+				.replace('.', ' ')
+				.replace(',', ' ')
+				.replace(';', ' ')
+				.replace('`', ' ')
+				.replace('!', ' ')
+
+				.replace('ſ', 's')
+				.replace('ß', 's')
+				.replace('c', 'c')
+				.replace('k', 'c')
+				.replace('z', 'c')
+				.replace('y', 'i');
+	}
+}
@@ -0,0 +1,61 @@
+package de.faustedition.search;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class NormalizerTest {
+
+	@Test
+	public void defaultSteps() {
+		final Normalizer normalizer = Normalizer.forSteps(Normalizer.DEFAULT_STEPS_NAMES);
+		assertEquals("der ceit gehst's", normalizer.normalize("Der Zeit gehſt's"));
+		assertEquals("cunst  (ihr) ", normalizer.normalize("Kunst, (ihr)!"));
+		assertEquals("grose lust", normalizer.normalize("Große Lust"));
+		assertEquals("fühlst", normalizer.normalize("Fühlst"));
+	}
+
+	@Test
+	public void umlautsAndCompatibility() {
+		final Normalizer normalizer = Normalizer.forSteps("nfkc, lower-case, umlauts");
+		assertEquals("fuhlst", normalizer.normalize("Fühlst"));
+		assertEquals("faust 2", normalizer.normalize("ＦＡＵＳＴ ²"));
+		assertEquals("ﬁ", normalizer.normalize("ﬁ"));
+		assertEquals(EnumSet.of(Normalizer.Step.NFKC, Normalizer.Step.LOWER_CASE, Normalizer.Step.UMLAUTS), normalizer.getSteps());
+		assertEquals("nfkc,lower-case,umlauts", normalizer.toString());
+	}
+
+	@Test
+	public void unicodePunctuation() {
+		final Normalizer normalizer = Normalizer.forSteps("lower-case,unicode-punctuation");
+		assertEquals("der zeit gehſt s", normalizer.normalize("Der Zeit gehſt's"));
+		assertEquals("kunst   ihr  ", normalizer.normalize("Kunst, (ihr)!"));
+		assertEquals(" euch    fest ", normalizer.normalize("„euch“ – fest?"));
+	}
+
+	@Test
+	public void preservesLength() {
+		final Normalizer normalizer = Normalizer.forSteps("nfkc,lower-case,umlauts,historic-spelling,unicode-punctuation");
+		final String text = "Habe nun, ach! Philoſophie, 𝐀 Juriſterey und Medizin";
+		final char[] buffer = text.toCharArray();
+		normalizer.normalize(buffer, 0, buffer.length, buffer, 0);
+		assertEquals(text.length(), buffer.length);
+		assertEquals(normalizer.normalize(text), new String(buffer));
+		assertEquals("habe nun  ach  philosophie  𝐀 juristerei und medicin", new String(buffer));
+	}
+
+	@Test
+	public void matchesLegacyNormalization() {
+		final Normalizer normalizer = Normalizer.forSteps(Normalizer.DEFAULT_STEPS_NAMES);
+		final String text = "Ihr naht euch wieder, schwankende Gestalten! Die früh sich einst dem trüben Blick gezeigt; "
+				+ "Versuch' ich wohl` \"euch\" diesmal — fest (zu halten)? Fühl' ich mein Herz: noch jenem Wahn geneigt?";
+		assertEquals(NormalizationBenchmark.legacy(text), normalizer.normalize(text));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnknownSteps() {
+		Normalizer.forSteps("lower-case,soundex");
+	}
+}
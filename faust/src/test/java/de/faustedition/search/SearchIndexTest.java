@@ -0,0 +1,153 @@
+package de.faustedition.search;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchIndexTest {
+
+	private File home;
+	private SearchIndex index;
+
+	@Before
+	public void open() throws Exception {
+		home = File.createTempFile("search-index-test", "");
+		assertTrue(home.delete() && home.mkdir());
+		index = open(Normalizer.DEFAULT_STEPS_NAMES);
+	}
+
+	@After
+	public void close() throws Exception {
+		if (index != null) {
+			index.destroy();
+		}
+		delete(home);
+	}
+
+	@Test
+	public void normalizedPhrases() throws IOException {
+		index.add(1, 10, "H P5", null, null, 1, "Der Zeit gehſt's nicht an", 0, 25);
+		index.add(1, 10, "H P5", null, null, 2, "Zeit der Kunst", 26, 40);
+
+		final List<SearchIndex.Hit> hits = search("\"der zeyt\"", null, 10);
+		assertEquals(1, hits.size());
+		assertEquals(1, hits.get(0).getVerse());
+	}
+
+	@Test
+	public void normalizedWildcards() throws IOException {
+		index.add(1, 10, "H P5", null, null, 1, "Der Zeit gehſt's nicht an", 0, 25);
+		index.add(1, 10, "H P5", null, null, 2, "Der Kunst", 26, 35);
+
+		assertEquals(1, search("Zeit*", null, 10).size());
+		assertEquals(1, search("Ze?t", null, 10).size());
+		assertEquals(1, search("Zeyt~", null, 10).size());
+		assertEquals(1, search("KUN*", null, 10).size());
+		assertEquals(2, search("D*", null, 10).size());
+	}
+
+	@Test
+	public void pagesWithCursor() throws IOException {
+		for (int verse = 1; verse <= 3; verse++) {
+			index.add(1, 10, "H P5", null, null, verse, "Habe nun, ach! Philosophie", 0, 26);
+		}
+
+		final List<SearchIndex.Hit> firstPage = Lists.newArrayList();
+		final SearchIndex.Result first = index.search("philosophie", null, 2, collect(firstPage));
+		assertEquals(3, first.getTotal());
+		assertEquals(2, firstPage.size());
+		assertNotNull(first.getNext());
+
+		final List<SearchIndex.Hit> secondPage = Lists.newArrayList();
+		final SearchIndex.Result second = index.search("philosophie", first.getNext(), 2, collect(secondPage));
+		assertEquals(1, secondPage.size());
+		assertNull(second.getNext());
+
+		final Set<Integer> verses = Sets.newHashSet();
+		for (SearchIndex.Hit hit : Iterables.concat(firstPage, secondPage)) {
+			verses.add(hit.getVerse());
+		}
+		assertEquals(3, verses.size());
+	}
+
+	@Test
+	public void highlights() throws IOException {
+		index.add(1, 10, "H P5", null, null, 1, "Der Zeit <Geist> & Zeit", 0, 23);
+
+		final List<SearchIndex.Hit> hits = search("zeyt", null, 10);
+		assertEquals(1, hits.size());
+		assertEquals("Der <em>Zeit</em> &lt;Geist&gt; &amp; <em>Zeit</em>", hits.get(0).getHighlighted());
+		assertEquals("Der Zeit <Geist> & Zeit", hits.get(0).getText());
+	}
+
+	@Test
+	public void clearedOnChangedNormalization() throws Exception {
+		index.add(1, 10, "H P5", null, null, 1, "Der Zeit", 0, 8);
+		index.destroy();
+
+		index = open(Normalizer.DEFAULT_STEPS_NAMES);
+		assertEquals(Sets.newHashSet(1L), index.transcripts());
+		index.destroy();
+
+		index = open("lower-case,umlauts");
+		assertTrue(index.transcripts().isEmpty());
+		assertFalse(index.getNormalizer().getSteps().contains(Normalizer.Step.HISTORIC_SPELLING));
+	}
+
+	private SearchIndex open(String normalization) throws Exception {
+		final Map<String, Object> properties = Maps.newHashMap();
+		properties.put("search.home", home.getPath());
+		properties.put("search.normalization", normalization);
+		final StandardEnvironment environment = new StandardEnvironment();
+		environment.getPropertySources().addFirst(new MapPropertySource("test", properties));
+
+		final SearchIndex index = new SearchIndex();
+		ReflectionTestUtils.setField(index, "environment", environment);
+		index.afterPropertiesSet();
+		return index;
+	}
+
+	private List<SearchIndex.Hit> search(String query, String cursor, int limit) throws IOException {
+		final List<SearchIndex.Hit> hits = Lists.newArrayList();
+		index.search(query, cursor, limit, collect(hits));
+		return hits;
+	}
+
+	private static SearchIndex.HitCallback collect(final List<SearchIndex.Hit> hits) {
+		return new SearchIndex.HitCallback() {
+			@Override
+			public void hit(SearchIndex.Hit hit) {
+				hits.add(hit);
+			}
+		};
+	}
+
+	private static void delete(File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,108 @@
+package de.faustedition.search;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SuggestionTrieTest {
+
+	@Test
+	public void completesHeaviestFirst() {
+		final SuggestionTrie trie = new SuggestionTrie();
+		trie.add("faust", "Faust", 3);
+		trie.add("fausts", "Fausts", 1);
+		trie.add("feld", "Feld", 5);
+		trie.add("gretchen", "Gretchen", 7);
+
+		final List<SuggestionTrie.Suggestion> suggestions = trie.complete("f", 10);
+		assertEquals(3, suggestions.size());
+		assertEquals("feld", suggestions.get(0).getKey());
+		assertEquals("faust", suggestions.get(1).getKey());
+		assertEquals("Fausts", suggestions.get(2).getValue());
+
+		assertEquals(1, trie.complete("f", 1).size());
+		assertEquals(2, trie.complete("fau", 10).size());
+		assertEquals(3, trie.complete("faust", 10).get(0).getWeight());
+		assertTrue(trie.complete("fx", 10).isEmpty());
+		assertTrue(trie.complete("faustus", 10).isEmpty());
+	}
+
+	@Test
+	public void removesAndMerges() {
+		final SuggestionTrie trie = new SuggestionTrie();
+		trie.add("2 h", "2 H", 1);
+		trie.add("2 i", "2 I", 1);
+		trie.add("2 h", "2 H", 1);
+		assertEquals(2, trie.size());
+
+		trie.remove("2 h", 1);
+		assertEquals(2, trie.size());
+		trie.remove("2 h", 1);
+		assertEquals(1, trie.size());
+		assertTrue(trie.complete("2 h", 10).isEmpty());
+
+		final List<SuggestionTrie.Suggestion> suggestions = trie.complete("2", 10);
+		assertEquals(1, suggestions.size());
+		assertEquals("2 i", suggestions.get(0).getKey());
+
+		trie.remove("2 i", 1);
+		assertEquals(0, trie.size());
+		assertTrue(trie.complete("", 10).isEmpty());
+	}
+
+	@Test
+	public void matchesLinearScan() {
+		final Random random = new Random(42);
+		final SuggestionTrie trie = new SuggestionTrie();
+		final Map<String, Integer> weights = Maps.newHashMap();
+		for (int i = 0; i < 2000; i++) {
+			final String key = randomKey(random);
+			final int weight = 1 + random.nextInt(100);
+			trie.add(key, key, weight);
+			weights.put(key, (weights.containsKey(key) ? weights.get(key) : 0) + weight);
+		}
+		for (String key : Lists.newArrayList(weights.keySet())) {
+			if (random.nextInt(3) == 0) {
+				trie.remove(key, weights.remove(key));
+			}
+		}
+		assertEquals(weights.size(), trie.size());
+
+		for (int q = 0; q < 200; q++) {
+			final String prefix = randomKey(random).substring(0, 1 + random.nextInt(2));
+			final List<Integer> expected = Lists.newArrayList();
+			for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+				if (entry.getKey().startsWith(prefix)) {
+					expected.add(entry.getValue());
+				}
+			}
+			Collections.sort(expected, Collections.reverseOrder());
+
+			final List<SuggestionTrie.Suggestion> suggestions = trie.complete(prefix, 5);
+			assertEquals(Math.min(5, expected.size()), suggestions.size());
+			for (int i = 0; i < suggestions.size(); i++) {
+				final SuggestionTrie.Suggestion suggestion = suggestions.get(i);
+				assertTrue(suggestion.getKey().startsWith(prefix));
+				assertEquals(weights.get(suggestion.getKey()), (Integer) suggestion.getWeight());
+				assertEquals(expected.get(i), (Integer) suggestion.getWeight());
+			}
+		}
+	}
+
+	private static String randomKey(Random random) {
+		final StringBuilder key = new StringBuilder();
+		final int length = 3 + random.nextInt(5);
+		for (int i = 0; i < length; i++) {
+			key.append((char) ('a' + random.nextInt(4)));
+		}
+		return key.toString();
+	}
+}
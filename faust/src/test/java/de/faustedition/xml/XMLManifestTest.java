@@ -0,0 +1,54 @@
+package de.faustedition.xml;
+
+import de.faustedition.FaustAuthority;
+import de.faustedition.FaustURI;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class XMLManifestTest {
+
+    @Test
+    public void diff() {
+        final XMLManifest previous = new XMLManifest();
+        previous.put("/document/a.xml", new XMLManifest.Entry(1, 10, "aaaa"));
+        previous.put("/document/b.xml", new XMLManifest.Entry(1, 10, "bbbb"));
+        previous.put("/transcript/c.xml", new XMLManifest.Entry(1, 10, "cccc"));
+
+        final XMLManifest current = new XMLManifest();
+        current.put("/document/a.xml", new XMLManifest.Entry(2, 10, "aaaa"));
+        current.put("/document/b.xml", new XMLManifest.Entry(2, 12, "bbbc"));
+        current.put("/transcript/d.xml", new XMLManifest.Entry(2, 10, "dddd"));
+
+        final XMLManifest.Diff diff = current.diff(previous);
+        Assert.assertEquals(1, diff.getAdded().size());
+        Assert.assertTrue(diff.getAdded().contains(new FaustURI(FaustAuthority.XML, "/transcript/d.xml")));
+        Assert.assertEquals(1, diff.getChanged().size());
+        Assert.assertTrue(diff.getChanged().contains(new FaustURI(FaustAuthority.XML, "/document/b.xml")));
+        Assert.assertEquals(1, diff.getDeleted().size());
+        Assert.assertTrue(diff.getDeleted().contains(new FaustURI(FaustAuthority.XML, "/transcript/c.xml")));
+
+        Assert.assertTrue(current.diff(current).isEmpty());
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        final File file = File.createTempFile("xml-manifest-test", ".manifest");
+        try {
+            final XMLManifest manifest = new XMLManifest();
+            manifest.put("/document/a.xml", new XMLManifest.Entry(1, 10, "aaaa"));
+            manifest.put("/document/b.xml", new XMLManifest.Entry(2, 20, "bbbb"));
+            manifest.save(file);
+
+            final XMLManifest loaded = XMLManifest.load(file);
+            Assert.assertNotNull(loaded);
+            Assert.assertEquals(2, loaded.size());
+            Assert.assertTrue(loaded.diff(manifest).isEmpty());
+        } finally {
+            file.delete();
+        }
+        Assert.assertNull(XMLManifest.load(file));
+    }
+}
@@ -0,0 +1,196 @@
+package edu.bath.transitivityutils;
+
+import static edu.bath.transitivityutils.RelationAssertions.assertDirectRelations;
+import static edu.bath.transitivityutils.RelationAssertions.assertRelations;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class FrozenTransitiveRelationTest {
+
+    @Test
+    public void testCyclic() {
+        TransitiveRelation<String> r = Relations.newTransitiveRelation();
+        r.relate("c", "d");
+        r.relate("c", "e");
+        r.relate("b", "c");
+        r.relate("a", "b");
+        r.relate("c", "a");
+
+        FrozenTransitiveRelation<String> frozen = Relations.freeze(r);
+        assertRelations(frozen,
+                "a", "b",
+                "a", "c",
+                "a", "d",
+                "a", "e",
+                "b", "a",
+                "b", "c",
+                "b", "d",
+                "b", "e",
+                "c", "a",
+                "c", "b",
+                "c", "d",
+                "c", "e");
+        assertDirectRelations(frozen,
+                "a", "b",
+                "b", "c",
+                "c", "a",
+                "c", "d",
+                "c", "e");
+        assertEquals(5, frozen.size());
+        assertEquals(ImmutableSet.of("a", "b", "c"), frozen.direct().domain());
+        assertTrue(frozen.direct().related("d").isEmpty());
+        assertTrue(frozen.direct().related("x").isEmpty());
+        assertTrue(frozen.areRelated("x", "x"));
+        assertFalse(frozen.areRelated("x", "a"));
+    }
+
+    @Test
+    public void testSnapshotIsIndependent() {
+        TransitiveRelation<Integer> r = Relations.newTransitiveRelation();
+        r.relate(1, 2);
+        FrozenTransitiveRelation<Integer> frozen = Relations.freeze(r);
+        r.relate(2, 3);
+        assertTrue(frozen.areRelated(1, 2));
+        assertFalse(frozen.areRelated(1, 3));
+        assertSame(frozen, Relations.freeze(frozen));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRelateUnsupported() {
+        Relations.freeze(Relations.<Integer>newTransitiveRelation()).relate(1, 2);
+    }
+
+    @Test
+    public void testMatchesRelations() {
+        final int total = 200;
+        for (double density : new double[] { 0.002, 0.01, 0.05 }) {
+            TransitiveRelation<Integer> expected = Relations.newTransitiveRelation();
+            IntTransitiveRelation intRelation = Relations.newIntTransitiveRelation();
+            Random random = new Random(0);
+
+            for (int subject = 0; subject < total; subject++) {
+                for (int object = 0; object < total; object++) {
+                    if (random.nextDouble() < density) {
+                        expected.relate(subject, object);
+                        intRelation.relate(subject, object);
+                    }
+                }
+            }
+
+            FrozenTransitiveRelation<Integer> frozen = Relations.freeze(expected);
+            FrozenTransitiveRelation<Integer> frozenInt = Relations.freeze((TransitiveRelation<Integer>) intRelation);
+            FrozenTransitiveRelation<Integer> frozenView = Relations.freeze(Relations.unmodifiableTransitiveRelation(expected));
+            for (int subject = 0; subject < total; subject++) {
+                for (int object = 0; object < total; object++) {
+                    final boolean related = expected.areRelated(subject, object);
+                    assertEquals(related, frozen.areRelated(subject, object));
+                    assertEquals(related, frozenInt.areRelated(subject, object));
+                    assertEquals(related, frozenView.areRelated(subject, object));
+                }
+                assertEquals(expected.direct().related(subject), frozen.direct().related(subject));
+                assertEquals(expected.direct().related(subject), frozenInt.direct().related(subject));
+            }
+            assertEquals(expected.direct().domain(), frozen.direct().domain());
+            assertEquals(expected.direct().domain(), frozenInt.direct().domain());
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        TransitiveRelation<String> r = Relations.newTransitiveRelation();
+        r.relate("c", "d");
+        r.relate("b", "c");
+        r.relate("a", "b");
+        r.relate("c", "a");
+        r.relate("x", "y");
+        FrozenTransitiveRelation<String> frozen = Relations.freeze(r);
+
+        FrozenTransitiveRelation<String> read = FrozenTransitiveRelation.readFrom(
+                new DataInputStream(new ByteArrayInputStream(write(frozen, FrozenTransitiveRelation.STRINGS))),
+                FrozenTransitiveRelation.STRINGS);
+        assertEquals(frozen.size(), read.size());
+        for (String subject : ImmutableSet.of("a", "b", "c", "d", "x", "y", "z")) {
+            for (String object : ImmutableSet.of("a", "b", "c", "d", "x", "y", "z")) {
+                assertEquals(frozen.areRelated(subject, object), read.areRelated(subject, object));
+            }
+            assertEquals(frozen.direct().related(subject), read.direct().related(subject));
+        }
+        assertEquals(frozen.direct().domain(), read.direct().domain());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadTruncated() throws IOException {
+        IntTransitiveRelation r = Relations.newIntTransitiveRelation();
+        r.relate(1, 2);
+        r.relate(2, 3);
+        byte[] data = write(r.freeze(), FrozenTransitiveRelation.INTEGERS);
+        FrozenTransitiveRelation.readFrom(new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 1)),
+                FrozenTransitiveRelation.INTEGERS);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadForeign() throws IOException {
+        FrozenTransitiveRelation.readFrom(new DataInputStream(new ByteArrayInputStream(new byte[16])),
+                FrozenTransitiveRelation.INTEGERS);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadOversizedHeader() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x46545231);
+        out.writeInt(1);
+        out.writeInt(1); // elements
+        out.writeInt(Integer.MAX_VALUE - 1); // interval tags, far more than follow
+        out.writeInt(0); // direct relationships
+        out.writeInt(7); // the element
+        out.writeLong(10); // its pre tag
+        out.writeInt(Integer.MAX_VALUE - 1);
+        out.writeLong(10);
+        out.writeLong(20);
+        FrozenTransitiveRelation.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                FrozenTransitiveRelation.INTEGERS);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadUnsortedIntervals() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x46545231);
+        out.writeInt(1);
+        out.writeInt(1); // elements
+        out.writeInt(4); // interval tags
+        out.writeInt(0); // direct relationships
+        out.writeInt(7); // the element
+        out.writeLong(10); // its pre tag
+        out.writeInt(4);
+        out.writeLong(10);
+        out.writeLong(20);
+        out.writeLong(15); // overlaps the first interval
+        out.writeLong(30);
+        out.writeInt(0);
+        FrozenTransitiveRelation.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                FrozenTransitiveRelation.INTEGERS);
+    }
+
+    private static <E> byte[] write(FrozenTransitiveRelation<E> relation, FrozenTransitiveRelation.Codec<E> codec) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        relation.writeTo(out, codec);
+        out.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,161 @@
+package edu.bath.transitivityutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IntIntervalSetTest {
+    IntOrderList list;
+    int[] nodes;
+    IntIntervalSet set;
+
+    @Before
+    public void init() {
+        list = IntOrderList.create();
+        nodes = new int[16];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = list.addAfter(list.previous(list.base()));
+        }
+        set = new IntIntervalSet();
+    }
+
+    @After
+    public void tearDown() {
+        list = null;
+        nodes = null;
+        set = null;
+    }
+
+    @Test
+    public void testInitial() {
+        set.addInterval(list, nodes[3], nodes[4]);
+        assertContains(nodes[3], nodes[4]);
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void testAddIndependent() {
+        set.addInterval(list, nodes[3], nodes[4]);
+        set.addInterval(list, nodes[1], nodes[2]);
+        set.addInterval(list, nodes[5], nodes[6]);
+
+        assertContains(nodes[1], nodes[2]);
+        assertContains(nodes[3], nodes[4]);
+        assertContains(nodes[5], nodes[6]);
+        assertEquals(6, set.size());
+    }
+
+    @Test
+    public void addSubsumingOfMoreThanOne() {
+        set.addInterval(list, nodes[3], nodes[4]);
+        set.addInterval(list, nodes[5], nodes[6]);
+        set.addInterval(list, nodes[1], nodes[2]);
+        set.addInterval(list, nodes[2], nodes[7]);
+
+        assertContains(nodes[1], nodes[7]);
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void testOverlapping_Both() {
+        set.addInterval(list, nodes[0], nodes[1]);
+        set.addInterval(list, nodes[2], nodes[3]);
+        set.addInterval(list, nodes[4], nodes[5]);
+        set.addInterval(list, nodes[6], nodes[7]);
+
+        assertEquals(8, set.size());
+
+        set.addInterval(list, list.addAfter(nodes[2]), list.addAfter(nodes[4]));
+        assertContains(nodes[2], nodes[5]);
+        assertEquals(6, set.size());
+
+        set.addInterval(list, list.addAfter(nodes[0]), list.addAfter(nodes[6]));
+        assertContains(nodes[0], nodes[7]);
+        assertEquals(2, set.size());
+    }
+
+    @Test(expected=RuntimeException.class)
+    public void testIllegalArguments() {
+        set.addInterval(list, nodes[1], nodes[2]);
+        set.addInterval(list, nodes[4], nodes[3]);
+    }
+
+    @Test
+    public void testReaddingSameElements() {
+        set.addInterval(list, nodes[1], nodes[2]);
+        set.addInterval(list, nodes[1], nodes[2]);
+
+        assertContains(nodes[1], nodes[2]);
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void testAddIntervals() {
+        IntIntervalSet otherSet = new IntIntervalSet();
+        set.addInterval(list, nodes[0], nodes[1]);
+        set.addInterval(list, nodes[4], nodes[5]);
+        set.addInterval(list, nodes[10], nodes[11]);
+        otherSet.addInterval(list, nodes[2], nodes[3]);
+        otherSet.addInterval(list, nodes[5], nodes[7]);
+        otherSet.addInterval(list, nodes[8], nodes[12]);
+        otherSet.addInterval(list, nodes[14], nodes[15]);
+
+        set.addIntervals(list, otherSet);
+        assertContains(nodes[0], nodes[1]);
+        assertContains(nodes[2], nodes[3]);
+        assertContains(nodes[4], nodes[7]);
+        assertContains(nodes[8], nodes[12]);
+        assertContains(nodes[14], nodes[15]);
+        assertEquals(10, set.size());
+    }
+
+    @Test
+    public void testContainsAll() {
+        IntIntervalSet otherSet = new IntIntervalSet();
+        set.addInterval(list, nodes[1], nodes[6]);
+
+        otherSet.addInterval(list, nodes[4], nodes[5]);
+        otherSet.addInterval(list, nodes[2], nodes[3]);
+        assertTrue(set.containsAll(list, otherSet));
+        assertFalse(otherSet.containsAll(list, set));
+
+        otherSet.addInterval(list, nodes[7], nodes[8]);
+        assertFalse(set.containsAll(list, otherSet));
+        assertFalse(otherSet.containsAll(list, set));
+
+        set.addInterval(list, nodes[6], nodes[8]);
+        set.addInterval(list, nodes[9], nodes[10]);
+        assertTrue(set.containsAll(list, otherSet));
+        assertFalse(otherSet.containsAll(list, set));
+
+        otherSet.addIntervals(list, set);
+        assertTrue(set.containsAll(list, otherSet));
+        assertTrue(otherSet.containsAll(list, set));
+    }
+
+    private void assertContains(int pre, int post) {
+        assertTrue(set.contains(list, pre));
+        assertTrue(set.contains_linearScan(list, pre));
+        assertTrue(set.contains_binarySearch(list, pre));
+
+        assertTrue(set.contains(list, post));
+        assertTrue(set.contains_linearScan(list, post));
+        assertTrue(set.contains_binarySearch(list, post));
+
+        int tmp = list.addAfter(list.previous(pre));
+        assertFalse(set.contains(list, tmp));
+        assertFalse(set.contains_linearScan(list, tmp));
+        assertFalse(set.contains_binarySearch(list, tmp));
+        list.delete(tmp);
+
+        tmp = list.addAfter(post);
+        assertFalse(set.contains(list, tmp));
+        assertFalse(set.contains_linearScan(list, tmp));
+        assertFalse(set.contains_binarySearch(list, tmp));
+        list.delete(tmp);
+    }
+}
@@ -0,0 +1,227 @@
+package edu.bath.transitivityutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntOrderListTest {
+    private interface Chooser {
+        int choose(int[] nodes, int count);
+    }
+
+    private static final Chooser leftChooser = new Chooser() {
+        public int choose(int[] nodes, int count) {
+            return nodes[0];
+        }
+    };
+
+    private static final Chooser rightChooser = new Chooser() {
+        public int choose(int[] nodes, int count) {
+            return nodes[count - 1];
+        }
+    };
+
+    private static final Chooser randomChooser = new Chooser() {
+        final Random random = new Random(0);
+        public int choose(int[] nodes, int count) {
+            return nodes[random.nextInt(count)];
+        }
+    };
+
+    @Test
+    public void testAddAllLeft() {
+        genericTest(leftChooser);
+    }
+
+    @Test
+    public void testAddAllRight() {
+        genericTest(rightChooser);
+    }
+
+    @Test
+    public void testRandomized() {
+        genericTest(randomChooser);
+    }
+
+    private void genericTest(Chooser chooser) {
+        final int total = 10240;
+        int[] nodes = new int[total + 1];
+
+        IntOrderList list = IntOrderList.create();
+        nodes[0] = list.base();
+        for (int i = 0; i < total; i++) {
+            nodes[i + 1] = list.addAfter(chooser.choose(nodes, i + 1));
+        }
+        assertEquals(total, list.size());
+        assertAscending(list);
+
+        for (int node = list.next(list.base()); node != list.base(); node = list.next(node)) {
+            assertTrue(list.precedes(list.previous(node), node));
+        }
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testAddAfterDeleted() {
+        IntOrderList list = IntOrderList.create();
+        int n = list.addAfter(list.base());
+        list.delete(n);
+        list.addAfter(n);
+    }
+
+    @Test
+    public void testSize() {
+        IntOrderList list = IntOrderList.create();
+        assertEquals(0, list.size());
+
+        int n1 = list.addAfter(list.base());
+        assertEquals(1, list.size());
+
+        int n2 = list.addAfter(n1);
+        assertEquals(2, list.size());
+
+        assertEquals(n1, list.next(list.base()));
+        assertEquals(n2, list.next(n1));
+        assertEquals(n2, list.previous(list.base()));
+        assertEquals(n1, list.previous(n2));
+
+        assertTrue(list.delete(n1));
+        assertEquals(n2, list.next(list.base()));
+        assertEquals(n2, list.previous(list.base()));
+        assertEquals(list.base(), list.next(n2));
+        assertEquals(list.base(), list.previous(n2));
+        assertEquals(1, list.size());
+
+        assertTrue(list.delete(list.next(list.base())));
+        assertEquals(0, list.size());
+
+        assertEquals(list.base(), list.next(list.base()));
+        assertEquals(list.base(), list.previous(list.base()));
+    }
+
+    @Test
+    public void testDelete() {
+        IntOrderList list = IntOrderList.create();
+        int node = list.addAfter(list.base());
+
+        assertTrue(list.isValid(node));
+        assertTrue(list.delete(node));
+
+        assertFalse(list.isValid(node));
+        assertFalse(list.delete(node));
+        assertEquals(-1, list.next(node));
+    }
+
+    @Test
+    public void testHandlesNotReused() {
+        IntOrderList list = IntOrderList.create();
+        int n1 = list.addAfter(list.base());
+        list.delete(n1);
+        int n2 = list.addAfter(list.base());
+        assertTrue(n1 != n2);
+        assertFalse(list.isValid(n1));
+    }
+
+    @Test
+    public void testCannotDeleteBase() {
+        IntOrderList list = IntOrderList.create();
+        assertFalse(list.delete(list.base()));
+    }
+
+    @Test
+    public void testBaseIsValid() {
+        IntOrderList list = IntOrderList.create();
+        assertTrue(list.isValid(list.base()));
+        assertFalse(list.isValid(1));
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testPrecedesDeleted1() {
+        IntOrderList list = IntOrderList.create();
+        int n1 = list.addAfter(list.base());
+        int n2 = list.addAfter(list.base());
+        list.delete(n1);
+        list.precedes(n1, n2);
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testPrecedesDeleted2() {
+        IntOrderList list = IntOrderList.create();
+        int n1 = list.addAfter(list.base());
+        int n2 = list.addAfter(list.base());
+        list.delete(n2);
+        list.precedes(n1, n2);
+    }
+
+    @Test
+    public void simpleTest() {
+        IntOrderList list = IntOrderList.create();
+
+        int b = list.base();
+        int n0 = list.addAfter(b);
+        int n1 = list.addAfter(n0);
+        int n2 = list.addAfter(n1);
+        int n3 = list.addAfter(n2);
+
+        int n4 = list.addAfter(n1);
+        assertAscending(list);
+        assertPrecedes(list, b, n0);
+        assertPrecedes(list, n0, n1);
+        assertPrecedes(list, n1, n4);
+        assertPrecedes(list, n4, n2);
+        assertPrecedes(list, n2, n3);
+        assertEquals("[" + n0 + ", " + n1 + ", " + n4 + ", " + n2 + ", " + n3 + "]", list.toString());
+    }
+
+    @Test
+    public void testAddAfterSameNode() {
+        final int total = 10240;
+        IntOrderList list = IntOrderList.create();
+        int first = list.addAfter(list.base());
+        int last = list.addAfter(first);
+        int previous = last;
+        for (int i = 0; i < total; i++) {
+            int node = list.addAfter(first); //always filling the same gap
+            assertPrecedes(list, first, node);
+            assertPrecedes(list, node, previous);
+            previous = node;
+        }
+        assertEquals(total + 2, list.size());
+        assertAscending(list);
+    }
+
+    @Test
+    public void testAddAfterDeletedNeighbours() {
+        IntOrderList list = IntOrderList.create();
+        int[] nodes = new int[1024];
+        nodes[0] = list.addAfter(list.base());
+        for (int i = 1; i < nodes.length; i++) {
+            nodes[i] = list.addAfter(nodes[i - 1]);
+        }
+        for (int i = 0; i < nodes.length; i += 2) {
+            list.delete(nodes[i]);
+        }
+        for (int i = 1; i < nodes.length; i += 2) {
+            int node = list.addAfter(nodes[i]);
+            assertPrecedes(list, nodes[i], node);
+        }
+        assertEquals(nodes.length, list.size());
+        assertAscending(list);
+    }
+
+    private static void assertAscending(IntOrderList list) {
+        long last = Long.MIN_VALUE;
+        for (int node = list.next(list.base()); node != list.base(); node = list.next(node)) {
+            assertTrue(last < list.tag(node));
+            last = list.tag(node);
+        }
+    }
+
+    private static void assertPrecedes(IntOrderList list, int n1, int n2) {
+        assertTrue(list.precedes(n1, n2));
+        assertFalse(list.precedes(n2, n1));
+    }
+}
@@ -0,0 +1,123 @@
+package edu.bath.transitivityutils;
+
+import static edu.bath.transitivityutils.RelationAssertions.assertDirectRelations;
+import static edu.bath.transitivityutils.RelationAssertions.assertRelations;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class IntTransitiveRelationTest {
+
+    @Test
+    public void testReflexivityForUnknownNodes() {
+        IntTransitiveRelation r = Relations.newIntTransitiveRelation();
+        assertTrue(r.areRelated(1, 1));
+        assertFalse(r.areRelated(1, 2));
+        assertFalse(r.areRelated(-1, 2));
+        assertTrue(r.direct().related(3).isEmpty());
+        assertFalse(r.contains(3));
+    }
+
+    @Test
+    public void testAcyclic() {
+        IntTransitiveRelation r = Relations.newIntTransitiveRelation();
+        r.relate(1, 2);
+        r.relate(0, 1);
+        r.relate(4, 5);
+        r.relate(3, 4);
+        r.relate(0, 4);
+        r.relate(4, 2);
+
+        assertRelations(r,
+                0, 1,
+                0, 2,
+                0, 4,
+                0, 5,
+                1, 2,
+                3, 2,
+                3, 4,
+                3, 5,
+                4, 2,
+                4, 5);
+    }
+
+    @Test
+    public void testCyclic() {
+        IntTransitiveRelation r = Relations.newIntTransitiveRelation();
+        r.relate(2, 3);
+        r.relate(2, 4);
+        r.relate(1, 2);
+        r.relate(0, 1);
+        r.relate(2, 0);
+
+        assertRelations(r,
+                0, 1,
+                0, 2,
+                0, 3,
+                0, 4,
+                1, 0,
+                1, 2,
+                1, 3,
+                1, 4,
+                2, 0,
+                2, 1,
+                2, 3,
+                2, 4);
+    }
+
+    @Test
+    public void testDirectlyRelated() {
+        IntTransitiveRelation r = Relations.newIntTransitiveRelation();
+        r.relate(1, 2);
+        r.relate(2, 3);
+        r.relate(3, 4);
+        r.relate(3, 5);
+        r.relate(3, 5);
+        r.relate(6, 6);
+
+        assertDirectRelations(r,
+                1, 2,
+                2, 3,
+                3, 4,
+                3, 5);
+        assertEquals(ImmutableSet.of(4, 5), ImmutableSet.copyOf(r.direct().related(3)));
+        assertEquals(ImmutableSet.of(1, 2, 3), ImmutableSet.copyOf(r.direct().domain()));
+        assertEquals(3, r.direct().domain().size());
+    }
+
+    @Test
+    public void testMatchesDefaultRelation() {
+        final int total = 300;
+        for (double density : new double[] { 0.002, 0.01, 0.05 }) {
+            IntTransitiveRelation r = Relations.newIntTransitiveRelation();
+            TransitiveRelation<Integer> expected = Relations.newTransitiveRelation();
+            Random random = new Random(0);
+
+            for (int subject = 0; subject < total; subject++) {
+                for (int object = 0; object < total; object++) {
+                    if (random.nextDouble() < density) {
+                        r.relate(subject, object);
+                        expected.relate(subject, object);
+                    }
+                }
+            }
+
+            for (int subject = 0; subject < total; subject++) {
+                Set<Integer> closure = Navigators.closure(expected.direct(), subject);
+                for (int object = 0; object < total; object++) {
+                    assertEquals(closure.contains(object), r.areRelated(subject, object));
+                    assertEquals(expected.areRelated(subject, object), r.areRelated(subject, object));
+                }
+                assertEquals(expected.direct().related(subject), r.direct().related(subject));
+            }
+            assertEquals(expected.direct().domain(), r.direct().domain());
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package edu.bath.transitivityutils;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
 
 class Perf {
@@ -35,6 +38,125 @@ class Perf {
         System.out.println(timeWithMerge);
     }
 
+    /**
+     * Compares {@link IntTransitiveRelation} with the default relation in the scenarios below.
+     */
+    public static void mainInt(String[] args) {
+        final int total = (args.length > 0 ? Integer.parseInt(args[0]) : 500);
+        for (int round = 0; round < 3; round++) {
+            long time = -System.nanoTime();
+            testDefault(total);
+            time += System.nanoTime();
+
+            long intTime = -System.nanoTime();
+            testIntDefault(total);
+            intTime += System.nanoTime();
+
+            long backward = -System.nanoTime();
+            testBackward(total);
+            backward += System.nanoTime();
+
+            long intBackward = -System.nanoTime();
+            testIntBackward(total);
+            intBackward += System.nanoTime();
+
+            System.out.println("Default: " + (time / 1000000) + "ms, int: " + (intTime / 1000000) + "ms; "
+                    + "backward: " + (backward / 1000000) + "ms, int: " + (intBackward / 1000000) + "ms");
+        }
+    }
+
+    /**
+     * Compares {@link IntOrderList} with {@link OrderList}: inserting nodes at random positions of a large list,
+     * then testing random pairs of nodes for precedence.
+     */
+    public static void mainOrderList(String[] args) {
+        final int total = (args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
+        final int queries = 10 * total;
+        for (int round = 0; round < 3; round++) {
+            Random random = new Random(0);
+            long insert = -System.nanoTime();
+            OrderList<Void> list = OrderList.create();
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            OrderList.Node<Void>[] nodes = new OrderList.Node[total + 1];
+            nodes[0] = list.base();
+            for (int i = 1; i <= total; i++) {
+                nodes[i] = list.addAfter(nodes[random.nextInt(i)], null);
+            }
+            insert += System.nanoTime();
+
+            long query = -System.nanoTime();
+            int preceding = 0;
+            for (int i = 0; i < queries; i++) {
+                if (nodes[random.nextInt(total + 1)].precedes(nodes[random.nextInt(total + 1)])) preceding++;
+            }
+            query += System.nanoTime();
+
+            random = new Random(0);
+            long intInsert = -System.nanoTime();
+            IntOrderList intList = IntOrderList.create();
+            int[] handles = new int[total + 1];
+            handles[0] = intList.base();
+            for (int i = 1; i <= total; i++) {
+                handles[i] = intList.addAfter(handles[random.nextInt(i)]);
+            }
+            intInsert += System.nanoTime();
+
+            long intQuery = -System.nanoTime();
+            int intPreceding = 0;
+            for (int i = 0; i < queries; i++) {
+                if (intList.precedes(handles[random.nextInt(total + 1)], handles[random.nextInt(total + 1)])) intPreceding++;
+            }
+            intQuery += System.nanoTime();
+
+            System.out.println("Insert: " + (insert / 1000000) + "ms, int: " + (intInsert / 1000000) + "ms; "
+                    + "precedes: " + (query / 1000000) + "ms, int: " + (intQuery / 1000000) + "ms"
+                    + (preceding == intPreceding ? "" : " (mismatch)"));
+        }
+    }
+
+    /**
+     * Compares relating the edges of a random acyclic relation one by one, in random order, with building the relation
+     * in bulk via {@link Relations#newTransitiveRelation(Navigator)}, then checks both on a sample of pairs.
+     */
+    public static void mainBulk(String[] args) {
+        final int total = (args.length > 0 ? Integer.parseInt(args[0]) : 500);
+        final double density = (args.length > 1 ? Double.parseDouble(args[1]) : 0.05);
+        final int samples = 10 * total;
+        SetMultimap<Integer, Integer> edges = HashMultimap.create();
+        Random random = new Random(0);
+        for (int subject = 0; subject < total; subject++) {
+            for (int object = subject + 1; object < total; object++) {
+                if (random.nextDouble() < density) {
+                    edges.put(subject, object);
+                }
+            }
+        }
+        List<Map.Entry<Integer, Integer>> shuffled = Lists.newArrayList(edges.entries());
+        Collections.shuffle(shuffled, random);
+        for (int round = 0; round < 3; round++) {
+            long pairwise = -System.nanoTime();
+            TransitiveRelation<Integer> r = Relations.newTransitiveRelation();
+            for (Map.Entry<Integer, Integer> edge : shuffled) {
+                r.relate(edge.getKey(), edge.getValue());
+            }
+            pairwise += System.nanoTime();
+
+            long bulk = -System.nanoTime();
+            TransitiveRelation<Integer> bulkRelation = Relations.newTransitiveRelation(Navigators.forMultimap(edges));
+            bulk += System.nanoTime();
+
+            int mismatches = 0;
+            for (int i = 0; i < samples; i++) {
+                final int subject = random.nextInt(total);
+                final int object = random.nextInt(total);
+                if (r.areRelated(subject, object) != bulkRelation.areRelated(subject, object)) mismatches++;
+            }
+
+            System.out.println(edges.size() + " relationships; pairwise: " + (pairwise / 1000000) + "ms, bulk: "
+                    + (bulk / 1000000) + "ms" + (mismatches == 0 ? "" : " (" + mismatches + " mismatches)"));
+        }
+    }
+
     public static void main2(String[] args) throws Exception {
 //        int total = 1000;
         int total = 500;
@@ -70,6 +192,43 @@ class Perf {
         return r;
     }
 
+    private static IntTransitiveRelation testIntDefault(int total) {
+        IntTransitiveRelation r = Relations.newIntTransitiveRelation();
+        Random random = new Random(0);
+
+        for (int subject = 0; subject < total; subject++) {
+            for (int object = subject + 1; object < total; object++) {
+                if (random.nextDouble() < 0.2) {
+                    r.relate(subject, object);
+                }
+            }
+        }
+        return r;
+    }
+
+    private static IntTransitiveRelation testIntBackward(int total) {
+        IntTransitiveRelation r = Relations.newIntTransitiveRelation();
+        SetMultimap<Integer, Integer> inverseEdges = HashMultimap.create();
+        Random random = new Random(0);
+
+        for (int subject = 0; subject < total; subject++) {
+            for (int object = subject + 1; object < total; object++) {
+                if (random.nextDouble() < 0.2) {
+                    inverseEdges.put(object, subject);
+                }
+            }
+        }
+
+        Navigator<Integer> nav = Navigators.forMultimap(inverseEdges);
+        for (int object = total - 1; object >= 0; object--) {
+            for (Integer subject : nav.related(object)) {
+                r.relate(subject.intValue(), object);
+            }
+        }
+
+        return r;
+    }
+
     private static TransitiveRelation testForward(int total) {
         TransitiveRelation<Integer> r = Relations.newTransitiveRelation();
         SetMultimap<Integer, Integer> edges = HashMultimap.create();
@@ -1,13 +1,18 @@
 package edu.bath.transitivityutils;
 
 import static edu.bath.transitivityutils.RelationAssertions.assertRelations;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Random;
+
 import org.junit.Test;
 
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
 
 /**
  *
@@ -190,4 +195,86 @@ public class RelationsTest {
             fail();
         } catch (UnsupportedOperationException ok) { }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testNewTransitiveRelation() {
+        TransitiveRelation<Integer> rel = Relations.newTransitiveRelation(Navigators.forMultimap(ImmutableSetMultimap.of(
+                1, 2,
+                2, 3,
+                3, 4,
+                5, 3,
+                6, 6)));
+
+        assertRelations(rel,
+                1, 2,
+                1, 3,
+                1, 4,
+                2, 3,
+                2, 4,
+                3, 4,
+                5, 3,
+                5, 4);
+        assertEquals(ImmutableSetMultimap.of(1, 2, 2, 3, 3, 4, 5, 3).keySet(), rel.direct().domain());
+        assertFalse(rel.areRelated(6, 1));
+    }
+
+    @Test
+    public void testNewTransitiveRelation_WithCycle() {
+        TransitiveRelation<Integer> rel = Relations.newTransitiveRelation(Navigators.forMultimap(ImmutableSetMultimap.of(
+                1, 2,
+                2, 3,
+                3, 1,
+                3, 4)));
+
+        assertRelations(rel,
+                1, 2,
+                1, 3,
+                1, 4,
+                2, 1,
+                2, 3,
+                2, 4,
+                3, 1,
+                3, 2,
+                3, 4);
+    }
+
+    @Test
+    public void testNewTransitiveRelation_Randomized() {
+        final int total = 200;
+        for (double density : new double[] { 0.002, 0.01, 0.05 }) {
+            SetMultimap<Integer, Integer> edges = HashMultimap.create();
+            Random random = new Random(0);
+            for (int subject = 0; subject < total; subject++) {
+                for (int object = subject + 1; object < total; object++) {
+                    if (random.nextDouble() < density) {
+                        edges.put(subject, object);
+                    }
+                }
+            }
+
+            TransitiveRelation<Integer> expected = Relations.newTransitiveRelation();
+            Relations.merge(expected, Navigators.forMultimap(edges));
+            TransitiveRelation<Integer> bulk = Relations.newTransitiveRelation(Navigators.forMultimap(edges));
+            assertSameRelations(expected, bulk, total);
+
+            //relating further must keep the bulk labels consistent, enclosing or not
+            for (int i = 0; i < total; i++) {
+                int subject = random.nextInt(total + 20);
+                int object = random.nextInt(total + 20);
+                expected.relate(subject, object);
+                bulk.relate(subject, object);
+            }
+            assertSameRelations(expected, bulk, total + 20);
+        }
+    }
+
+    private static void assertSameRelations(TransitiveRelation<Integer> expected, TransitiveRelation<Integer> actual, int total) {
+        for (int subject = 0; subject < total; subject++) {
+            for (int object = 0; object < total; object++) {
+                assertEquals(subject + " -> " + object, expected.areRelated(subject, object), actual.areRelated(subject, object));
+            }
+            assertEquals(expected.direct().related(subject), actual.direct().related(subject));
+        }
+        assertEquals(expected.direct().domain(), actual.direct().domain());
+    }
+}